@@ -0,0 +1,112 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * ColumnLabelIndex maps the column labels of a result set to their 1-based indices.
+ *
+ * <p>Labels are matched case-insensitively and, as for {@link java.sql.ResultSet#findColumn}, the
+ * first column with a matching label wins.
+ *
+ * <p>Indices are shared by the result sets of the same SQL fingerprint, as long as their columns
+ * have the same labels, so that labels are resolved once per distinct shape of result set.
+ */
+final class ColumnLabelIndex {
+  // VisibleForTesting
+  static final int MAX_CACHED_FINGERPRINTS = 1024;
+
+  private static final ConcurrentMap<String, ColumnLabelIndex> cache = new ConcurrentHashMap<>();
+
+  private final String[] labels;
+  private final Map<String, Integer> indices;
+
+  private ColumnLabelIndex(String[] labels, Map<String, Integer> indices) {
+    this.labels = labels;
+    this.indices = indices;
+  }
+
+  // Returns the index for the columns described by metaData, reusing the one of the previous
+  // result set of fingerprint if their labels are the same.
+  static ColumnLabelIndex of(@Nullable String fingerprint, ResultSetMetaData metaData)
+      throws SQLException {
+    String[] labels = labels(metaData);
+    if (fingerprint == null) {
+      return new ColumnLabelIndex(labels, indices(labels));
+    }
+
+    ColumnLabelIndex index = cache.get(fingerprint);
+    if (index == null || !Arrays.equals(index.labels, labels)) {
+      index = new ColumnLabelIndex(labels, indices(labels));
+      if (cache.size() >= MAX_CACHED_FINGERPRINTS) {
+        cache.clear();
+      }
+      cache.put(fingerprint, index);
+    }
+    return index;
+  }
+
+  private static String[] labels(ResultSetMetaData metaData) throws SQLException {
+    String[] labels = new String[metaData.getColumnCount()];
+    for (int i = 0; i < labels.length; i++) {
+      labels[i] = metaData.getColumnLabel(i + 1);
+    }
+    return labels;
+  }
+
+  private static Map<String, Integer> indices(String[] labels) {
+    Map<String, Integer> indices = new HashMap<>(4 * labels.length);
+    for (int i = 1; i <= labels.length; i++) {
+      String label = labels[i - 1];
+      if (label == null) {
+        continue;
+      }
+      // Labels are stored upper cased, and also as reported by the first column with the label,
+      // so that lookups with the label as reported by the driver don't need to convert it. Only
+      // the first column matching a label, regardless of case, is stored.
+      if (indices.putIfAbsent(label.toUpperCase(Locale.ROOT), i) == null) {
+        indices.put(label, i);
+      }
+    }
+    return indices;
+  }
+
+  int getColumnCount() {
+    return labels.length;
+  }
+
+  // Returns the index of the column labelled label, or 0 if there is none.
+  int indexOf(String label) {
+    Integer index = indices.get(label);
+    if (index == null) {
+      index = indices.get(label.toUpperCase(Locale.ROOT));
+    }
+    return index == null ? 0 : index;
+  }
+
+  // VisibleForTesting
+  static void clearCache() {
+    cache.clear();
+  }
+}
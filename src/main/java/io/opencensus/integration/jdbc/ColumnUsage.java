@@ -0,0 +1,116 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * ColumnUsage tracks, per SQL fingerprint, the columns its queries select and the columns ever
+ * read from their cursors, to find queries that select columns the application never reads.
+ */
+final class ColumnUsage {
+  // VisibleForTesting
+  static final int MAX_TRACKED_FINGERPRINTS = 1024;
+
+  private static final ConcurrentMap<String, Usage> usages = new ConcurrentHashMap<>();
+
+  private ColumnUsage() {}
+
+  private static final class Usage {
+    private int selected;
+    // The union of the columns read by all cursors.
+    private long[] read = new long[0];
+
+    synchronized void add(int selected, long[] read) {
+      this.selected = selected;
+      if (this.read.length < read.length) {
+        this.read = Arrays.copyOf(this.read, read.length);
+      }
+      for (int i = 0; i < read.length; i++) {
+        this.read[i] |= read[i];
+      }
+    }
+
+    synchronized int unread() {
+      int unread = this.selected;
+      for (int i = 1; i <= this.selected; i++) {
+        if (isSet(this.read, i)) {
+          unread--;
+        }
+      }
+      return unread;
+    }
+  }
+
+  static void record(String fingerprint, int selected, long[] read) {
+    Usage usage = usages.get(fingerprint);
+    if (usage == null) {
+      if (usages.size() >= MAX_TRACKED_FINGERPRINTS) {
+        usages.clear();
+      }
+      usages.putIfAbsent(fingerprint, new Usage());
+      usage = usages.get(fingerprint);
+      if (usage == null) {
+        return;
+      }
+    }
+    usage.add(selected, read);
+  }
+
+  // Returns the number of columns never read per SQL fingerprint, for the fingerprints that select
+  // columns that are never read.
+  static Map<String, Integer> unreadColumns() {
+    Map<String, Integer> unread = new HashMap<>();
+    for (Map.Entry<String, Usage> entry : usages.entrySet()) {
+      int count = entry.getValue().unread();
+      if (count > 0) {
+        unread.put(entry.getKey(), count);
+      }
+    }
+    return unread;
+  }
+
+  // Sets the bit of the 1-based column index in bitmap, growing it if needed.
+  static long[] set(long[] bitmap, int columnIndex) {
+    int word = (columnIndex - 1) >>> 6;
+    if (word >= bitmap.length) {
+      bitmap = Arrays.copyOf(bitmap, Math.max(word + 1, 2 * bitmap.length));
+    }
+    bitmap[word] |= 1L << ((columnIndex - 1) & 63);
+    return bitmap;
+  }
+
+  static boolean isSet(long[] bitmap, int columnIndex) {
+    int word = (columnIndex - 1) >>> 6;
+    return word < bitmap.length && (bitmap[word] & (1L << ((columnIndex - 1) & 63))) != 0;
+  }
+
+  static int count(long[] bitmap) {
+    int count = 0;
+    for (long word : bitmap) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  // VisibleForTesting
+  static void reset() {
+    usages.clear();
+  }
+}
@@ -0,0 +1,63 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+/** ConcurrencyLimitStats is the state of the concurrency limit of a data source. */
+public final class ConcurrencyLimitStats {
+  private final String dataSource;
+  private final int limit;
+  private final int inFlight;
+  private final long rejected;
+
+  ConcurrencyLimitStats(String dataSource, int limit, int inFlight, long rejected) {
+    this.dataSource = dataSource;
+    this.limit = limit;
+    this.inFlight = inFlight;
+    this.rejected = rejected;
+  }
+
+  /** Returns the data source, as its database system, host and database name. */
+  public String getDataSource() {
+    return dataSource;
+  }
+
+  /** Returns the current limit of executions in flight. */
+  public int getLimit() {
+    return limit;
+  }
+
+  /** Returns the number of executions in flight. */
+  public int getInFlight() {
+    return inFlight;
+  }
+
+  /** Returns the number of executions rejected since the limit was enabled. */
+  public long getRejected() {
+    return rejected;
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrencyLimitStats{dataSource="
+        + dataSource
+        + ", limit="
+        + limit
+        + ", inFlight="
+        + inFlight
+        + ", rejected="
+        + rejected
+        + "}";
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConcurrencyLimiter bounds the executions in flight against a data source, with a limit that
+ * adapts to their latency.
+ *
+ * <p>The limit follows the gradient between a long-term average of latencies and the latest one:
+ * while latencies stay close to their average the limit grows by about its square root, leaving
+ * room for a small queue in the database, and when latencies rise the limit shrinks in proportion,
+ * down to half of it per sample. Executions past the limit wait up to maxWaitNs for one in flight
+ * to end, and are rejected otherwise.
+ */
+final class ConcurrencyLimiter {
+  // How much latencies may exceed their long-term average before the limit shrinks.
+  private static final double TOLERANCE = 1.5;
+  // The weight of a sample in the limit.
+  private static final double SMOOTHING = 0.2;
+  // The number of samples the long-term average of latencies spans.
+  private static final int LONG_WINDOW = 600;
+
+  private final String dataSource;
+  private final int minLimit;
+  private final int maxLimit;
+  private final long maxWaitNs;
+
+  // Guarded by this.
+  private double limit;
+  private int inFlight;
+  private double longRttNs;
+  private long samples;
+  private long rejected;
+
+  ConcurrencyLimiter(String dataSource, int minLimit, int maxLimit, long maxWaitNs) {
+    this.dataSource = dataSource;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.maxWaitNs = maxWaitNs;
+    this.limit = minLimit;
+  }
+
+  // Returns whether an execution may start, in which case release must be called once it ends.
+  synchronized boolean acquire() {
+    if (inFlight < (int) limit) {
+      inFlight++;
+      return true;
+    }
+
+    long deadlineNs = System.nanoTime() + maxWaitNs;
+    while (inFlight >= (int) limit) {
+      long remainingNs = deadlineNs - System.nanoTime();
+      if (remainingNs <= 0) {
+        rejected++;
+        return false;
+      }
+      try {
+        TimeUnit.NANOSECONDS.timedWait(this, remainingNs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        rejected++;
+        return false;
+      }
+    }
+    inFlight++;
+    return true;
+  }
+
+  // Ends an execution admitted by acquire. Only the latencies of successful executions update
+  // the limit, failures may end early for reasons unrelated to the load of the database.
+  synchronized void release(long rttNs, boolean succeeded) {
+    if (succeeded && rttNs > 0) {
+      update(rttNs, inFlight);
+    }
+    inFlight--;
+    notifyAll();
+  }
+
+  private void update(long rttNs, int inFlight) {
+    samples++;
+    double weight = 1.0 / Math.min(samples, LONG_WINDOW);
+    longRttNs = longRttNs * (1 - weight) + rttNs * weight;
+    // Recovering from an overload: let the average follow the latencies down faster.
+    if (longRttNs > 2.0 * rttNs) {
+      longRttNs *= 0.95;
+    }
+
+    // Don't grow the limit while the application doesn't use it.
+    if (inFlight < limit / 2) {
+      return;
+    }
+    double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNs / rttNs));
+    double newLimit = limit * gradient + Math.sqrt(limit);
+    newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+    limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+  }
+
+  synchronized ConcurrencyLimitStats stats() {
+    return new ConcurrencyLimitStats(dataSource, (int) limit, inFlight, rejected);
+  }
+}
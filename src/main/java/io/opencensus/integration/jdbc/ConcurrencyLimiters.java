@@ -0,0 +1,67 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** ConcurrencyLimiters holds the concurrency limiter of each data source. */
+final class ConcurrencyLimiters {
+  // Data sources past this number share a limiter, which bounds the memory of the limiters.
+  // VisibleForTesting
+  static final int MAX_DATA_SOURCES = 256;
+  static final String OTHER_DATA_SOURCES = "other";
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final long maxWaitNs;
+  private final ConcurrentMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+  ConcurrencyLimiters(int minLimit, int maxLimit, long maxWaitNs) {
+    if (minLimit <= 0 || maxLimit < minLimit) {
+      throw new IllegalArgumentException(
+          "Invalid limits [" + minLimit + ", " + maxLimit + "], want 0 < min <= max");
+    }
+    if (maxWaitNs < 0) {
+      throw new IllegalArgumentException("Invalid maximum wait " + maxWaitNs + ", want >= 0");
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.maxWaitNs = maxWaitNs;
+  }
+
+  ConcurrencyLimiter get(String dataSource) {
+    ConcurrencyLimiter limiter = limiters.get(dataSource);
+    if (limiter != null) {
+      return limiter;
+    }
+    if (limiters.size() >= MAX_DATA_SOURCES) {
+      dataSource = OTHER_DATA_SOURCES;
+    }
+    limiter = new ConcurrencyLimiter(dataSource, minLimit, maxLimit, maxWaitNs);
+    ConcurrencyLimiter previous = limiters.putIfAbsent(dataSource, limiter);
+    return previous == null ? limiter : previous;
+  }
+
+  List<ConcurrencyLimitStats> stats() {
+    List<ConcurrencyLimitStats> stats = new ArrayList<>(limiters.size());
+    for (ConcurrencyLimiter limiter : limiters.values()) {
+      stats.add(limiter.stats());
+    }
+    return stats;
+  }
+}
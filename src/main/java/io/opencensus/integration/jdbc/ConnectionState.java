@@ -0,0 +1,79 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * ConnectionState holds the last-known session state of a connection, as set or read through the
+ * JDBC API, so that calls setting the same value again or reading it can skip the driver.
+ *
+ * <p>Like connections, it isn't meant to be used by several threads at once.
+ */
+final class ConnectionState {
+  enum Property {
+    AUTO_COMMIT,
+    READ_ONLY,
+    TRANSACTION_ISOLATION,
+    CATALOG,
+    SCHEMA
+  }
+
+  // Marks the values that aren't known, distinct from null, which is a valid catalog or schema.
+  private static final Object UNKNOWN = new Object();
+
+  private final Object[] values = new Object[Property.values().length];
+
+  ConnectionState() {
+    forgetAll();
+  }
+
+  boolean isKnown(Property property) {
+    return values[property.ordinal()] != UNKNOWN;
+  }
+
+  // Returns whether the value of property is known to be value.
+  boolean is(Property property, @Nullable Object value) {
+    Object known = values[property.ordinal()];
+    return known != UNKNOWN && Objects.equals(known, value);
+  }
+
+  // Returns the known value of property, which must be known.
+  @Nullable
+  Object get(Property property) {
+    Object known = values[property.ordinal()];
+    if (known == UNKNOWN) {
+      throw new IllegalStateException(property + " isn't known");
+    }
+    return known;
+  }
+
+  void remember(Property property, @Nullable Object value) {
+    values[property.ordinal()] = value;
+  }
+
+  // Forgets the value of property, e.g. before setting it, so that it stays unknown if setting
+  // it fails.
+  void forget(Property property) {
+    values[property.ordinal()] = UNKNOWN;
+  }
+
+  void forgetAll() {
+    for (int i = 0; i < values.length; i++) {
+      values[i] = UNKNOWN;
+    }
+  }
+}
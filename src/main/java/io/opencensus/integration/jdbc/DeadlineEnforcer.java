@@ -0,0 +1,118 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.opencensus.trace.Span;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * DeadlineEnforcer bounds the executions of a statement by the deadline of the current {@link
+ * Context}, as set by RPC frameworks, and by the timeout configured for their SQL fingerprint.
+ *
+ * <p>The remaining time is applied as the query timeout of the driver's statement, rounded up to
+ * seconds and only when it changes, and the shared {@link DeadlineWatchdog} cancels executions
+ * still running at their deadline, for drivers that don't enforce query timeouts promptly. A query
+ * timeout set by the application still applies when it is shorter.
+ *
+ * <p>Like statements, it isn't meant to be used by several threads at once.
+ */
+final class DeadlineEnforcer {
+  // The timeouts of SQL fingerprints in nanoseconds.
+  private static final ConcurrentMap<String, Long> fingerprintTimeoutsNs =
+      new ConcurrentHashMap<>();
+
+  private final Statement statement;
+  private final DeadlineWatchdog watchdog;
+  // The query timeout set by the application in seconds, 0 for none.
+  private int applicationTimeoutSeconds;
+  // The query timeout last applied to the driver's statement in seconds.
+  private int appliedTimeoutSeconds;
+
+  DeadlineEnforcer(Statement statement) {
+    this(statement, DeadlineWatchdog.shared);
+  }
+
+  // VisibleForTesting
+  DeadlineEnforcer(Statement statement, DeadlineWatchdog watchdog) {
+    this.statement = statement;
+    this.watchdog = watchdog;
+  }
+
+  static void setFingerprintTimeout(String fingerprint, long timeoutNs) {
+    if (timeoutNs <= 0) {
+      throw new IllegalArgumentException("Invalid timeout " + timeoutNs + "ns, want > 0");
+    }
+    fingerprintTimeoutsNs.put(fingerprint, timeoutNs);
+  }
+
+  static void removeFingerprintTimeout(String fingerprint) {
+    fingerprintTimeoutsNs.remove(fingerprint);
+  }
+
+  // Records the query timeout the application set on the driver's statement.
+  void setApplicationTimeout(int seconds) {
+    this.applicationTimeoutSeconds = seconds;
+    this.appliedTimeoutSeconds = seconds;
+  }
+
+  // Prepares an execution by method of the statement, returns the task cancelling it at its
+  // deadline if it has one, which must be disarmed once it ends.
+  @Nullable
+  DeadlineWatchdog.Task arm(String method, @Nullable SqlInfo sqlInfo, @Nullable Span span)
+      throws SQLException {
+    long timeoutNs = timeoutNs(sqlInfo);
+    if (timeoutNs == 0) {
+      Observability.recordDeadlineCancellation(method);
+      throw new SQLTimeoutException("Deadline exceeded before executing " + method);
+    }
+
+    int seconds = applicationTimeoutSeconds;
+    if (timeoutNs > 0) {
+      long deadlineSeconds = (timeoutNs + TimeUnit.SECONDS.toNanos(1) - 1) / 1000000000L;
+      if (seconds == 0 || deadlineSeconds < seconds) {
+        seconds = (int) Math.min(Integer.MAX_VALUE, deadlineSeconds);
+      }
+    }
+    if (seconds != appliedTimeoutSeconds) {
+      statement.setQueryTimeout(seconds);
+      appliedTimeoutSeconds = seconds;
+    }
+    return timeoutNs > 0 ? watchdog.schedule(statement, method, span, timeoutNs) : null;
+  }
+
+  // Returns the time left for an execution of sqlInfo, 0 if none is, or -1 if it is unbounded.
+  static long timeoutNs(@Nullable SqlInfo sqlInfo) {
+    long timeoutNs = -1;
+    Deadline deadline = Context.current().getDeadline();
+    if (deadline != null) {
+      timeoutNs = Math.max(0, deadline.timeRemaining(TimeUnit.NANOSECONDS));
+    }
+    if (sqlInfo != null && !fingerprintTimeoutsNs.isEmpty()) {
+      Long fingerprintTimeoutNs = fingerprintTimeoutsNs.get(sqlInfo.getFingerprint());
+      if (fingerprintTimeoutNs != null && (timeoutNs < 0 || fingerprintTimeoutNs < timeoutNs)) {
+        timeoutNs = fingerprintTimeoutNs;
+      }
+    }
+    return timeoutNs;
+  }
+}
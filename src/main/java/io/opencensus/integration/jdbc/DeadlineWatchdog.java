@@ -0,0 +1,228 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.trace.Span;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.Nullable;
+
+/**
+ * DeadlineWatchdog cancels the statements still executing at their deadline, from a single
+ * thread shared by all statements.
+ *
+ * <p>Deadlines are kept in a hashed timer wheel: scheduling and disarming one are constant-time
+ * and don't contend with each other, at the cost of cancelling up to a tick late. Disarmed tasks
+ * are dropped when the wheel next passes their slot. The thread sleeps while no deadline is
+ * pending.
+ */
+final class DeadlineWatchdog {
+  // VisibleForTesting
+  static final long DEFAULT_TICK_NS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final int DEFAULT_WHEEL_SIZE = 512;
+
+  static final DeadlineWatchdog shared = new DeadlineWatchdog(DEFAULT_TICK_NS, DEFAULT_WHEEL_SIZE);
+
+  // The states of a task.
+  private static final int ARMED = 0;
+  private static final int FIRING = 1;
+  private static final int DONE = 2;
+
+  // The cancellation of a statement at its deadline, unless disarmed first.
+  static final class Task {
+    private final Statement statement;
+    private final String method;
+    @Nullable private final Span span;
+    private final long deadlineNs;
+    private final AtomicInteger state = new AtomicInteger(ARMED);
+    // The turns of the wheel left until the deadline, only used by the watchdog thread.
+    private long rounds;
+
+    Task(Statement statement, String method, @Nullable Span span, long deadlineNs) {
+      this.statement = statement;
+      this.method = method;
+      this.span = span;
+      this.deadlineNs = deadlineNs;
+    }
+
+    // Disarms this task once the execution ends, returns whether it hadn't fired already. Waits
+    // for a cancellation in progress, so that it can't reach the next execution of the statement.
+    boolean disarm() {
+      if (state.compareAndSet(ARMED, DONE)) {
+        return true;
+      }
+      boolean interrupted = false;
+      synchronized (this) {
+        while (state.get() == FIRING) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      return false;
+    }
+
+    private boolean isDone() {
+      return state.get() == DONE;
+    }
+
+    private synchronized void fired() {
+      state.set(DONE);
+      notifyAll();
+    }
+  }
+
+  private final long tickNs;
+  private final List<List<Task>> wheel;
+  private final ConcurrentLinkedQueue<Task> scheduled = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean started = new AtomicBoolean();
+  @Nullable private volatile Thread thread;
+  // Whether the thread sleeps until a task is scheduled.
+  private volatile boolean idle;
+
+  // Only used by the watchdog thread.
+  private long startNs;
+  private long tick;
+  // The tasks in the wheel, including the disarmed ones not dropped yet.
+  private int wheeled;
+
+  // VisibleForTesting
+  DeadlineWatchdog(long tickNs, int wheelSize) {
+    if (Integer.bitCount(wheelSize) != 1) {
+      throw new IllegalArgumentException("Invalid wheel size " + wheelSize + ", want a power of 2");
+    }
+    this.tickNs = tickNs;
+    this.wheel = new ArrayList<>(wheelSize);
+    for (int i = 0; i < wheelSize; i++) {
+      wheel.add(new ArrayList<Task>());
+    }
+  }
+
+  // Schedules the cancellation of statement timeoutNs from now.
+  Task schedule(Statement statement, String method, @Nullable Span span, long timeoutNs) {
+    Task task = new Task(statement, method, span, System.nanoTime() + timeoutNs);
+    scheduled.add(task);
+    if (!started.get() && started.compareAndSet(false, true)) {
+      start();
+    } else if (idle) {
+      LockSupport.unpark(thread);
+    }
+    return task;
+  }
+
+  private void start() {
+    startNs = System.nanoTime();
+    Thread thread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                while (true) {
+                  advance();
+                }
+              }
+            },
+            "ocjdbc-deadline-watchdog");
+    thread.setDaemon(true);
+    this.thread = thread;
+    thread.start();
+  }
+
+  // Waits for the next tick, and cancels the statements due by then.
+  private void advance() {
+    if (wheeled == 0 && scheduled.isEmpty()) {
+      sleepUntilScheduled();
+    }
+    long sleepNs = startNs + (tick + 1) * tickNs - System.nanoTime();
+    if (sleepNs > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(sleepNs);
+      } catch (InterruptedException e) {
+        // Nobody interrupts the watchdog but to stop it, which never happens.
+        return;
+      }
+    }
+
+    int mask = wheel.size() - 1;
+    for (Task task; (task = scheduled.poll()) != null; ) {
+      // The tick by the end of which the deadline passes, never before the current one.
+      long deadlineTick = Math.max(tick, (task.deadlineNs - startNs) / tickNs);
+      task.rounds = (deadlineTick - tick) / wheel.size();
+      wheel.get((int) (deadlineTick & mask)).add(task);
+      wheeled++;
+    }
+
+    Iterator<Task> it = wheel.get((int) (tick & mask)).iterator();
+    while (it.hasNext()) {
+      Task task = it.next();
+      if (task.isDone()) {
+        it.remove();
+        wheeled--;
+      } else if (task.rounds <= 0) {
+        it.remove();
+        wheeled--;
+        cancel(task);
+      } else {
+        task.rounds--;
+      }
+    }
+    tick++;
+  }
+
+  // Parks the thread while the wheel is empty, then resumes ticking from the current time.
+  private void sleepUntilScheduled() {
+    idle = true;
+    // A task scheduled before idle was set is seen here, those scheduled after unpark the thread.
+    while (scheduled.isEmpty()) {
+      LockSupport.park(this);
+    }
+    idle = false;
+    tick = Math.max(tick, (System.nanoTime() - startNs) / tickNs);
+  }
+
+  private static void cancel(Task task) {
+    if (!task.state.compareAndSet(ARMED, FIRING)) {
+      return;
+    }
+    // The execution ending meanwhile waits for the cancellation in disarm, so that it can't
+    // cancel the next execution of the statement.
+    try {
+      if (task.span != null) {
+        task.span.addAnnotation("Cancelled at its deadline");
+      }
+      try {
+        task.statement.cancel();
+      } catch (SQLException | RuntimeException e) {
+        // The execution still ends by its query timeout.
+      }
+      Observability.recordDeadlineCancellation(task.method);
+    } finally {
+      task.fired();
+    }
+  }
+}
@@ -0,0 +1,225 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.common.Scope;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.Tagger;
+import io.opencensus.tags.Tags;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.Tracer;
+import io.opencensus.trace.Tracing;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DeferredCloser closes the statements and cursors of a connection on a background thread, so
+ * that their closes don't add a round-trip to the end of requests.
+ *
+ * <p>The closes of a connection run one at a time, in the order they were deferred, and all of
+ * them are done before the connection itself is closed. Closes are run synchronously instead
+ * when the closes queued across all connections reach their capacity, or once the connection is
+ * closing. A deferred close that fails can't report its exception to the application, it is
+ * recorded on the span and the metrics of the close only.
+ */
+final class DeferredCloser {
+  // VisibleForTesting
+  static final int DEFAULT_CAPACITY = 1024;
+  private static final int THREADS = 2;
+
+  interface Closer {
+    void close() throws SQLException;
+  }
+
+  private static final class Pending {
+    final String method;
+    final Closer closer;
+    final long deferredNs;
+    // The span and tags of the caller, for the close to be attributed to its request.
+    final Span span;
+    final TagContext tags;
+
+    Pending(String method, Closer closer, long deferredNs, Span span, TagContext tags) {
+      this.method = method;
+      this.closer = closer;
+      this.deferredNs = deferredNs;
+      this.span = span;
+      this.tags = tags;
+    }
+  }
+
+  private static final Tracer tracer = Tracing.getTracer();
+  private static final Tagger tagger = Tags.getTagger();
+
+  // The closes queued across all connections.
+  private static final AtomicInteger queued = new AtomicInteger();
+  private static volatile int capacity = DEFAULT_CAPACITY;
+
+  // The number of queued closes is bounded by capacity, the queue of the executor holds at most
+  // one task per connection with closes queued.
+  private static final Executor executor = newExecutor();
+
+  private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+  // Whether a task draining pending is scheduled or running.
+  private boolean scheduled;
+  // Whether a close is running in the background.
+  private boolean inFlight;
+  // Whether the connection is closing, after which closes are no longer deferred.
+  private boolean closing;
+
+  private final Runnable drainTask =
+      new Runnable() {
+        @Override
+        public void run() {
+          drain();
+        }
+      };
+
+  private static Executor newExecutor() {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            THREADS,
+            THREADS,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+              private final AtomicInteger threads = new AtomicInteger();
+
+              @Override
+              public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ocjdbc-deferred-close-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  static void setCapacity(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity + ", want >= 0");
+    }
+    DeferredCloser.capacity = capacity;
+  }
+
+  // Returns whether the close was deferred, otherwise the caller must close synchronously.
+  boolean defer(String method, Closer closer) {
+    int depth;
+    boolean schedule;
+    synchronized (this) {
+      if (closing) {
+        return false;
+      }
+      depth = queued.incrementAndGet();
+      if (depth > capacity) {
+        queued.decrementAndGet();
+        return false;
+      }
+      pending.add(
+          new Pending(
+              method,
+              closer,
+              System.nanoTime(),
+              tracer.getCurrentSpan(),
+              tagger.getCurrentTagContext()));
+      schedule = !scheduled;
+      scheduled = true;
+    }
+
+    Observability.recordDeferredCloseQueueDepth(method, depth);
+    if (schedule) {
+      try {
+        executor.execute(drainTask);
+      } catch (RejectedExecutionException e) {
+        drain();
+      }
+    }
+    return true;
+  }
+
+  // Stops deferring closes, and runs the closes still queued on the calling thread, after the one
+  // running in the background if any. Connections call this before closing.
+  void closeAll() {
+    List<Pending> remaining;
+    boolean interrupted = false;
+    synchronized (this) {
+      closing = true;
+      remaining = new ArrayList<>(pending);
+      pending.clear();
+      while (inFlight) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    queued.addAndGet(-remaining.size());
+    for (Pending next : remaining) {
+      run(next);
+    }
+  }
+
+  private void drain() {
+    while (true) {
+      Pending next;
+      synchronized (this) {
+        next = pending.poll();
+        if (next == null) {
+          scheduled = false;
+          return;
+        }
+        inFlight = true;
+      }
+      queued.decrementAndGet();
+
+      try {
+        try (Scope ws = tracer.withSpan(next.span);
+            Scope wt = tagger.withTagContext(next.tags)) {
+          run(next);
+        }
+      } finally {
+        synchronized (this) {
+          inFlight = false;
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  private static void run(Pending next) {
+    try {
+      next.closer.close();
+    } catch (SQLException | RuntimeException e) {
+      // Already recorded by the close, and there is nobody left to report it to.
+    }
+    Observability.recordDeferredCloseDelay(next.method, System.nanoTime() - next.deferredNs);
+  }
+}
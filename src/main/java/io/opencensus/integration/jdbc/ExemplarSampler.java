@@ -0,0 +1,69 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ExemplarSampler picks the calls whose trace is attached as an exemplar to the bucket of their
+ * latency: at most one per bucket per interval.
+ *
+ * <p>Sampling costs a read of the time the bucket was last sampled, and a compare-and-set when the
+ * interval has elapsed. Of concurrent calls landing in the same bucket, only the one winning the
+ * compare-and-set is sampled.
+ */
+final class ExemplarSampler {
+  private final double[] boundaries;
+  private final long intervalNs;
+  private final AtomicLongArray lastSampledNs;
+
+  ExemplarSampler(List<Double> boundaries, long intervalNs) {
+    this.boundaries = new double[boundaries.size()];
+    for (int i = 0; i < this.boundaries.length; i++) {
+      this.boundaries[i] = boundaries.get(i);
+    }
+    this.intervalNs = intervalNs;
+    // One more bucket than boundaries, for the values below the first boundary.
+    this.lastSampledNs = new AtomicLongArray(this.boundaries.length + 1);
+    long nowNs = System.nanoTime();
+    for (int i = 0; i < this.lastSampledNs.length(); i++) {
+      this.lastSampledNs.set(i, nowNs - intervalNs);
+    }
+  }
+
+  // Returns whether the call of the given latency is the exemplar of its bucket. Callers only ask
+  // for the calls of sampled traces, the others would use up the slot of their bucket.
+  boolean sample(double value, long nowNs) {
+    int bucket = bucket(value);
+    long last = lastSampledNs.get(bucket);
+    return nowNs - last >= intervalNs && lastSampledNs.compareAndSet(bucket, last, nowNs);
+  }
+
+  // Returns the index of the bucket of value, as counted by a distribution with these boundaries.
+  private int bucket(double value) {
+    int low = 0;
+    int high = boundaries.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (boundaries[mid] <= value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
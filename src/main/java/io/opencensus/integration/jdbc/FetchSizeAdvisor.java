@@ -0,0 +1,148 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * FetchSizeAdvisor recommends fetch sizes per SQL fingerprint from the rows that cursors of that
+ * fingerprint actually fetched.
+ *
+ * <p>A fetch size is only recommended when the driver fetched rows in batches, i.e. reported a
+ * positive fetch size, and the cursors fetched more rows than one batch holds. Drivers that buffer
+ * whole results report a fetch size of 0 and are left alone, since a positive fetch size would
+ * switch them to cursor based fetching and add round-trips.
+ */
+final class FetchSizeAdvisor {
+  // VisibleForTesting
+  static final int DEFAULT_MIN_FETCH_SIZE = 10;
+  static final int DEFAULT_MAX_FETCH_SIZE = 1000;
+  static final int MAX_TRACKED_FINGERPRINTS = 1024;
+
+  // The weight of the latest execution in the moving average of fetched rows.
+  private static final double ALPHA = 0.25;
+
+  private static final ConcurrentMap<String, Observation> observations =
+      new ConcurrentHashMap<>();
+
+  private static volatile int minFetchSize = DEFAULT_MIN_FETCH_SIZE;
+  private static volatile int maxFetchSize = DEFAULT_MAX_FETCH_SIZE;
+
+  private FetchSizeAdvisor() {}
+
+  private static final class Observation {
+    // Updated without synchronization: a lost update only delays the average slightly.
+    volatile double averageRows;
+    // The fetch size the driver used when left to its own defaults.
+    volatile int driverFetchSize;
+
+    Observation(long rows, int driverFetchSize) {
+      this.averageRows = rows;
+      this.driverFetchSize = driverFetchSize;
+    }
+  }
+
+  static void setBounds(int min, int max) {
+    if (min <= 0 || max < min) {
+      throw new IllegalArgumentException(
+          "Invalid fetch size bounds [" + min + ", " + max + "], want 0 < min <= max");
+    }
+    minFetchSize = min;
+    maxFetchSize = max;
+  }
+
+  // Records that a cursor of fingerprint fetched rows with the given fetch size in effect.
+  // adapted reports whether that fetch size was applied by this advisor.
+  static void observe(String fingerprint, long rows, int fetchSize, boolean adapted) {
+    Observation observation = observations.get(fingerprint);
+    if (observation == null) {
+      if (adapted) {
+        // The observations were reset since the fetch size was recommended.
+        return;
+      }
+      if (observations.size() >= MAX_TRACKED_FINGERPRINTS) {
+        observations.clear();
+      }
+      observations.putIfAbsent(fingerprint, new Observation(rows, fetchSize));
+      return;
+    }
+
+    observation.averageRows = ALPHA * rows + (1 - ALPHA) * observation.averageRows;
+    if (!adapted) {
+      observation.driverFetchSize = fetchSize;
+    }
+  }
+
+  // Returns the recommended fetch size for fingerprint, or 0 if the driver's default should be
+  // kept.
+  static int recommend(String fingerprint) {
+    Observation observation = observations.get(fingerprint);
+    if (observation == null) {
+      return 0;
+    }
+    return recommend(observation.averageRows, observation.driverFetchSize);
+  }
+
+  // VisibleForTesting
+  static int recommend(double averageRows, int driverFetchSize) {
+    if (driverFetchSize <= 0 || averageRows <= driverFetchSize) {
+      return 0;
+    }
+
+    // Round up to a power of two, so that small variations in the number of rows don't cause the
+    // fetch size to be set again on every execution.
+    long rows = (long) Math.ceil(averageRows);
+    long recommended = Long.highestOneBit(rows);
+    if (recommended < rows) {
+      recommended <<= 1;
+    }
+    int min = Math.max(minFetchSize, driverFetchSize);
+    return (int) Math.max(min, Math.min(maxFetchSize, recommended));
+  }
+
+  // Estimates the round-trips a cursor needed to fetch rows with the given fetch size. A fetch
+  // size of 0 means the driver fetched all rows at once.
+  static long roundtrips(long rows, int fetchSize) {
+    if (rows <= 0) {
+      return 1;
+    }
+    if (fetchSize <= 0) {
+      return 1;
+    }
+    return (rows + fetchSize - 1) / fetchSize;
+  }
+
+  static Map<String, Integer> recommendations() {
+    Map<String, Integer> recommendations = new HashMap<>();
+    for (Map.Entry<String, Observation> entry : observations.entrySet()) {
+      int recommended =
+          recommend(entry.getValue().averageRows, entry.getValue().driverFetchSize);
+      if (recommended > 0) {
+        recommendations.put(entry.getKey(), recommended);
+      }
+    }
+    return recommendations;
+  }
+
+  // VisibleForTesting
+  static void reset() {
+    observations.clear();
+    minFetchSize = DEFAULT_MIN_FETCH_SIZE;
+    maxFetchSize = DEFAULT_MAX_FETCH_SIZE;
+  }
+}
@@ -0,0 +1,76 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+/** FingerprintStats is the usage of the database by the statements of a SQL fingerprint. */
+public final class FingerprintStats {
+  private final String fingerprint;
+  private final long totalTimeNs;
+  private final long calls;
+  private final long rows;
+  private final long maxOverestimationNs;
+
+  FingerprintStats(
+      String fingerprint, long totalTimeNs, long calls, long rows, long maxOverestimationNs) {
+    this.fingerprint = fingerprint;
+    this.totalTimeNs = totalTimeNs;
+    this.calls = calls;
+    this.rows = rows;
+    this.maxOverestimationNs = maxOverestimationNs;
+  }
+
+  /** Returns the SQL fingerprint, i.e. the SQL with its literals replaced by "?". */
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  /** Returns the total time of the calls executing the statements and fetching their rows. */
+  public long getTotalTimeNs() {
+    return totalTimeNs;
+  }
+
+  /** Returns the number of executions of the statements. */
+  public long getCalls() {
+    return calls;
+  }
+
+  /** Returns the number of rows fetched from the results of the statements. */
+  public long getRows() {
+    return rows;
+  }
+
+  /**
+   * Returns by how much the total time may be overestimated. The fingerprint took the place of
+   * fingerprints evicted from the sketch and inherited their time, the other counts exclude it.
+   */
+  public long getMaxOverestimationNs() {
+    return maxOverestimationNs;
+  }
+
+  @Override
+  public String toString() {
+    return "FingerprintStats{fingerprint="
+        + fingerprint
+        + ", totalTimeNs="
+        + totalTimeNs
+        + ", calls="
+        + calls
+        + ", rows="
+        + rows
+        + ", maxOverestimationNs="
+        + maxOverestimationNs
+        + "}";
+  }
+}
@@ -0,0 +1,139 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HeavyHitters tracks the SQL fingerprints with the largest total time in fixed memory, using the
+ * Space-Saving algorithm.
+ *
+ * <p>Each stripe counts at most capacity fingerprints. A fingerprint missing from a full stripe
+ * replaces the one with the least total time and inherits that time as its overestimation. Any
+ * fingerprint whose total time exceeds 1/capacity of the time recorded in its stripe is
+ * guaranteed to be tracked.
+ */
+final class HeavyHitters {
+  // Fingerprints are spread over stripes by their hash, so that concurrent updates of different
+  // fingerprints rarely contend on the same lock.
+  private static final int STRIPES = 8;
+
+  private final int capacity;
+  private final Stripe[] stripes;
+
+  private static final class Counter {
+    final String fingerprint;
+    long totalTimeNs;
+    long calls;
+    long rows;
+    long overestimationNs;
+
+    Counter(String fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+  }
+
+  private final class Stripe {
+    private final Map<String, Counter> counters = new HashMap<>();
+
+    synchronized void record(String fingerprint, long timeNs, long calls) {
+      Counter counter = counters.get(fingerprint);
+      if (counter == null) {
+        counter = new Counter(fingerprint);
+        if (counters.size() >= capacity) {
+          Counter min = null;
+          for (Counter c : counters.values()) {
+            if (min == null || c.totalTimeNs < min.totalTimeNs) {
+              min = c;
+            }
+          }
+          counters.remove(min.fingerprint);
+          counter.totalTimeNs = min.totalTimeNs;
+          counter.overestimationNs = min.totalTimeNs;
+        }
+        counters.put(fingerprint, counter);
+      }
+      counter.totalTimeNs += timeNs;
+      counter.calls += calls;
+    }
+
+    synchronized void recordRows(String fingerprint, long rows) {
+      // Rows don't take part in the ranking, so they aren't worth evicting a fingerprint for.
+      Counter counter = counters.get(fingerprint);
+      if (counter != null) {
+        counter.rows += rows;
+      }
+    }
+
+    synchronized void snapshot(List<FingerprintStats> stats, boolean reset) {
+      for (Counter c : counters.values()) {
+        stats.add(
+            new FingerprintStats(
+                c.fingerprint, c.totalTimeNs, c.calls, c.rows, c.overestimationNs));
+      }
+      if (reset) {
+        counters.clear();
+      }
+    }
+  }
+
+  HeavyHitters(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity + ", want > 0");
+    }
+    this.capacity = capacity;
+    this.stripes = new Stripe[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      this.stripes[i] = new Stripe();
+    }
+  }
+
+  private Stripe stripe(String fingerprint) {
+    return stripes[(fingerprint.hashCode() & Integer.MAX_VALUE) % STRIPES];
+  }
+
+  // Records a call of fingerprint that took timeNs. Calls on cursors add their time to the query
+  // that produced them without counting as executions, with calls set to 0.
+  void record(String fingerprint, long timeNs, long calls) {
+    stripe(fingerprint).record(fingerprint, timeNs, calls);
+  }
+
+  void recordRows(String fingerprint, long rows) {
+    stripe(fingerprint).recordRows(fingerprint, rows);
+  }
+
+  // Returns the capacity fingerprints with the largest total time, largest first. With reset, the
+  // counts restart from zero, so that consecutive snapshots cover consecutive periods.
+  List<FingerprintStats> top(boolean reset) {
+    List<FingerprintStats> stats = new ArrayList<>();
+    for (Stripe stripe : stripes) {
+      stripe.snapshot(stats, reset);
+    }
+    Collections.sort(
+        stats,
+        new Comparator<FingerprintStats>() {
+          @Override
+          public int compare(FingerprintStats a, FingerprintStats b) {
+            return Long.compare(b.getTotalTimeNs(), a.getTotalTimeNs());
+          }
+        });
+    return stats.size() > capacity ? new ArrayList<>(stats.subList(0, capacity)) : stats;
+  }
+}
@@ -0,0 +1,97 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+/** InFlightCall is a call to a driver that hasn't returned yet. */
+public final class InFlightCall {
+  private final String method;
+  private final String fingerprint;
+  private final String dataSource;
+  private final String threadName;
+  private final String spanId;
+  private final long startTimeMillis;
+  private final long elapsedNanos;
+
+  InFlightCall(
+      String method,
+      String fingerprint,
+      String dataSource,
+      String threadName,
+      String spanId,
+      long startTimeMillis,
+      long elapsedNanos) {
+    this.method = method;
+    this.fingerprint = fingerprint;
+    this.dataSource = dataSource;
+    this.threadName = threadName;
+    this.spanId = spanId;
+    this.startTimeMillis = startTimeMillis;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /** Returns the JDBC method called, e.g. "java.sql.Statement.executeQuery". */
+  public String getMethod() {
+    return method;
+  }
+
+  /** Returns the SQL fingerprint of the statement, or "" if the call has no SQL. */
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  /** Returns the database system, host and database of the connection, or "" if unknown. */
+  public String getDataSource() {
+    return dataSource;
+  }
+
+  /** Returns the name of the thread that made the call. */
+  public String getThreadName() {
+    return threadName;
+  }
+
+  /** Returns the hex-encoded id of the span of the call, or "" if it isn't traced. */
+  public String getSpanId() {
+    return spanId;
+  }
+
+  /** Returns the wall-clock time the call started at, in milliseconds since the epoch. */
+  public long getStartTimeMillis() {
+    return startTimeMillis;
+  }
+
+  /** Returns the time since the call started in nanoseconds. */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "InFlightCall{method="
+        + method
+        + ", fingerprint="
+        + fingerprint
+        + ", dataSource="
+        + dataSource
+        + ", thread="
+        + threadName
+        + ", spanId="
+        + spanId
+        + ", startTimeMillis="
+        + startTimeMillis
+        + ", elapsedMillis="
+        + elapsedNanos / 1000000
+        + "}";
+  }
+}
@@ -0,0 +1,28 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+/**
+ * InFlightCallsMXBean lists the calls to drivers in flight over JMX, once registered by {@link
+ * Observability#registerInFlightCallsMBean} and tracked since {@link
+ * Observability#enableInFlightCalls}.
+ */
+public interface InFlightCallsMXBean {
+  /** Returns the number of calls in flight. */
+  int getInFlightCount();
+
+  /** Returns a description of each call in flight, the oldest first. */
+  String[] dumpInFlightCalls();
+}
@@ -0,0 +1,202 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.trace.Span;
+import io.opencensus.trace.SpanContext;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * InFlightRegistry tracks the calls in flight to the drivers, so that they can be listed while
+ * they run, e.g. during an incident.
+ *
+ * <p>Calls are kept in doubly-linked lists striped by thread, so that registering and removing a
+ * call takes an uncontended lock and a few writes, without allocating beyond its entry.
+ */
+final class InFlightRegistry {
+  // VisibleForTesting
+  static final String OBJECT_NAME = "io.opencensus.integration.jdbc:type=InFlightCalls";
+
+  private static final int STRIPES = stripes();
+  private static final Stripe[] stripes = new Stripe[STRIPES];
+
+  static {
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  private InFlightRegistry() {}
+
+  // An entry of a call in flight, linked into the list of its stripe.
+  static final class Entry {
+    final String method;
+    @Nullable final SqlInfo sqlInfo;
+    @Nullable final ConnectionInfo connectionInfo;
+    @Nullable final Span span;
+    final Thread thread;
+    final long startTimeNs;
+    final Stripe stripe;
+
+    // Guarded by stripe.
+    @Nullable Entry previous;
+    @Nullable Entry next;
+
+    Entry(
+        String method,
+        @Nullable SqlInfo sqlInfo,
+        @Nullable ConnectionInfo connectionInfo,
+        @Nullable Span span,
+        Thread thread,
+        long startTimeNs,
+        Stripe stripe) {
+      this.method = method;
+      this.sqlInfo = sqlInfo;
+      this.connectionInfo = connectionInfo;
+      this.span = span;
+      this.thread = thread;
+      this.startTimeNs = startTimeNs;
+      this.stripe = stripe;
+    }
+  }
+
+  private static final class Stripe {
+    @Nullable private Entry head;
+
+    synchronized void add(Entry entry) {
+      entry.next = head;
+      if (head != null) {
+        head.previous = entry;
+      }
+      head = entry;
+    }
+
+    synchronized void remove(Entry entry) {
+      if (entry.previous != null) {
+        entry.previous.next = entry.next;
+      } else {
+        head = entry.next;
+      }
+      if (entry.next != null) {
+        entry.next.previous = entry.previous;
+      }
+      entry.previous = null;
+      entry.next = null;
+    }
+
+    synchronized void snapshot(List<InFlightCall> calls, long nowNs, long nowMillis) {
+      for (Entry entry = head; entry != null; entry = entry.next) {
+        calls.add(toCall(entry, nowNs, nowMillis));
+      }
+    }
+  }
+
+  private static int stripes() {
+    // A power of two of about four stripes per processor.
+    int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+    return Math.max(4, Math.min(256, stripes));
+  }
+
+  // Registers a call that started on the current thread at startTimeNs.
+  static Entry register(
+      String method,
+      @Nullable SqlInfo sqlInfo,
+      @Nullable ConnectionInfo connectionInfo,
+      @Nullable Span span,
+      long startTimeNs) {
+    Thread thread = Thread.currentThread();
+    Stripe stripe = stripes[(int) thread.getId() & (STRIPES - 1)];
+    Entry entry = new Entry(method, sqlInfo, connectionInfo, span, thread, startTimeNs, stripe);
+    stripe.add(entry);
+    return entry;
+  }
+
+  static void remove(Entry entry) {
+    entry.stripe.remove(entry);
+  }
+
+  // Returns the calls in flight, the oldest first.
+  static List<InFlightCall> snapshot() {
+    long nowNs = System.nanoTime();
+    long nowMillis = System.currentTimeMillis();
+    List<InFlightCall> calls = new ArrayList<>();
+    for (Stripe stripe : stripes) {
+      stripe.snapshot(calls, nowNs, nowMillis);
+    }
+    Collections.sort(
+        calls,
+        new Comparator<InFlightCall>() {
+          @Override
+          public int compare(InFlightCall a, InFlightCall b) {
+            return Long.compare(b.getElapsedNanos(), a.getElapsedNanos());
+          }
+        });
+    return calls;
+  }
+
+  private static InFlightCall toCall(Entry entry, long nowNs, long nowMillis) {
+    long elapsedNs = Math.max(0, nowNs - entry.startTimeNs);
+    String spanId = "";
+    SpanContext context = entry.span == null ? null : entry.span.getContext();
+    if (context != null && context.isValid()) {
+      spanId = context.getSpanId().toLowerBase16();
+    }
+    return new InFlightCall(
+        entry.method,
+        entry.sqlInfo == null ? "" : entry.sqlInfo.getFingerprint(),
+        entry.connectionInfo == null ? "" : entry.connectionInfo.getDataSource(),
+        entry.thread.getName(),
+        spanId,
+        nowMillis - elapsedNs / 1000000,
+        elapsedNs);
+  }
+
+  // Registers the InFlightCallsMXBean in the platform MBean server, unless it already is.
+  static void registerMBean() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    try {
+      server.registerMBean(new MXBean(), name);
+    } catch (InstanceAlreadyExistsException e) {
+      // Registered already.
+    }
+  }
+
+  private static final class MXBean implements InFlightCallsMXBean {
+    @Override
+    public int getInFlightCount() {
+      return snapshot().size();
+    }
+
+    @Override
+    public String[] dumpInFlightCalls() {
+      List<InFlightCall> calls = snapshot();
+      String[] lines = new String[calls.size()];
+      for (int i = 0; i < lines.length; i++) {
+        lines[i] = calls.get(i).toString();
+      }
+      return lines;
+    }
+  }
+}
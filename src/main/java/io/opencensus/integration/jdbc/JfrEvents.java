@@ -0,0 +1,36 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import javax.annotation.Nullable;
+
+/**
+ * JfrEvents emits Java Flight Recorder events for JDBC calls.
+ *
+ * <p>The JFR event API is only available from Java 11, so on Java 8 this class does nothing. The
+ * jar is a multi-release jar whose META-INF/versions/11 holds the implementation emitting events.
+ */
+final class JfrEvents {
+  private JfrEvents() {}
+
+  // Begins the event of a call to method. The result is passed back to end, null means that no
+  // event is recorded.
+  @Nullable
+  static Object begin(String method) {
+    return null;
+  }
+
+  static void end(@Nullable Object event, @Nullable SqlInfo sqlInfo, @Nullable String error) {}
+}
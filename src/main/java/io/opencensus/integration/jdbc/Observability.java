@@ -19,6 +19,8 @@ import io.opencensus.stats.Aggregation;
 import io.opencensus.stats.Aggregation.Distribution;
 import io.opencensus.stats.BucketBoundaries;
 import io.opencensus.stats.Measure.MeasureDouble;
+import io.opencensus.stats.Measure.MeasureLong;
+import io.opencensus.stats.MeasureMap;
 import io.opencensus.stats.Stats;
 import io.opencensus.stats.StatsRecorder;
 import io.opencensus.stats.View;
@@ -32,12 +34,24 @@ import io.opencensus.tags.Tagger;
 import io.opencensus.tags.Tags;
 import io.opencensus.trace.AttributeValue;
 import io.opencensus.trace.Span;
+import io.opencensus.trace.SpanContext;
 import io.opencensus.trace.Status;
 import io.opencensus.trace.Tracer;
 import io.opencensus.trace.Tracing;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.sql.DataSource;
 
 /** Observability for JDBC. */
 public final class Observability {
@@ -47,25 +61,233 @@ public final class Observability {
   private static final StatsRecorder statsRecorder = Stats.getStatsRecorder();
   private static final Tagger tagger = Tags.getTagger();
   private static final Tracer tracer = Tracing.getTracer();
+  private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+  // The fraction of operations whose thread CPU time is measured, 0 to disable.
+  private static volatile double cpuTimeSampleProbability = 0;
+
+  // The sketch of the SQL fingerprints with the largest total time, null while disabled.
+  @Nullable private static volatile HeavyHitters topFingerprints;
+
+  // Picks the calls attached as exemplars to the latency distribution, null while disabled.
+  @Nullable private static volatile ExemplarSampler latencyExemplars;
+
+  // Connections that completed a call successfully within this interval are answered valid
+  // without validating them, 0 to always validate them.
+  private static volatile long validationSkipIntervalNs = 0;
+
+  // The quantile sketches of latencies per method and SQL fingerprint, null while disabled.
+  @Nullable private static volatile QuantileSketches quantileSketches;
+
+  // Caps the tables of the per-table views, null while table metrics are disabled.
+  @Nullable private static volatile TableMetrics tableMetrics;
+
+  // The adaptive concurrency limiters of data sources, null while disabled.
+  @Nullable private static volatile ConcurrencyLimiters concurrencyLimiters;
+
+  // Hedges the queries of statements marked hedgeable, null while disabled.
+  @Nullable private static volatile ReadHedging hedging;
+
+  // Whether calls are registered in the InFlightRegistry while they run.
+  private static volatile boolean trackInFlightCalls;
 
   // Units of measurement
   private static final String MILLISECONDS = "ms";
+  private static final String DIMENSIONLESS = "1";
 
   // Tag keys
   static final TagKey JAVA_SQL_METHOD = TagKey.create("java_sql_method");
   static final TagKey JAVA_SQL_ERROR = TagKey.create("java_sql_error");
   static final TagKey JAVA_SQL_STATUS = TagKey.create("java_sql_status");
+  static final TagKey JAVA_SQL_FETCH_SIZE = TagKey.create("java_sql_fetch_size");
+  // The rank of a fingerprint among the top fingerprints of a period, "1" for the largest time.
+  static final TagKey JAVA_SQL_TOP_RANK = TagKey.create("java_sql_top_rank");
+  // The identity of the database of the connection, see ConnectionInfo.
+  static final TagKey JAVA_SQL_DB_SYSTEM = TagKey.create("java_sql_db_system");
+  static final TagKey JAVA_SQL_DB_HOST = TagKey.create("java_sql_db_host");
+  static final TagKey JAVA_SQL_DB_NAME = TagKey.create("java_sql_db_name");
+  static final TagKey JAVA_SQL_DB_USER = TagKey.create("java_sql_db_user");
+  // The operation of the SQL statement, from a fixed vocabulary, see SqlOperation.
+  static final TagKey JAVA_SQL_OPERATION = TagKey.create("java_sql_operation");
+  static final TagKey JAVA_SQL_TABLE = TagKey.create("java_sql_table");
+  // Whether OcRoutingConnection sent a statement to the primary or to a replica.
+  static final TagKey JAVA_SQL_ROUTE = TagKey.create("java_sql_route");
+  // What happened to the hedge of a query, see ReadHedging.
+  static final TagKey JAVA_SQL_HEDGE = TagKey.create("java_sql_hedge");
+
+  // Attachment keys of exemplars
+  static final String ATTACHMENT_TRACE_ID = "TraceId";
+  static final String ATTACHMENT_SPAN_ID = "SpanId";
+  static final String ATTACHMENT_SQL_FINGERPRINT = "SqlFingerprint";
 
   // Tag values
   // VisibleForTesting
   static final TagValue VALUE_OK = TagValue.create("OK");
   static final TagValue VALUE_ERROR = TagValue.create("ERROR");
+  static final TagValue VALUE_FETCH_SIZE_DRIVER = TagValue.create("driver");
+  static final TagValue VALUE_FETCH_SIZE_ADAPTIVE = TagValue.create("adaptive");
+  static final TagValue VALUE_ROUTE_PRIMARY = TagValue.create("primary");
+  static final TagValue VALUE_ROUTE_REPLICA = TagValue.create("replica");
+  static final TagValue VALUE_HEDGE_ISSUED = TagValue.create("issued");
+  static final TagValue VALUE_HEDGE_WON = TagValue.create("won");
+  static final TagValue VALUE_HEDGE_CANCELLED = TagValue.create("cancelled");
+  static final TagValue VALUE_HEDGE_THROTTLED = TagValue.create("throttled");
 
   // Measures
   static final MeasureDouble MEASURE_LATENCY_MS =
       MeasureDouble.create(
           "java.sql/latency", "The latency of calls in milliseconds", MILLISECONDS);
 
+  // The CPU time spent by the calling thread in a call, e.g. decoding rows and converting types in
+  // the driver, and the remainder of its latency, spent waiting e.g. on the network and database.
+  static final MeasureDouble MEASURE_CPU_MS =
+      MeasureDouble.create(
+          "java.sql/cpu",
+          "The CPU time of the calling thread in calls in milliseconds",
+          MILLISECONDS);
+  static final MeasureDouble MEASURE_WAIT_MS =
+      MeasureDouble.create(
+          "java.sql/wait", "The latency of calls not spent on CPU in milliseconds", MILLISECONDS);
+
+  // The lifecycle of a query spans from its execution until its cursor is exhausted or closed.
+  static final MeasureDouble MEASURE_QUERY_LIFECYCLE_MS =
+      MeasureDouble.create(
+          "java.sql/query/lifecycle",
+          "The time from executing a query until its cursor is exhausted or closed",
+          MILLISECONDS);
+  static final MeasureDouble MEASURE_QUERY_FIRST_ROW_MS =
+      MeasureDouble.create(
+          "java.sql/query/first_row",
+          "The time from executing a query until its first row is fetched",
+          MILLISECONDS);
+  static final MeasureDouble MEASURE_QUERY_FETCH_MS =
+      MeasureDouble.create(
+          "java.sql/query/fetch",
+          "The time spent in the driver fetching the rows of a query",
+          MILLISECONDS);
+  static final MeasureDouble MEASURE_QUERY_THINK_MS =
+      MeasureDouble.create(
+          "java.sql/query/think",
+          "The time the application spent between fetching consecutive rows of a query",
+          MILLISECONDS);
+  // Estimated from the rows fetched and the fetch size in effect.
+  static final MeasureLong MEASURE_QUERY_FETCH_ROUNDTRIPS =
+      MeasureLong.create(
+          "java.sql/query/fetch_roundtrips",
+          "The number of round-trips needed to fetch the rows of a query",
+          DIMENSIONLESS);
+  // Getters local to the driver, such as getTimestamp, are aggregated per cursor instead of traced.
+  static final MeasureLong MEASURE_QUERY_LOCAL_CALLS =
+      MeasureLong.create(
+          "java.sql/query/local_calls",
+          "The number of calls to local getters on the cursor of a query",
+          DIMENSIONLESS);
+  static final MeasureDouble MEASURE_QUERY_LOCAL_CALLS_MS =
+      MeasureDouble.create(
+          "java.sql/query/local_calls_latency",
+          "The cumulative latency of calls to local getters on the cursor of a query",
+          MILLISECONDS);
+  static final MeasureLong MEASURE_QUERY_COLUMNS_SELECTED =
+      MeasureLong.create(
+          "java.sql/query/columns_selected",
+          "The number of columns a query selects",
+          DIMENSIONLESS);
+  static final MeasureLong MEASURE_QUERY_COLUMNS_READ =
+      MeasureLong.create(
+          "java.sql/query/columns_read",
+          "The number of columns the application read from the cursor of a query",
+          DIMENSIONLESS);
+
+  static final MeasureLong MEASURE_ELIDED_CALLS =
+      MeasureLong.create(
+          "java.sql/elided_calls",
+          "The number of calls answered by the wrapper without calling the driver",
+          DIMENSIONLESS);
+
+  static final MeasureLong MEASURE_DEFERRED_CLOSE_QUEUE_DEPTH =
+      MeasureLong.create(
+          "java.sql/deferred_close/queue_depth",
+          "The number of closes queued in the background when a close is deferred",
+          DIMENSIONLESS);
+  static final MeasureDouble MEASURE_DEFERRED_CLOSE_DELAY_MS =
+      MeasureDouble.create(
+          "java.sql/deferred_close/delay",
+          "The time from deferring a close until it is done in milliseconds",
+          MILLISECONDS);
+
+  static final MeasureDouble MEASURE_ASYNC_QUEUE_WAIT_MS =
+      MeasureDouble.create(
+          "java.sql/async/queue_wait",
+          "The time asynchronous calls waited to start in milliseconds",
+          MILLISECONDS);
+
+  static final MeasureDouble MEASURE_ASYNC_EXECUTION_MS =
+      MeasureDouble.create(
+          "java.sql/async/execution",
+          "The time asynchronous calls took once started in milliseconds",
+          MILLISECONDS);
+
+  static final MeasureLong MEASURE_CONCURRENCY_REJECTED =
+      MeasureLong.create(
+          "java.sql/concurrency/rejected",
+          "The number of executions rejected by the concurrency limit of their data source",
+          DIMENSIONLESS);
+
+  static final MeasureLong MEASURE_ROUTED_STATEMENTS =
+      MeasureLong.create(
+          "java.sql/routing/statements",
+          "The number of statements routed to the primary or to a replica",
+          DIMENSIONLESS);
+  static final MeasureDouble MEASURE_ROUTED_LATENCY_MS =
+      MeasureDouble.create(
+          "java.sql/routing/latency",
+          "The latency of the executions of routed statements in milliseconds",
+          MILLISECONDS);
+
+  static final MeasureLong MEASURE_COALESCED_QUERIES =
+      MeasureLong.create(
+          "java.sql/query/coalesced",
+          "The number of queries served by the execution of an identical query in flight",
+          DIMENSIONLESS);
+
+  static final MeasureLong MEASURE_HEDGES =
+      MeasureLong.create(
+          "java.sql/hedging/hedges",
+          "The number of hedges of queries issued, won, cancelled and throttled",
+          DIMENSIONLESS);
+
+  static final MeasureLong MEASURE_DEADLINE_CANCELLATIONS =
+      MeasureLong.create(
+          "java.sql/deadline/cancellations",
+          "The number of executions cancelled, or not started, as their deadline passed",
+          DIMENSIONLESS);
+
+  // Only recorded for the top fingerprints by exportTopFingerprints, tagged with their rank rather
+  // than their fingerprint, so that the number of series is bounded by the capacity of the sketch.
+  static final MeasureDouble MEASURE_TOP_FINGERPRINT_TIME_MS =
+      MeasureDouble.create(
+          "java.sql/top/time",
+          "The total time of the statements of the top SQL fingerprints in milliseconds",
+          MILLISECONDS);
+  static final MeasureLong MEASURE_TOP_FINGERPRINT_CALLS =
+      MeasureLong.create(
+          "java.sql/top/calls",
+          "The number of executions of the statements of the top SQL fingerprints",
+          DIMENSIONLESS);
+  static final MeasureLong MEASURE_TOP_FINGERPRINT_ROWS =
+      MeasureLong.create(
+          "java.sql/top/rows",
+          "The number of rows fetched by the statements of the top SQL fingerprints",
+          DIMENSIONLESS);
+
+  // Recorded once per table of a statement, so that its latency can be broken down by table
+  // without counting statements on several tables more than once in the other views.
+  static final MeasureDouble MEASURE_TABLE_LATENCY_MS =
+      MeasureDouble.create(
+          "java.sql/table/latency",
+          "The latency of statements on a table in milliseconds",
+          MILLISECONDS);
+
   // VisibleForTesting
   static final Aggregation DEFAULT_MILLISECONDS_DISTRIBUTION =
       Distribution.create(
@@ -106,7 +328,15 @@ public final class Observability {
                   200000.0,
                   500000.0)));
 
+  static final Aggregation DEFAULT_COUNT_DISTRIBUTION =
+      Distribution.create(
+          BucketBoundaries.create(
+              Arrays.asList(
+                  0.0, 1.0, 2.0, 4.0, 8.0, 16.0, 32.0, 64.0, 128.0, 256.0, 512.0, 1024.0, 4096.0,
+                  16384.0, 65536.0)));
+
   static final Aggregation COUNT = Aggregation.Count.create();
+  static final Aggregation SUM = Aggregation.Sum.create();
 
   static final View SQL_CLIENT_LATENCY_VIEW =
       View.create(
@@ -114,7 +344,15 @@ public final class Observability {
           "The distribution of the latencies of various calls in milliseconds",
           MEASURE_LATENCY_MS,
           DEFAULT_MILLISECONDS_DISTRIBUTION,
-          Arrays.asList(JAVA_SQL_METHOD, JAVA_SQL_ERROR, JAVA_SQL_STATUS));
+          Arrays.asList(
+              JAVA_SQL_METHOD,
+              JAVA_SQL_ERROR,
+              JAVA_SQL_STATUS,
+              JAVA_SQL_DB_SYSTEM,
+              JAVA_SQL_DB_HOST,
+              JAVA_SQL_DB_NAME,
+              JAVA_SQL_DB_USER,
+              JAVA_SQL_OPERATION));
 
   static final View SQL_CLIENT_CALLS_VIEW =
       View.create(
@@ -122,11 +360,259 @@ public final class Observability {
           "The number of various calls of methods",
           MEASURE_LATENCY_MS,
           COUNT,
+          Arrays.asList(
+              JAVA_SQL_METHOD,
+              JAVA_SQL_ERROR,
+              JAVA_SQL_STATUS,
+              JAVA_SQL_DB_SYSTEM,
+              JAVA_SQL_DB_HOST,
+              JAVA_SQL_DB_NAME,
+              JAVA_SQL_DB_USER,
+              JAVA_SQL_OPERATION));
+
+  static final View SQL_CLIENT_CPU_VIEW =
+      View.create(
+          Name.create("java.sql/client/cpu"),
+          "The distribution of the CPU times of the calling threads in calls in milliseconds",
+          MEASURE_CPU_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD, JAVA_SQL_ERROR, JAVA_SQL_STATUS));
+
+  static final View SQL_CLIENT_WAIT_VIEW =
+      View.create(
+          Name.create("java.sql/client/wait"),
+          "The distribution of the latencies of calls not spent on CPU in milliseconds",
+          MEASURE_WAIT_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
           Arrays.asList(JAVA_SQL_METHOD, JAVA_SQL_ERROR, JAVA_SQL_STATUS));
 
+  static final View SQL_CLIENT_QUERY_LIFECYCLE_VIEW =
+      View.create(
+          Name.create("java.sql/client/query/lifecycle"),
+          "The distribution of the times from executing queries until their cursors are done",
+          MEASURE_QUERY_LIFECYCLE_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_QUERY_FIRST_ROW_VIEW =
+      View.create(
+          Name.create("java.sql/client/query/first_row"),
+          "The distribution of the times from executing queries until their first row",
+          MEASURE_QUERY_FIRST_ROW_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_QUERY_FETCH_VIEW =
+      View.create(
+          Name.create("java.sql/client/query/fetch"),
+          "The distribution of the times spent fetching the rows of queries",
+          MEASURE_QUERY_FETCH_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_QUERY_THINK_VIEW =
+      View.create(
+          Name.create("java.sql/client/query/think"),
+          "The distribution of the times applications held cursors open between rows",
+          MEASURE_QUERY_THINK_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_QUERY_FETCH_ROUNDTRIPS_VIEW =
+      View.create(
+          Name.create("java.sql/client/query/fetch_roundtrips"),
+          "The distribution of the round-trips needed to fetch the rows of queries",
+          MEASURE_QUERY_FETCH_ROUNDTRIPS,
+          DEFAULT_COUNT_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD, JAVA_SQL_FETCH_SIZE));
+
+  static final View SQL_CLIENT_QUERY_LOCAL_CALLS_VIEW =
+      View.create(
+          Name.create("java.sql/client/query/local_calls"),
+          "The distribution of the numbers of calls to local getters on the cursors of queries",
+          MEASURE_QUERY_LOCAL_CALLS,
+          DEFAULT_COUNT_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_QUERY_LOCAL_CALLS_LATENCY_VIEW =
+      View.create(
+          Name.create("java.sql/client/query/local_calls_latency"),
+          "The distribution of the cumulative latencies of local getters on the cursors of queries",
+          MEASURE_QUERY_LOCAL_CALLS_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_QUERY_COLUMNS_SELECTED_VIEW =
+      View.create(
+          Name.create("java.sql/client/query/columns_selected"),
+          "The distribution of the numbers of columns selected by queries",
+          MEASURE_QUERY_COLUMNS_SELECTED,
+          DEFAULT_COUNT_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_QUERY_COLUMNS_READ_VIEW =
+      View.create(
+          Name.create("java.sql/client/query/columns_read"),
+          "The distribution of the numbers of columns read from the cursors of queries",
+          MEASURE_QUERY_COLUMNS_READ,
+          DEFAULT_COUNT_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_ELIDED_CALLS_VIEW =
+      View.create(
+          Name.create("java.sql/client/elided_calls"),
+          "The number of calls answered by the wrapper without calling the driver",
+          MEASURE_ELIDED_CALLS,
+          SUM,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_DEFERRED_CLOSE_QUEUE_DEPTH_VIEW =
+      View.create(
+          Name.create("java.sql/client/deferred_close/queue_depth"),
+          "The distribution of the numbers of closes queued in the background",
+          MEASURE_DEFERRED_CLOSE_QUEUE_DEPTH,
+          DEFAULT_COUNT_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_DEFERRED_CLOSE_DELAY_VIEW =
+      View.create(
+          Name.create("java.sql/client/deferred_close/delay"),
+          "The distribution of the times from deferring closes until they are done in milliseconds",
+          MEASURE_DEFERRED_CLOSE_DELAY_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_ASYNC_QUEUE_WAIT_VIEW =
+      View.create(
+          Name.create("java.sql/client/async/queue_wait"),
+          "The distribution of the times asynchronous calls waited to start in milliseconds",
+          MEASURE_ASYNC_QUEUE_WAIT_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_ASYNC_EXECUTION_VIEW =
+      View.create(
+          Name.create("java.sql/client/async/execution"),
+          "The distribution of the times asynchronous calls took once started in milliseconds",
+          MEASURE_ASYNC_EXECUTION_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD, JAVA_SQL_STATUS));
+
+  static final View SQL_CLIENT_CONCURRENCY_REJECTED_VIEW =
+      View.create(
+          Name.create("java.sql/client/concurrency/rejected"),
+          "The number of executions rejected by the concurrency limit of their data source",
+          MEASURE_CONCURRENCY_REJECTED,
+          SUM,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_ROUTED_STATEMENTS_VIEW =
+      View.create(
+          Name.create("java.sql/client/routing/statements"),
+          "The number of statements routed to the primary or to a replica",
+          MEASURE_ROUTED_STATEMENTS,
+          SUM,
+          Arrays.asList(JAVA_SQL_METHOD, JAVA_SQL_ROUTE));
+
+  static final View SQL_CLIENT_ROUTED_LATENCY_VIEW =
+      View.create(
+          Name.create("java.sql/client/routing/latency"),
+          "The distribution of the latencies of routed statements in milliseconds",
+          MEASURE_ROUTED_LATENCY_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_METHOD, JAVA_SQL_ROUTE, JAVA_SQL_STATUS));
+
+  static final View SQL_CLIENT_COALESCED_QUERIES_VIEW =
+      View.create(
+          Name.create("java.sql/client/query/coalesced"),
+          "The number of queries served by the execution of an identical query in flight",
+          MEASURE_COALESCED_QUERIES,
+          SUM,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_HEDGES_VIEW =
+      View.create(
+          Name.create("java.sql/client/hedging/hedges"),
+          "The number of hedges of queries issued, won, cancelled and throttled",
+          MEASURE_HEDGES,
+          SUM,
+          Arrays.asList(JAVA_SQL_METHOD, JAVA_SQL_HEDGE));
+
+  static final View SQL_CLIENT_DEADLINE_CANCELLATIONS_VIEW =
+      View.create(
+          Name.create("java.sql/client/deadline/cancellations"),
+          "The number of executions cancelled, or not started, as their deadline passed",
+          MEASURE_DEADLINE_CANCELLATIONS,
+          SUM,
+          Arrays.asList(JAVA_SQL_METHOD));
+
+  static final View SQL_CLIENT_TOP_FINGERPRINT_TIME_VIEW =
+      View.create(
+          Name.create("java.sql/client/top/time"),
+          "The total time of the statements of the top SQL fingerprints in milliseconds",
+          MEASURE_TOP_FINGERPRINT_TIME_MS,
+          SUM,
+          Arrays.asList(JAVA_SQL_TOP_RANK));
+
+  static final View SQL_CLIENT_TOP_FINGERPRINT_CALLS_VIEW =
+      View.create(
+          Name.create("java.sql/client/top/calls"),
+          "The number of executions of the statements of the top SQL fingerprints",
+          MEASURE_TOP_FINGERPRINT_CALLS,
+          SUM,
+          Arrays.asList(JAVA_SQL_TOP_RANK));
+
+  static final View SQL_CLIENT_TOP_FINGERPRINT_ROWS_VIEW =
+      View.create(
+          Name.create("java.sql/client/top/rows"),
+          "The number of rows fetched by the statements of the top SQL fingerprints",
+          MEASURE_TOP_FINGERPRINT_ROWS,
+          SUM,
+          Arrays.asList(JAVA_SQL_TOP_RANK));
+
+  static final View SQL_CLIENT_TABLE_CALLS_VIEW =
+      View.create(
+          Name.create("java.sql/client/table/calls"),
+          "The number of statements on a table",
+          MEASURE_TABLE_LATENCY_MS,
+          COUNT,
+          Arrays.asList(JAVA_SQL_TABLE, JAVA_SQL_OPERATION, JAVA_SQL_STATUS));
+
+  static final View SQL_CLIENT_TABLE_LATENCY_VIEW =
+      View.create(
+          Name.create("java.sql/client/table/latency"),
+          "The distribution of the latencies of statements on a table in milliseconds",
+          MEASURE_TABLE_LATENCY_MS,
+          DEFAULT_MILLISECONDS_DISTRIBUTION,
+          Arrays.asList(JAVA_SQL_TABLE, JAVA_SQL_OPERATION, JAVA_SQL_STATUS));
+
   public enum TraceOption {
     NONE,
-    ANNOTATE_TRACES_WITH_SQL
+    ANNOTATE_TRACES_WITH_SQL,
+    // Applies the fetch sizes recommended from previous executions to prepared statements whose
+    // fetch size wasn't set by the application.
+    ADAPTIVE_FETCH_SIZE,
+    // Appends sqlcommenter comments to SQL: statements get the trace context of their execution,
+    // prepared statements only the service set by setSqlCommentService.
+    COMMENT_SQL_WITH_TRACE_CONTEXT,
+    // Tracks the auto-commit, read-only, transaction isolation, catalog and schema state of
+    // connections, skipping the calls that set the value they already have and answering the
+    // getters from the known state. State changed through SQL, e.g. SET SCHEMA, isn't seen, so
+    // it shouldn't be used by applications changing their session state that way.
+    TRACK_CONNECTION_STATE,
+    // Closes statements and cursors on a background thread, in order per connection, up to the
+    // capacity set by setDeferredCloseCapacity. Exceptions of deferred closes aren't reported to
+    // the application, and the driver must allow connections to be used from several threads.
+    DEFER_CLOSE,
+    // Bounds executions by the deadline of the current io.grpc.Context and by the timeouts set
+    // with setStatementTimeout: the time left is applied as the query timeout of statements, and
+    // a shared watchdog cancels the executions still running at their deadline.
+    ENFORCE_DEADLINES,
+    // Shares one execution between the identical queries of prepared statements issued
+    // concurrently in auto-commit mode, see QueryCoalescer. Their rows are read into memory, so it
+    // suits queries of a few rows, e.g. those refreshing caches. Requires TRACK_CONNECTION_STATE,
+    // whose auto-commit mode, catalog and schema queries are coalesced by.
+    COALESCE_QUERIES
   }
 
   static boolean shouldAnnotateSpansWithSQL(EnumSet<TraceOption> opts) {
@@ -145,6 +631,24 @@ public final class Observability {
     private final Span span;
     private final long startTimeNs;
     private final String method;
+    @Nullable private final SqlInfo sqlInfo;
+    // The identity of the database of the connection, if known.
+    @Nullable private final ConnectionInfo connectionInfo;
+    // Whether this operation executes its SQL, rather than operating on the cursor of an
+    // execution.
+    private final boolean executesSql;
+    // The Java Flight Recorder event of this operation, if one is being recorded.
+    @Nullable private final Object jfrEvent;
+    // The CPU time of the starting thread when this operation started, or -1 if it isn't sampled.
+    private final Thread startThread;
+    private final long startCpuTimeNs;
+    // The entry of this operation in the registry of calls in flight, null unless tracked.
+    @Nullable private final InFlightRegistry.Entry inFlight;
+    // The concurrency limiter that admitted this execution and when, if limited.
+    @Nullable private ConcurrencyLimiter limiter;
+    private long admittedNs;
+    // The cancellation of this execution at its deadline, with TraceOption.ENFORCE_DEADLINES.
+    @Nullable private DeadlineWatchdog.Task deadline;
     private boolean closed;
     private String recordedError;
 
@@ -153,11 +657,28 @@ public final class Observability {
     private final Tracer tracer;
 
     TrackingOperation(String method) {
-      this(method, null);
+      this(method, null, false, null, null);
     }
 
     TrackingOperation(String method, @Nullable String sql) {
-      this(method, sql, Observability.statsRecorder, Observability.tagger, Observability.tracer);
+      this(method, SqlInfo.of(sql), true, null, null);
+    }
+
+    TrackingOperation(
+        String method,
+        @Nullable SqlInfo sqlInfo,
+        boolean annotateWithSQL,
+        @Nullable Span parentSpan,
+        @Nullable ConnectionInfo connectionInfo) {
+      this(
+          method,
+          sqlInfo,
+          annotateWithSQL,
+          parentSpan,
+          connectionInfo,
+          Observability.statsRecorder,
+          Observability.tagger,
+          Observability.tracer);
     }
 
     // VisibleForTesting
@@ -167,15 +688,43 @@ public final class Observability {
         StatsRecorder statsRecorder,
         Tagger tagger,
         Tracer tracer) {
+      this(method, SqlInfo.of(sql), true, null, null, statsRecorder, tagger, tracer);
+    }
+
+    private TrackingOperation(
+        String method,
+        @Nullable SqlInfo sqlInfo,
+        boolean annotateWithSQL,
+        @Nullable Span parentSpan,
+        @Nullable ConnectionInfo connectionInfo,
+        StatsRecorder statsRecorder,
+        Tagger tagger,
+        Tracer tracer) {
       startTimeNs = System.nanoTime();
-      span = tracer.spanBuilder(method).startSpan();
+      span =
+          parentSpan == null
+              ? tracer.spanBuilder(method).startSpan()
+              : tracer.spanBuilderWithExplicitParent(method, parentSpan).startSpan();
       this.method = method;
-      if (sql != null) {
-        span.putAttribute("sql", AttributeValue.stringAttributeValue(sql));
+      this.sqlInfo = sqlInfo;
+      this.executesSql = parentSpan == null;
+      if (annotateWithSQL && sqlInfo != null) {
+        span.putAttribute("sql", AttributeValue.stringAttributeValue(sqlInfo.getSql()));
+      }
+      this.connectionInfo = connectionInfo;
+      if (connectionInfo != null) {
+        span.putAttributes(connectionInfo.getAttributes());
       }
       this.statsRecorder = statsRecorder;
       this.tagger = tagger;
       this.tracer = tracer;
+      this.jfrEvent = JfrEvents.begin(method);
+      this.startThread = Thread.currentThread();
+      this.startCpuTimeNs = sampleCurrentThreadCpuTime();
+      this.inFlight =
+          trackInFlightCalls
+              ? InFlightRegistry.register(method, sqlInfo, connectionInfo, span, startTimeNs)
+              : null;
     }
 
     @SuppressWarnings("MustBeClosedChecker")
@@ -183,14 +732,90 @@ public final class Observability {
       return tracer.withSpan(span);
     }
 
+    Span getSpan() {
+      return span;
+    }
+
+    String getMethod() {
+      return method;
+    }
+
+    long getStartTimeNs() {
+      return startTimeNs;
+    }
+
+    @Nullable
+    SqlInfo getSqlInfo() {
+      return sqlInfo;
+    }
+
+    @Nullable
+    ConnectionInfo getConnectionInfo() {
+      return connectionInfo;
+    }
+
+    // Admits this execution past the concurrency limiter of its data source, if limits are
+    // enabled. Executions call this within the scope of their span, so that a rejection is
+    // recorded like any other failure.
+    void admit() throws SQLException {
+      ConcurrencyLimiters concurrencyLimiters = Observability.concurrencyLimiters;
+      if (concurrencyLimiters == null || closed) {
+        return;
+      }
+      ConcurrencyLimiter limiter =
+          concurrencyLimiters.get(
+              connectionInfo == null
+                  ? ConcurrencyLimiters.OTHER_DATA_SOURCES
+                  : connectionInfo.getDataSource());
+      if (!limiter.acquire()) {
+        recordConcurrencyRejected(method);
+        ConcurrencyLimitStats stats = limiter.stats();
+        throw new SQLTransientException(
+            "Concurrency limit of "
+                + stats.getLimit()
+                + " executions in flight reached for "
+                + stats.getDataSource());
+      }
+      this.limiter = limiter;
+      this.admittedNs = System.nanoTime();
+    }
+
+    // Bounds this execution by its deadline, if it has one. Like admit, executions call this
+    // within the scope of their span.
+    void enforceDeadline(@Nullable DeadlineEnforcer deadlines) throws SQLException {
+      if (deadlines == null || closed) {
+        return;
+      }
+      this.deadline = deadlines.arm(method, sqlInfo, span);
+    }
+
     void end() {
       if (closed) return;
 
+      long endNs = System.nanoTime();
+      if (inFlight != null) {
+        InFlightRegistry.remove(inFlight);
+      }
+      if (deadline != null) {
+        deadline.disarm();
+        deadline = null;
+      }
+      if (limiter != null) {
+        limiter.release(endNs - admittedNs, recordedError == null);
+        limiter = null;
+      }
+
       try {
         // Finally record the latency of the entire call,
         // as well as "status": "OK" for non-error calls.
         TagContextBuilder tagContextBuilder = tagger.currentBuilder();
         tagContextBuilder.put(JAVA_SQL_METHOD, TagValue.create(this.method));
+        if (connectionInfo != null) {
+          connectionInfo.putTags(tagContextBuilder);
+        }
+        if (sqlInfo != null) {
+          tagContextBuilder.put(JAVA_SQL_OPERATION, sqlInfo.getOperation().getTagValue());
+        }
 
         if (recordedError == null) {
           tagContextBuilder.put(JAVA_SQL_STATUS, VALUE_OK);
@@ -199,17 +824,76 @@ public final class Observability {
           tagContextBuilder.put(JAVA_SQL_STATUS, VALUE_ERROR);
         }
 
-        long totalTimeNs = System.nanoTime() - this.startTimeNs;
+        long totalTimeNs = endNs - this.startTimeNs;
         double timeSpentMs = ((double) totalTimeNs) / 1e6;
+        if (connectionInfo != null && validationSkipIntervalNs > 0) {
+          connectionInfo.recordCallEnd(recordedError == null, endNs);
+        }
+
+        // The CPU time is only meaningful if the operation ended on the thread that started it.
+        long cpuTimeNs = -1;
+        if (this.startCpuTimeNs >= 0 && Thread.currentThread() == this.startThread) {
+          cpuTimeNs = threadMXBean.getCurrentThreadCpuTime() - this.startCpuTimeNs;
+          // Both clocks have their own granularity, CPU time can't exceed the latency though.
+          cpuTimeNs = Math.min(cpuTimeNs, totalTimeNs);
+        }
 
         // Now finally record all the stats the same tags.
-        recordStatWithTags(timeSpentMs, tagContextBuilder.build());
+        recordStatWithTags(timeSpentMs, cpuTimeNs, tagContextBuilder.build());
+
+        TagValue route = connectionInfo == null ? null : connectionInfo.getRoute();
+        if (route != null && executesSql) {
+          recordRouted(connectionInfo, route, endNs, timeSpentMs);
+        }
+
+        TableMetrics tableMetrics = Observability.tableMetrics;
+        if (tableMetrics != null && executesSql && sqlInfo != null) {
+          recordTables(tableMetrics, sqlInfo, timeSpentMs);
+        }
+
+        HeavyHitters topFingerprints = Observability.topFingerprints;
+        if (topFingerprints != null && sqlInfo != null) {
+          topFingerprints.record(sqlInfo.getFingerprint(), totalTimeNs, executesSql ? 1 : 0);
+        }
+        QuantileSketches quantileSketches = Observability.quantileSketches;
+        if (quantileSketches != null) {
+          // Calls on cursors are only sketched per method, the latencies of a fingerprint are
+          // those of its executions.
+          String fingerprint = executesSql && sqlInfo != null ? sqlInfo.getFingerprint() : null;
+          quantileSketches.record(method, fingerprint, totalTimeNs);
+        }
       } finally {
+        JfrEvents.end(jfrEvent, sqlInfo, recordedError);
         span.end();
         closed = true;
       }
     }
 
+    // Records the latency of a statement of a routed connection, and when the connection wrote,
+    // for read-your-writes. Executions of statements without SQL, i.e. batches of statements,
+    // are taken to write.
+    private void recordRouted(
+        ConnectionInfo connectionInfo, TagValue route, long endNs, double timeSpentMs) {
+      boolean writes =
+          sqlInfo == null ? method.endsWith(".executeBatch") : sqlInfo.getOperation().isWrite();
+      if (writes) {
+        connectionInfo.recordWrite(endNs);
+      }
+      if (sqlInfo == null && !writes) {
+        // Not a statement, e.g. a commit.
+        return;
+      }
+      MeasureMap measureMap = statsRecorder.newMeasureMap();
+      measureMap.put(MEASURE_ROUTED_LATENCY_MS, timeSpentMs);
+      measureMap.record(
+          tagger
+              .currentBuilder()
+              .put(JAVA_SQL_METHOD, TagValue.create(method))
+              .put(JAVA_SQL_ROUTE, route)
+              .put(JAVA_SQL_STATUS, recordedError == null ? VALUE_OK : VALUE_ERROR)
+              .build());
+    }
+
     // Annotates the underlying span with the description of the exception. The actual ending
     // will be performed by end.
     void recordException(Exception e) {
@@ -217,8 +901,50 @@ public final class Observability {
       span.setStatus(Status.UNKNOWN.withDescription(recordedError));
     }
 
-    private void recordStatWithTags(double value, TagContext tagContext) {
-      statsRecorder.newMeasureMap().put(Observability.MEASURE_LATENCY_MS, value).record(tagContext);
+    private void recordStatWithTags(double value, long cpuTimeNs, TagContext tagContext) {
+      MeasureMap measureMap = statsRecorder.newMeasureMap();
+      measureMap.put(Observability.MEASURE_LATENCY_MS, value);
+      ExemplarSampler latencyExemplars = Observability.latencyExemplars;
+      if (latencyExemplars != null) {
+        // Only sampled traces can be looked up, and unsampled calls mustn't use up the slot of
+        // their bucket.
+        SpanContext context = span.getContext();
+        if (context != null
+            && context.isValid()
+            && context.getTraceOptions().isSampled()
+            && latencyExemplars.sample(value, System.nanoTime())) {
+          attachExemplar(measureMap, context);
+        }
+      }
+      if (cpuTimeNs >= 0) {
+        double cpuTimeMs = cpuTimeNs / 1e6;
+        measureMap.put(Observability.MEASURE_CPU_MS, cpuTimeMs);
+        measureMap.put(Observability.MEASURE_WAIT_MS, value - cpuTimeMs);
+      }
+      measureMap.record(tagContext);
+    }
+
+    // Records the latency of this statement once for each of its tables.
+    private void recordTables(TableMetrics tableMetrics, SqlInfo sqlInfo, double timeSpentMs) {
+      for (String table : sqlInfo.getTables()) {
+        TagContextBuilder tagContextBuilder = tagger.currentBuilder();
+        tagContextBuilder.put(JAVA_SQL_TABLE, tableMetrics.tagValue(table));
+        tagContextBuilder.put(JAVA_SQL_OPERATION, sqlInfo.getOperation().getTagValue());
+        tagContextBuilder.put(JAVA_SQL_STATUS, recordedError == null ? VALUE_OK : VALUE_ERROR);
+        MeasureMap measureMap = statsRecorder.newMeasureMap();
+        measureMap.put(MEASURE_TABLE_LATENCY_MS, timeSpentMs);
+        measureMap.record(tagContextBuilder.build());
+      }
+    }
+
+    // Attaches the sampled trace of this operation to the recorded latency, as an exemplar of its
+    // bucket.
+    private void attachExemplar(MeasureMap measureMap, SpanContext context) {
+      measureMap.putAttachment(ATTACHMENT_TRACE_ID, context.getTraceId().toLowerBase16());
+      measureMap.putAttachment(ATTACHMENT_SPAN_ID, context.getSpanId().toLowerBase16());
+      if (sqlInfo != null) {
+        measureMap.putAttachment(ATTACHMENT_SQL_FINGERPRINT, sqlInfo.getFingerprint());
+      }
     }
   }
 
@@ -227,8 +953,552 @@ public final class Observability {
   }
 
   static TrackingOperation createRoundtripTrackingSpan(
-      String method, boolean canRecordSQL, String sql) {
-    return new TrackingOperation(method, canRecordSQL ? sql : null);
+      String method, @Nullable ConnectionInfo connectionInfo) {
+    return new TrackingOperation(method, null, false, null, connectionInfo);
+  }
+
+  static TrackingOperation createRoundtripTrackingSpan(
+      String method, boolean canRecordSQL, String sql, @Nullable ConnectionInfo connectionInfo) {
+    return new TrackingOperation(method, SqlInfo.of(sql), canRecordSQL, null, connectionInfo);
+  }
+
+  static TrackingOperation createRoundtripTrackingSpan(
+      String method,
+      boolean canRecordSQL,
+      @Nullable SqlInfo sqlInfo,
+      @Nullable ConnectionInfo connectionInfo) {
+    return new TrackingOperation(method, sqlInfo, canRecordSQL, null, connectionInfo);
+  }
+
+  // Creates the tracking operation of a call on a cursor, as a child of the operation that
+  // produced the cursor so that the time spent on the cursor is attributed to its query.
+  static TrackingOperation createRoundtripTrackingSpan(
+      String method, @Nullable TrackingOperation origin) {
+    if (origin == null) {
+      return new TrackingOperation(method);
+    }
+    return new TrackingOperation(
+        method, origin.getSqlInfo(), false, origin.getSpan(), origin.getConnectionInfo());
+  }
+
+  // Adds rows fetched from a cursor of fingerprint to the top fingerprints, if tracked.
+  static void recordTopFingerprintRows(String fingerprint, long rows) {
+    HeavyHitters topFingerprints = Observability.topFingerprints;
+    if (topFingerprints != null) {
+      topFingerprints.recordRows(fingerprint, rows);
+    }
+  }
+
+  /**
+   * Tracks the SQL fingerprints with the largest total time, i.e. the time of the calls executing
+   * their statements and fetching their rows. The tracking takes memory for a fixed number of
+   * fingerprints, proportional to capacity, whatever the number of distinct statements. It is
+   * disabled by default and capacity 0 disables it again.
+   *
+   * @throws IllegalArgumentException if capacity is negative.
+   */
+  public static void setTopFingerprintsCapacity(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Invalid capacity " + capacity + ", want >= 0");
+    }
+    topFingerprints = capacity == 0 ? null : new HeavyHitters(capacity);
+  }
+
+  /**
+   * Returns the tracked SQL fingerprints with the largest total time, largest first. With reset,
+   * tracking restarts from zero, so that periodic snapshots cover consecutive periods.
+   */
+  public static List<FingerprintStats> getTopFingerprints(boolean reset) {
+    HeavyHitters topFingerprints = Observability.topFingerprints;
+    if (topFingerprints == null) {
+      return Collections.emptyList();
+    }
+    return topFingerprints.top(reset);
+  }
+
+  /**
+   * Records the time, calls and rows of the top SQL fingerprints since the previous export into
+   * the "java.sql/client/top/..." views, and returns them, largest first. It is meant to be called
+   * periodically.
+   *
+   * <p>The views are tagged with the rank of each fingerprint in the period, "1" for the largest,
+   * rather than with the fingerprint, so that they have at most as many series as the capacity of
+   * the sketch however many statements come and go; the returned stats tell which fingerprint held
+   * each rank. The recorded time is a lower bound, {@link FingerprintStats#getMaxOverestimationNs}
+   * is subtracted from the total time of the sketch.
+   */
+  public static List<FingerprintStats> exportTopFingerprints() {
+    List<FingerprintStats> top = getTopFingerprints(true);
+    for (int i = 0; i < top.size(); i++) {
+      FingerprintStats stats = top.get(i);
+      long timeNs = Math.max(0, stats.getTotalTimeNs() - stats.getMaxOverestimationNs());
+      MeasureMap measureMap = statsRecorder.newMeasureMap();
+      measureMap.put(MEASURE_TOP_FINGERPRINT_TIME_MS, timeNs / 1e6);
+      measureMap.put(MEASURE_TOP_FINGERPRINT_CALLS, stats.getCalls());
+      measureMap.put(MEASURE_TOP_FINGERPRINT_ROWS, stats.getRows());
+      measureMap.record(
+          tagger
+              .currentBuilder()
+              .put(JAVA_SQL_TOP_RANK, TagValue.create(Integer.toString(i + 1)))
+              .build());
+    }
+    return top;
+  }
+
+  /**
+   * Attaches the trace of calls as exemplars to the buckets of "java.sql/client/latency", keeping
+   * at most one exemplar per bucket per interval, or disables exemplars for an interval of 0. Only
+   * sampled traces are attached. Exemplars are disabled by default.
+   *
+   * @throws IllegalArgumentException if interval is negative.
+   */
+  public static void setLatencyExemplarInterval(long interval, TimeUnit unit) {
+    if (interval < 0) {
+      throw new IllegalArgumentException("Invalid interval " + interval + ", want >= 0");
+    }
+    latencyExemplars =
+        interval == 0
+            ? null
+            : new ExemplarSampler(
+                ((Distribution) DEFAULT_MILLISECONDS_DISTRIBUTION)
+                    .getBucketBoundaries()
+                    .getBoundaries(),
+                unit.toNanos(interval));
+  }
+
+  /**
+   * Sets the interval within which a connection that completed a call successfully is answered
+   * valid by {@link java.sql.Connection#isValid} without validating it, which skips a round-trip
+   * for connection pools validating connections on every borrow. A failed call makes the next
+   * validation go to the database. The validations skipped are counted in the
+   * "java.sql/client/elided_calls" view. Validations aren't skipped by default.
+   *
+   * @throws IllegalArgumentException if interval is negative.
+   */
+  public static void setValidationSkipInterval(long interval, TimeUnit unit) {
+    if (interval < 0) {
+      throw new IllegalArgumentException("Invalid interval " + interval + ", want >= 0");
+    }
+    validationSkipIntervalNs = unit.toNanos(interval);
+  }
+
+  // Returns whether the connection described by connectionInfo completed a call successfully
+  // recently enough for its validation to be skipped.
+  static boolean isRecentlyValid(@Nullable ConnectionInfo connectionInfo) {
+    long intervalNs = validationSkipIntervalNs;
+    return connectionInfo != null
+        && intervalNs > 0
+        && connectionInfo.succeededWithin(intervalNs, System.nanoTime());
+  }
+
+  /**
+   * Enables limiting the executions of statements in flight per data source, i.e. per database
+   * system, host and database. The limit of each data source starts at minLimit and adapts to the
+   * latencies of its executions within [minLimit, maxLimit]: it grows while they stay steady, and
+   * shrinks as they rise when the database is overloaded. Executions past the limit wait up to
+   * maxWait for another one to end, and fail with a {@link SQLTransientException} otherwise.
+   * Enabling limits again starts them over.
+   *
+   * @throws IllegalArgumentException if the limits aren't within 0 < minLimit <= maxLimit, or if
+   *     maxWait is negative.
+   */
+  public static void enableConcurrencyLimits(
+      int minLimit, int maxLimit, long maxWait, TimeUnit unit) {
+    concurrencyLimiters = new ConcurrencyLimiters(minLimit, maxLimit, unit.toNanos(maxWait));
+  }
+
+  /** Disables limiting the executions of statements in flight. */
+  public static void disableConcurrencyLimits() {
+    concurrencyLimiters = null;
+  }
+
+  /**
+   * Returns the limit, executions in flight and rejected executions of each data source, empty if
+   * concurrency limits aren't enabled.
+   */
+  public static List<ConcurrencyLimitStats> getConcurrencyLimits() {
+    ConcurrencyLimiters concurrencyLimiters = Observability.concurrencyLimiters;
+    if (concurrencyLimiters == null) {
+      return Collections.emptyList();
+    }
+    return concurrencyLimiters.stats();
+  }
+
+  /**
+   * Sets the maximum number of closes queued in the background across all connections by {@link
+   * TraceOption#DEFER_CLOSE}, 1024 by default. Further closes run synchronously, 0 runs all of
+   * them synchronously.
+   *
+   * @throws IllegalArgumentException if capacity is negative.
+   */
+  public static void setDeferredCloseCapacity(int capacity) {
+    DeferredCloser.setCapacity(capacity);
+  }
+
+  /**
+   * Sets the service named in the comments appended to SQL by {@link
+   * TraceOption#COMMENT_SQL_WITH_TRACE_CONTEXT}, or null to leave it out.
+   */
+  public static void setSqlCommentService(@Nullable String service) {
+    SqlCommenter.setService(service);
+  }
+
+  /**
+   * Enables sketching the quantiles of latencies per method and per SQL fingerprint, within the
+   * given relative accuracy, e.g. 0.01 for quantiles within 1% of the exact ones. Each sketch
+   * takes a fixed amount of memory, about 10KB for an accuracy of 1%, and at most 256
+   * fingerprints are sketched. Enabling the sketches again starts them over.
+   *
+   * @throws IllegalArgumentException if relativeAccuracy isn't within (0, 1).
+   */
+  public static void enableQuantileSketches(double relativeAccuracy) {
+    quantileSketches = new QuantileSketches(relativeAccuracy);
+  }
+
+  /** Disables and drops the quantile sketches of latencies. */
+  public static void disableQuantileSketches() {
+    quantileSketches = null;
+  }
+
+  /**
+   * Enables recording the latency of statements per table into the "java.sql/client/table/..."
+   * views. The tables are extracted from the SQL, once per distinct statement, and the first
+   * maxTables of them are tagged with their name, any further table with "other". Enabling table
+   * metrics again starts the tables over.
+   *
+   * @throws IllegalArgumentException if maxTables isn't positive.
+   */
+  public static void enableTableMetrics(int maxTables) {
+    tableMetrics = new TableMetrics(maxTables);
+  }
+
+  /** Disables recording the latency of statements per table. */
+  public static void disableTableMetrics() {
+    tableMetrics = null;
+  }
+
+  /**
+   * Returns snapshots of the quantile sketches of latencies per method, empty if they aren't
+   * enabled.
+   */
+  public static Map<String, QuantileSketchSnapshot> getMethodQuantileSketches() {
+    QuantileSketches quantileSketches = Observability.quantileSketches;
+    if (quantileSketches == null) {
+      return Collections.emptyMap();
+    }
+    return quantileSketches.methodSnapshots();
+  }
+
+  /**
+   * Returns snapshots of the quantile sketches of the latencies of executions per SQL
+   * fingerprint, empty if they aren't enabled.
+   */
+  public static Map<String, QuantileSketchSnapshot> getFingerprintQuantileSketches() {
+    QuantileSketches quantileSketches = Observability.quantileSketches;
+    if (quantileSketches == null) {
+      return Collections.emptyMap();
+    }
+    return quantileSketches.fingerprintSnapshots();
+  }
+
+  // Tag values are limited to 255 printable ASCII characters.
+  // VisibleForTesting
+  static TagValue toTagValue(String value) {
+    int length = Math.min(value.length(), TagValue.MAX_LENGTH);
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      sb.append(c >= ' ' && c <= '~' ? c : '?');
+    }
+    return TagValue.create(sb.toString());
+  }
+
+  // Returns the CPU time of the current thread if the starting operation is sampled, or -1.
+  private static long sampleCurrentThreadCpuTime() {
+    double probability = cpuTimeSampleProbability;
+    if (probability <= 0
+        || (probability < 1 && ThreadLocalRandom.current().nextDouble() >= probability)) {
+      return -1;
+    }
+    // Also -1 if CPU time measurement was disabled through the ThreadMXBean.
+    return threadMXBean.getCurrentThreadCpuTime();
+  }
+
+  /**
+   * Sets the fraction of calls whose CPU time on the calling thread is measured and recorded in
+   * "java.sql/client/cpu", next to the remainder of their latency in "java.sql/client/wait".
+   * Measuring the CPU time of a thread costs about a microsecond, so it is disabled by default.
+   *
+   * @throws IllegalArgumentException if probability isn't within [0, 1].
+   * @throws UnsupportedOperationException if the JVM can't measure the CPU time of threads.
+   */
+  public static void setCpuTimeSampleProbability(double probability) {
+    if (!(probability >= 0 && probability <= 1)) {
+      throw new IllegalArgumentException(
+          "Invalid CPU time sample probability " + probability + ", want within [0, 1]");
+    }
+    if (probability > 0 && !threadMXBean.isCurrentThreadCpuTimeSupported()) {
+      throw new UnsupportedOperationException("This JVM can't measure the CPU time of threads");
+    }
+    cpuTimeSampleProbability = probability;
+  }
+
+  // Records the lifecycle of a query that was executed by method. firstRowNs is negative when no
+  // row was ever fetched.
+  static void recordQueryLifecycle(
+      String method, long totalNs, long firstRowNs, long fetchNs, long thinkNs) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_QUERY_LIFECYCLE_MS, totalNs / 1e6);
+    if (firstRowNs >= 0) {
+      measureMap.put(MEASURE_QUERY_FIRST_ROW_MS, firstRowNs / 1e6);
+    }
+    measureMap.put(MEASURE_QUERY_FETCH_MS, fetchNs / 1e6);
+    measureMap.put(MEASURE_QUERY_THINK_MS, thinkNs / 1e6);
+    measureMap.record(
+        tagger.currentBuilder().put(JAVA_SQL_METHOD, TagValue.create(method)).build());
+  }
+
+  // Records the round-trips a query executed by method needed to fetch its rows. adapted reports
+  // whether the fetch size was applied by ADAPTIVE_FETCH_SIZE.
+  static void recordFetchRoundtrips(String method, long roundtrips, boolean adapted) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_QUERY_FETCH_ROUNDTRIPS, roundtrips);
+    measureMap.record(
+        tagger
+            .currentBuilder()
+            .put(JAVA_SQL_METHOD, TagValue.create(method))
+            .put(JAVA_SQL_FETCH_SIZE, adapted ? VALUE_FETCH_SIZE_ADAPTIVE : VALUE_FETCH_SIZE_DRIVER)
+            .build());
+  }
+
+  // Records the calls to local getters on the cursor of a query executed by method.
+  static void recordLocalCalls(String method, long calls, long totalNs) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_QUERY_LOCAL_CALLS, calls);
+    measureMap.put(MEASURE_QUERY_LOCAL_CALLS_MS, totalNs / 1e6);
+    measureMap.record(
+        tagger.currentBuilder().put(JAVA_SQL_METHOD, TagValue.create(method)).build());
+  }
+
+  // Records a call to method that was answered without calling the driver.
+  static void recordElidedCall(String method) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_ELIDED_CALLS, 1);
+    measureMap.record(
+        tagger.currentBuilder().put(JAVA_SQL_METHOD, TagValue.create(method)).build());
+  }
+
+  // Records the number of closes queued, including the one method is deferring.
+  static void recordDeferredCloseQueueDepth(String method, long depth) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_DEFERRED_CLOSE_QUEUE_DEPTH, depth);
+    measureMap.record(
+        tagger.currentBuilder().put(JAVA_SQL_METHOD, TagValue.create(method)).build());
+  }
+
+  // Records the time from deferring the close by method until it was done.
+  static void recordDeferredCloseDelay(String method, long delayNs) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_DEFERRED_CLOSE_DELAY_MS, delayNs / 1e6);
+    measureMap.record(
+        tagger.currentBuilder().put(JAVA_SQL_METHOD, TagValue.create(method)).build());
+  }
+
+  // Records how long an asynchronous call of method waited to start.
+  static void recordAsyncQueueWait(String method, long waitNs) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_ASYNC_QUEUE_WAIT_MS, waitNs / 1e6);
+    measureMap.record(
+        tagger.currentBuilder().put(JAVA_SQL_METHOD, TagValue.create(method)).build());
+  }
+
+  // Records how long an asynchronous call of method took once started.
+  static void recordAsyncExecution(String method, long executionNs, boolean succeeded) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_ASYNC_EXECUTION_MS, executionNs / 1e6);
+    measureMap.record(
+        tagger
+            .currentBuilder()
+            .put(JAVA_SQL_METHOD, TagValue.create(method))
+            .put(JAVA_SQL_STATUS, succeeded ? VALUE_OK : VALUE_ERROR)
+            .build());
+  }
+
+  // Records an execution by method rejected by the concurrency limit of its data source.
+  static void recordConcurrencyRejected(String method) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_CONCURRENCY_REJECTED, 1);
+    measureMap.record(
+        tagger.currentBuilder().put(JAVA_SQL_METHOD, TagValue.create(method)).build());
+  }
+
+  // Records a query executed by method served by an identical query in flight.
+  static void recordCoalescedQuery(String method) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_COALESCED_QUERIES, 1);
+    measureMap.record(
+        tagger.currentBuilder().put(JAVA_SQL_METHOD, TagValue.create(method)).build());
+  }
+
+  // Records what happened to the hedge of a query executed by method.
+  static void recordHedge(String method, TagValue hedge) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_HEDGES, 1);
+    measureMap.record(
+        tagger
+            .currentBuilder()
+            .put(JAVA_SQL_METHOD, TagValue.create(method))
+            .put(JAVA_SQL_HEDGE, hedge)
+            .build());
+  }
+
+  // Records a statement created by method routed to route.
+  static void recordRoute(String method, TagValue route) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_ROUTED_STATEMENTS, 1);
+    measureMap.record(
+        tagger
+            .currentBuilder()
+            .put(JAVA_SQL_METHOD, TagValue.create(method))
+            .put(JAVA_SQL_ROUTE, route)
+            .build());
+  }
+
+  // Records an execution by method cancelled, or not started, as its deadline passed.
+  static void recordDeadlineCancellation(String method) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_DEADLINE_CANCELLATIONS, 1);
+    measureMap.record(
+        tagger.currentBuilder().put(JAVA_SQL_METHOD, TagValue.create(method)).build());
+  }
+
+  // Records how many of the columns selected by a query executed by method were read.
+  static void recordColumnAccess(String method, long selected, long read) {
+    MeasureMap measureMap = statsRecorder.newMeasureMap();
+    measureMap.put(MEASURE_QUERY_COLUMNS_SELECTED, selected);
+    measureMap.put(MEASURE_QUERY_COLUMNS_READ, read);
+    measureMap.record(
+        tagger.currentBuilder().put(JAVA_SQL_METHOD, TagValue.create(method)).build());
+  }
+
+  /**
+   * Sets the timeout of the executions of a statement by {@link TraceOption#ENFORCE_DEADLINES},
+   * which applies to all statements with the same SQL fingerprint, i.e. differing only by their
+   * literals. The deadline of the current context still applies when it is earlier.
+   *
+   * @throws IllegalArgumentException if timeout isn't positive.
+   */
+  public static void setStatementTimeout(String sql, long timeout, TimeUnit unit) {
+    DeadlineEnforcer.setFingerprintTimeout(SqlInfo.of(sql).getFingerprint(), unit.toNanos(timeout));
+  }
+
+  /** Removes the timeout set by {@link #setStatementTimeout} for the fingerprint of sql. */
+  public static void removeStatementTimeout(String sql) {
+    DeadlineEnforcer.removeFingerprintTimeout(SqlInfo.of(sql).getFingerprint());
+  }
+
+  /**
+   * Enables hedging the queries of the prepared statements marked by {@link #setHedgeable}: when
+   * a query hasn't returned after the given quantile of the recent latencies of its fingerprint,
+   * e.g. 0.95, it is issued again on a connection of connections, and the first of both to return
+   * wins while the other is cancelled. Each hedgeable query earns maxHedgeRate of a hedge, e.g.
+   * 0.05 for at most one hedge per 20 queries. Enabling hedging again starts the latencies over.
+   *
+   * @throws IllegalArgumentException if quantile isn't within [0, 1] or maxHedgeRate isn't within
+   *     (0, 1].
+   * @throws SQLException if the JDK has no RowSetFactory to read the rows of hedges into.
+   */
+  public static void enableHedging(DataSource connections, double quantile, double maxHedgeRate)
+      throws SQLException {
+    hedging = new ReadHedging(connections, quantile, maxHedgeRate);
+  }
+
+  /** Disables hedging queries. */
+  public static void disableHedging() {
+    hedging = null;
+  }
+
+  @Nullable
+  static ReadHedging hedging() {
+    return hedging;
+  }
+
+  /**
+   * Marks the queries with the SQL fingerprint of sql as hedgeable, once hedging is enabled. They
+   * must be idempotent and must not depend on the transaction of their connection, since hedges
+   * run on another connection, e.g. lookups of reference data. Only the statements prepared after
+   * marking are hedged, and only the executions whose parameters are bound by value: streams,
+   * LOBs and setters taking a Calendar aren't replayed.
+   */
+  public static void setHedgeable(String sql) {
+    ReadHedging.setHedgeable(SqlInfo.of(sql).getFingerprint(), true);
+  }
+
+  /** Unmarks the queries marked hedgeable by {@link #setHedgeable}. */
+  public static void removeHedgeable(String sql) {
+    ReadHedging.setHedgeable(SqlInfo.of(sql).getFingerprint(), false);
+  }
+
+  /**
+   * Enables tracking the calls to drivers in flight, for {@link #getInFlightCalls} and the {@link
+   * InFlightCallsMXBean} to list them. Tracking takes a lock, uncontended but for calls on threads
+   * of the same stripe, and allocates an entry on every call, including every ResultSet.next, so it
+   * is disabled by default. Only calls started after enabling it are listed.
+   */
+  public static void enableInFlightCalls() {
+    trackInFlightCalls = true;
+  }
+
+  /** Disables tracking the calls to drivers in flight. Calls already tracked are still listed. */
+  public static void disableInFlightCalls() {
+    trackInFlightCalls = false;
+  }
+
+  /**
+   * Returns the calls to drivers in flight, the oldest first, with their SQL fingerprint, start
+   * time, thread, data source and span id. It is empty unless enabled by {@link
+   * #enableInFlightCalls}.
+   */
+  public static List<InFlightCall> getInFlightCalls() {
+    return InFlightRegistry.snapshot();
+  }
+
+  /**
+   * Registers an {@link InFlightCallsMXBean} named
+   * "io.opencensus.integration.jdbc:type=InFlightCalls" in the platform MBean server, to list the
+   * calls in flight over JMX, once enabled by {@link #enableInFlightCalls}. Registering it again
+   * does nothing.
+   *
+   * @throws JMException if the MBean server refuses the registration.
+   */
+  public static void registerInFlightCallsMBean() throws JMException {
+    InFlightRegistry.registerMBean();
+  }
+
+  /**
+   * Returns the number of selected columns that were never read from any cursor, per SQL
+   * fingerprint, for the statements that select such columns.
+   */
+  public static Map<String, Integer> getUnreadColumnCounts() {
+    return ColumnUsage.unreadColumns();
+  }
+
+  /**
+   * Sets the bounds within which {@link TraceOption#ADAPTIVE_FETCH_SIZE} chooses fetch sizes. The
+   * defaults are 10 and 1000.
+   *
+   * @throws IllegalArgumentException if min isn't positive or max is less than min.
+   */
+  public static void setAdaptiveFetchSizeBounds(int min, int max) {
+    FetchSizeAdvisor.setBounds(min, max);
+  }
+
+  /**
+   * Returns the fetch sizes currently recommended per SQL fingerprint, for the statements whose
+   * rows were fetched in more round-trips than necessary.
+   */
+  public static Map<String, Integer> getRecommendedFetchSizes() {
+    return FetchSizeAdvisor.recommendations();
   }
 
   public static void registerAllViews() {
@@ -237,7 +1507,37 @@ public final class Observability {
 
   // VisibleForTesting
   static void registerAllViews(ViewManager viewManager) {
-    for (View v : Arrays.asList(SQL_CLIENT_LATENCY_VIEW, SQL_CLIENT_CALLS_VIEW)) {
+    for (View v :
+        Arrays.asList(
+            SQL_CLIENT_LATENCY_VIEW,
+            SQL_CLIENT_CALLS_VIEW,
+            SQL_CLIENT_CPU_VIEW,
+            SQL_CLIENT_WAIT_VIEW,
+            SQL_CLIENT_QUERY_LIFECYCLE_VIEW,
+            SQL_CLIENT_QUERY_FIRST_ROW_VIEW,
+            SQL_CLIENT_QUERY_FETCH_VIEW,
+            SQL_CLIENT_QUERY_THINK_VIEW,
+            SQL_CLIENT_QUERY_FETCH_ROUNDTRIPS_VIEW,
+            SQL_CLIENT_QUERY_LOCAL_CALLS_VIEW,
+            SQL_CLIENT_QUERY_LOCAL_CALLS_LATENCY_VIEW,
+            SQL_CLIENT_QUERY_COLUMNS_SELECTED_VIEW,
+            SQL_CLIENT_QUERY_COLUMNS_READ_VIEW,
+            SQL_CLIENT_TOP_FINGERPRINT_TIME_VIEW,
+            SQL_CLIENT_TOP_FINGERPRINT_CALLS_VIEW,
+            SQL_CLIENT_TOP_FINGERPRINT_ROWS_VIEW,
+            SQL_CLIENT_ELIDED_CALLS_VIEW,
+            SQL_CLIENT_DEFERRED_CLOSE_QUEUE_DEPTH_VIEW,
+            SQL_CLIENT_DEFERRED_CLOSE_DELAY_VIEW,
+            SQL_CLIENT_ASYNC_QUEUE_WAIT_VIEW,
+            SQL_CLIENT_ASYNC_EXECUTION_VIEW,
+            SQL_CLIENT_CONCURRENCY_REJECTED_VIEW,
+            SQL_CLIENT_DEADLINE_CANCELLATIONS_VIEW,
+            SQL_CLIENT_ROUTED_STATEMENTS_VIEW,
+            SQL_CLIENT_ROUTED_LATENCY_VIEW,
+            SQL_CLIENT_HEDGES_VIEW,
+            SQL_CLIENT_COALESCED_QUERIES_VIEW,
+            SQL_CLIENT_TABLE_CALLS_VIEW,
+            SQL_CLIENT_TABLE_LATENCY_VIEW)) {
       viewManager.registerView(v);
     }
   }
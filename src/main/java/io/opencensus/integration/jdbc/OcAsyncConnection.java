@@ -0,0 +1,373 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.common.Scope;
+import io.opencensus.tags.TagContext;
+import io.opencensus.tags.Tagger;
+import io.opencensus.tags.Tags;
+import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.Span;
+import io.opencensus.trace.Tracer;
+import io.opencensus.trace.Tracing;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * Runs the statements of an {@link OcWrapConnection} on an executor, for applications that must
+ * not block their threads on JDBC, e.g. those running on event loops.
+ *
+ * <p>The calls of a connection run one at a time, in the order they were made, on the threads of
+ * the executor. They run with the span and the tags current when they were made, so their spans
+ * are children of the caller's span and their metrics carry the caller's tags. The time calls wait
+ * for the executor and for the earlier calls of their connection is recorded separately from the
+ * time they take once started. The rows of queries are read into a CachedRowSet before their
+ * future completes, since cursors can't be handed from one thread to another.
+ *
+ * <p>Calls past maxPending per connection, and those the executor rejects, fail with a
+ * SQLTransientException. Parameters are bound with setObject, and setNull for nulls.
+ */
+public final class OcAsyncConnection {
+  /** The default number of calls that may be pending per connection. */
+  public static final int DEFAULT_MAX_PENDING = 256;
+
+  private static final String EXECUTE_QUERY = "OcAsyncConnection.executeQueryAsync";
+  private static final String EXECUTE_UPDATE = "OcAsyncConnection.executeUpdateAsync";
+  private static final String EXECUTE_BATCH = "OcAsyncConnection.executeBatchAsync";
+  private static final String CLOSE = "OcAsyncConnection.closeAsync";
+
+  private static final Tracer tracer = Tracing.getTracer();
+  private static final Tagger tagger = Tags.getTagger();
+
+  // A call waiting to run, with the span and tags of its caller.
+  private abstract static class Call<T> {
+    final String method;
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    final long submittedNs = System.nanoTime();
+    final Span span = tracer.getCurrentSpan();
+    final TagContext tags = tagger.getCurrentTagContext();
+
+    Call(String method) {
+      this.method = method;
+    }
+
+    abstract T run() throws SQLException;
+  }
+
+  private final OcWrapConnection connection;
+  private final Executor executor;
+  private final int maxPending;
+  private final RowSetFactory rowSetFactory;
+
+  private final ArrayDeque<Call<?>> pending = new ArrayDeque<>();
+  // Whether a task draining pending is scheduled or running.
+  private boolean scheduled;
+  // Whether closeAsync was called, after which calls fail.
+  private boolean closed;
+
+  private final Runnable drainTask =
+      new Runnable() {
+        @Override
+        public void run() {
+          drain();
+        }
+      };
+
+  /**
+   * Creates a facade running the statements of connection on executor, with up to {@link
+   * #DEFAULT_MAX_PENDING} calls pending.
+   *
+   * @throws SQLException if the JDK has no RowSetFactory to read the rows of queries into.
+   */
+  public OcAsyncConnection(OcWrapConnection connection, Executor executor) throws SQLException {
+    this(connection, executor, DEFAULT_MAX_PENDING);
+  }
+
+  /**
+   * Creates a facade running the statements of connection on executor, with up to maxPending calls
+   * pending, including the one running.
+   *
+   * @throws IllegalArgumentException if maxPending isn't positive.
+   * @throws SQLException if the JDK has no RowSetFactory to read the rows of queries into.
+   */
+  public OcAsyncConnection(OcWrapConnection connection, Executor executor, int maxPending)
+      throws SQLException {
+    if (maxPending <= 0) {
+      throw new IllegalArgumentException("Invalid maxPending " + maxPending + ", want > 0");
+    }
+    this.connection = connection;
+    this.executor = executor;
+    this.maxPending = maxPending;
+    this.rowSetFactory = RowSetProvider.newFactory();
+  }
+
+  /**
+   * Returns an executor for asynchronous calls with the given number of daemon threads, which
+   * rejects the calls of connections past the capacity of its queue. Its queue holds at most one
+   * task per connection with calls pending.
+   *
+   * @throws IllegalArgumentException if threads or queueCapacity isn't positive.
+   */
+  public static ExecutorService newExecutor(int threads, int queueCapacity) {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            60,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity),
+            new ThreadFactory() {
+              private final AtomicInteger threads = new AtomicInteger();
+
+              @Override
+              public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ocjdbc-async-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /** Returns the connection the calls run on. */
+  public OcWrapConnection getConnection() {
+    return connection;
+  }
+
+  /** Executes the query sql with the given parameters, and reads its rows. */
+  public CompletableFuture<CachedRowSet> executeQueryAsync(
+      final String sql, final Object... parameters) {
+    return submit(
+        new Call<CachedRowSet>(EXECUTE_QUERY) {
+          @Override
+          CachedRowSet run() throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+              bind(statement, parameters);
+              CachedRowSet rows = rowSetFactory.createCachedRowSet();
+              try (ResultSet rs = statement.executeQuery()) {
+                rows.populate(rs);
+              }
+              return rows;
+            }
+          }
+        });
+  }
+
+  /** Executes the statement sql with the given parameters, and returns its update count. */
+  public CompletableFuture<Integer> executeUpdateAsync(
+      final String sql, final Object... parameters) {
+    return submit(
+        new Call<Integer>(EXECUTE_UPDATE) {
+          @Override
+          Integer run() throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+              bind(statement, parameters);
+              return statement.executeUpdate();
+            }
+          }
+        });
+  }
+
+  /**
+   * Executes the statement sql once per element of batches as a single batch, and returns the
+   * update counts of its executions.
+   */
+  public CompletableFuture<int[]> executeBatchAsync(final String sql, List<Object[]> batches) {
+    final List<Object[]> copy = Collections.unmodifiableList(new ArrayList<>(batches));
+    return submit(
+        new Call<int[]>(EXECUTE_BATCH) {
+          @Override
+          int[] run() throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+              for (Object[] parameters : copy) {
+                bind(statement, parameters);
+                statement.addBatch();
+              }
+              return statement.executeBatch();
+            }
+          }
+        });
+  }
+
+  /**
+   * Closes the connection once the calls made before are done. The calls made after fail with a
+   * SQLNonTransientConnectionException.
+   */
+  public CompletableFuture<Void> closeAsync() {
+    return submit(
+        new Call<Void>(CLOSE) {
+          @Override
+          Void run() throws SQLException {
+            connection.close();
+            return null;
+          }
+        },
+        true);
+  }
+
+  private static void bind(PreparedStatement statement, Object[] parameters) throws SQLException {
+    for (int i = 0; i < parameters.length; i++) {
+      if (parameters[i] == null) {
+        statement.setNull(i + 1, Types.NULL);
+      } else {
+        statement.setObject(i + 1, parameters[i]);
+      }
+    }
+  }
+
+  private <T> CompletableFuture<T> submit(Call<T> call) {
+    return submit(call, false);
+  }
+
+  private <T> CompletableFuture<T> submit(Call<T> call, boolean closes) {
+    boolean schedule;
+    synchronized (this) {
+      if (closed) {
+        call.future.completeExceptionally(
+            new SQLNonTransientConnectionException("The connection is closed", "08003"));
+        return call.future;
+      }
+      if (pending.size() >= maxPending) {
+        call.future.completeExceptionally(
+            new SQLTransientException("Too many asynchronous calls pending on the connection"));
+        return call.future;
+      }
+      pending.add(call);
+      closed = closes;
+      schedule = !scheduled;
+      scheduled = true;
+    }
+
+    if (schedule) {
+      try {
+        executor.execute(drainTask);
+      } catch (RejectedExecutionException e) {
+        rejectPending(e);
+      }
+    }
+    return call.future;
+  }
+
+  // Fails the pending calls as the executor rejected the task to run them.
+  private void rejectPending(RejectedExecutionException e) {
+    List<Call<?>> rejected;
+    synchronized (this) {
+      rejected = new ArrayList<>(pending);
+      pending.clear();
+      scheduled = false;
+      // Let a rejected close be retried.
+      closed = false;
+    }
+    for (Call<?> call : rejected) {
+      call.future.completeExceptionally(
+          new SQLTransientException("The executor of asynchronous calls is saturated", e));
+    }
+  }
+
+  private void drain() {
+    boolean drained = false;
+    try {
+      while (true) {
+        Call<?> next;
+        synchronized (this) {
+          next = pending.peek();
+          if (next == null) {
+            scheduled = false;
+            drained = true;
+            return;
+          }
+        }
+
+        try (Scope ws = tracer.withSpan(next.span);
+            Scope wt = tagger.withTagContext(next.tags)) {
+          run(next);
+        } finally {
+          // The call leaves pending once done, so that it counts against maxPending while running.
+          synchronized (this) {
+            pending.poll();
+          }
+        }
+      }
+    } finally {
+      if (!drained) {
+        resume();
+      }
+    }
+  }
+
+  // Schedules a task to run the calls left pending by a task that ended abruptly, which would
+  // otherwise wait forever as a task is marked scheduled.
+  private void resume() {
+    synchronized (this) {
+      scheduled = !pending.isEmpty();
+      if (!scheduled) {
+        return;
+      }
+    }
+    try {
+      executor.execute(drainTask);
+    } catch (RejectedExecutionException e) {
+      rejectPending(e);
+    }
+  }
+
+  private static <T> void run(Call<T> call) {
+    long startNs = System.nanoTime();
+    long waitNs = startNs - call.submittedNs;
+    Observability.recordAsyncQueueWait(call.method, waitNs);
+    // The call was cancelled while it waited.
+    if (call.future.isDone()) {
+      return;
+    }
+    call.span.addAnnotation(
+        "Started asynchronous call",
+        Collections.singletonMap(
+            "queue_wait_us",
+            AttributeValue.longAttributeValue(TimeUnit.NANOSECONDS.toMicros(waitNs))));
+
+    boolean succeeded = false;
+    try {
+      T result = call.run();
+      succeeded = true;
+      call.future.complete(result);
+    } catch (Throwable t) {
+      // Errors of drivers, e.g. a missing class, fail the call rather than leave it pending.
+      call.future.completeExceptionally(t);
+    } finally {
+      Observability.recordAsyncExecution(call.method, System.nanoTime() - startNs, succeeded);
+    }
+  }
+}
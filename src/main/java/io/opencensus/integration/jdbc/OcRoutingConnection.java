@@ -0,0 +1,531 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static io.opencensus.integration.jdbc.Observability.VALUE_ROUTE_PRIMARY;
+import static io.opencensus.integration.jdbc.Observability.VALUE_ROUTE_REPLICA;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+/**
+ * Splits the statements of a session between a primary connection and a read-only replica, both
+ * instrumented like an {@link OcWrapConnection}.
+ *
+ * <p>Statements go to the replica when they belong to a read-only transaction, or when they are
+ * plain SELECTs without locking clauses outside of transactions. Everything else, including
+ * statements created without SQL outside of read-only transactions, goes to the primary. The
+ * replica is acquired from its data source on the first statement routed to it, and the primary
+ * serves all reads if that fails. After a write, reads stay on the primary for the read-your-writes
+ * window, so that the session sees its own writes despite the lag of the replica, and the
+ * statements of a transaction all go where its first one went.
+ *
+ * <p>Statements are routed once, when they are created, and keep running where they were routed:
+ * a read prepared before the session wrote keeps running on the replica, and may miss the writes
+ * of the session made since. Applications that reuse prepared reads across writes should prepare
+ * them again after writing, or not rely on reading their own writes through them. A read prepared
+ * during the read-your-writes window stays on the primary.
+ *
+ * <p>The auto-commit mode, catalog, schema and transaction isolation set through this connection
+ * apply to both connections, the other session state is the primary's only. Like connections, it
+ * isn't meant to be used by several threads at once.
+ */
+public class OcRoutingConnection implements Connection {
+  // SELECT ... FOR UPDATE and the other locking reads, which must run on the primary.
+  private static final Pattern LOCKING_CLAUSE =
+      Pattern.compile(
+          "\\bFOR\\s+(UPDATE|SHARE|NO\\s+KEY\\s+UPDATE|KEY\\s+SHARE)\\b|\\bLOCK\\s+IN\\s+SHARE\\b",
+          Pattern.CASE_INSENSITIVE);
+
+  private final OcWrapConnection primary;
+  private final ConnectionInfo primaryInfo;
+  private final DataSource replicas;
+  private final EnumSet<TraceOption> opts;
+  private final long readYourWritesWindowNs;
+
+  // The replica, acquired on the first statement routed to it.
+  @Nullable private OcWrapConnection replica;
+  private boolean replicaUnavailable;
+  // Where the statements of the current transaction go, once its first one was routed.
+  @Nullable private OcWrapConnection transactionTarget;
+  // The System.nanoTime of the end of the last transaction, the writes since belong to the
+  // current one.
+  private long transactionStartNs;
+
+  // The session state set by the application.
+  private boolean autoCommit;
+  private boolean readOnly;
+  @Nullable private String catalog;
+  @Nullable private String schema;
+  private int transactionIsolation = -1;
+
+  /**
+   * Creates a connection routing reads to a replica acquired from replicas when needed.
+   *
+   * @param primary the connection of the session to the primary, which serves all writes.
+   * @param replicas the data source of the read-only replicas.
+   * @param readYourWritesWindow how long reads stay on the primary after the session wrote, which
+   *     should exceed the lag of the replicas.
+   * @param unit the unit of readYourWritesWindow.
+   * @param opts the options of the instrumentation of both connections.
+   */
+  public OcRoutingConnection(
+      Connection primary,
+      DataSource replicas,
+      long readYourWritesWindow,
+      TimeUnit unit,
+      EnumSet<TraceOption> opts)
+      throws SQLException {
+    this.primaryInfo = ConnectionInfo.of(primary);
+    this.primaryInfo.setRoute(VALUE_ROUTE_PRIMARY);
+    this.primary = new OcWrapConnection(primary, opts, this.primaryInfo);
+    this.replicas = replicas;
+    this.opts = opts;
+    this.readYourWritesWindowNs = unit.toNanos(readYourWritesWindow);
+    this.autoCommit = primary.getAutoCommit();
+    this.readOnly = primary.isReadOnly();
+    this.transactionStartNs = System.nanoTime();
+  }
+
+  // Returns whether a statement of sqlInfo, null if created without SQL, may go to the replica.
+  private boolean isRead(@Nullable SqlInfo sqlInfo) {
+    if (this.readOnly) {
+      return true;
+    }
+    return this.autoCommit
+        && sqlInfo != null
+        && sqlInfo.getOperation() == SqlOperation.SELECT
+        && !LOCKING_CLAUSE.matcher(sqlInfo.getFingerprint()).find();
+  }
+
+  // Returns the connection to create the statement of method on, and records the route.
+  private OcWrapConnection route(String method, boolean read) {
+    OcWrapConnection target = this.primary;
+    if (read) {
+      if (!this.autoCommit && this.transactionTarget != null) {
+        target = this.transactionTarget;
+      } else if (!this.primaryInfo.wroteWithin(this.readYourWritesWindowNs, System.nanoTime())) {
+        OcWrapConnection replica = replica();
+        if (replica != null) {
+          target = replica;
+        }
+      }
+      if (!this.autoCommit) {
+        this.transactionTarget = target;
+      }
+    }
+    Observability.recordRoute(
+        method, target == this.primary ? VALUE_ROUTE_PRIMARY : VALUE_ROUTE_REPLICA);
+    return target;
+  }
+
+  @Nullable
+  private OcWrapConnection replica() {
+    if (this.replica != null || this.replicaUnavailable) {
+      return this.replica;
+    }
+    Connection connection = null;
+    try {
+      connection = this.replicas.getConnection();
+      connection.setReadOnly(true);
+      connection.setAutoCommit(this.autoCommit);
+      if (this.catalog != null) {
+        connection.setCatalog(this.catalog);
+      }
+      if (this.schema != null) {
+        connection.setSchema(this.schema);
+      }
+      if (this.transactionIsolation != -1) {
+        connection.setTransactionIsolation(this.transactionIsolation);
+      }
+      ConnectionInfo replicaInfo = ConnectionInfo.of(connection);
+      replicaInfo.setRoute(VALUE_ROUTE_REPLICA);
+      this.replica = new OcWrapConnection(connection, this.opts, replicaInfo);
+    } catch (SQLException | RuntimeException e) {
+      // The primary serves the reads for the rest of the session.
+      this.replicaUnavailable = true;
+      if (connection != null) {
+        try {
+          connection.close();
+        } catch (SQLException | RuntimeException closeException) {
+          // The replica is given up on already.
+        }
+      }
+    }
+    return this.replica;
+  }
+
+  // Ends the current transaction, if any, after a commit, a rollback or a change of the
+  // auto-commit mode.
+  private void endTransaction() {
+    this.transactionTarget = null;
+    long nowNs = System.nanoTime();
+    if (!this.autoCommit && this.primaryInfo.wroteSince(this.transactionStartNs)) {
+      // The writes of the transaction became visible now, the window starts over.
+      this.primaryInfo.recordWrite(nowNs);
+    }
+    this.transactionStartNs = nowNs;
+  }
+
+  @Override
+  public void abort(Executor executor) throws SQLException {
+    try {
+      if (this.replica != null) {
+        this.replica.abort(executor);
+      }
+    } finally {
+      this.primary.abort(executor);
+    }
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException {
+    this.primary.clearWarnings();
+  }
+
+  @Override
+  public void close() throws SQLException {
+    try {
+      if (this.replica != null) {
+        this.replica.close();
+      }
+    } finally {
+      this.primary.close();
+    }
+  }
+
+  @Override
+  public void commit() throws SQLException {
+    this.primary.commit();
+    try {
+      if (this.replica != null) {
+        this.replica.commit();
+      }
+    } finally {
+      endTransaction();
+    }
+  }
+
+  @Override
+  public java.sql.Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+    return this.primary.createArrayOf(typeName, elements);
+  }
+
+  @Override
+  public java.sql.Blob createBlob() throws SQLException {
+    return this.primary.createBlob();
+  }
+
+  @Override
+  public java.sql.Clob createClob() throws SQLException {
+    return this.primary.createClob();
+  }
+
+  @Override
+  public java.sql.NClob createNClob() throws SQLException {
+    return this.primary.createNClob();
+  }
+
+  @Override
+  public java.sql.SQLXML createSQLXML() throws SQLException {
+    return this.primary.createSQLXML();
+  }
+
+  @Override
+  public java.sql.Statement createStatement() throws SQLException {
+    return route("java.sql.Connection.createStatement", isRead(null)).createStatement();
+  }
+
+  @Override
+  public java.sql.Statement createStatement(int resultSetType, int resultSetConcurrency)
+      throws SQLException {
+    return route("java.sql.Connection.createStatement", isRead(null))
+        .createStatement(resultSetType, resultSetConcurrency);
+  }
+
+  @Override
+  public java.sql.Statement createStatement(
+      int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    return route("java.sql.Connection.createStatement", isRead(null))
+        .createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override
+  public java.sql.Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+    return this.primary.createStruct(typeName, attributes);
+  }
+
+  @Override
+  public boolean getAutoCommit() throws SQLException {
+    return this.primary.getAutoCommit();
+  }
+
+  @Override
+  public String getCatalog() throws SQLException {
+    return this.primary.getCatalog();
+  }
+
+  @Override
+  public java.util.Properties getClientInfo() throws SQLException {
+    return this.primary.getClientInfo();
+  }
+
+  @Override
+  public String getClientInfo(String name) throws SQLException {
+    return this.primary.getClientInfo(name);
+  }
+
+  @Override
+  public int getHoldability() throws SQLException {
+    return this.primary.getHoldability();
+  }
+
+  @Override
+  public java.sql.DatabaseMetaData getMetaData() throws SQLException {
+    return this.primary.getMetaData();
+  }
+
+  @Override
+  public int getNetworkTimeout() throws SQLException {
+    return this.primary.getNetworkTimeout();
+  }
+
+  @Override
+  public String getSchema() throws SQLException {
+    return this.primary.getSchema();
+  }
+
+  @Override
+  public int getTransactionIsolation() throws SQLException {
+    return this.primary.getTransactionIsolation();
+  }
+
+  @Override
+  public java.util.Map<String, Class<?>> getTypeMap() throws SQLException {
+    return this.primary.getTypeMap();
+  }
+
+  @Override
+  public java.sql.SQLWarning getWarnings() throws SQLException {
+    return this.primary.getWarnings();
+  }
+
+  @Override
+  public boolean isClosed() throws SQLException {
+    return this.primary.isClosed();
+  }
+
+  @Override
+  public boolean isReadOnly() throws SQLException {
+    return this.primary.isReadOnly();
+  }
+
+  @Override
+  public boolean isValid(int timeout) throws SQLException {
+    return this.primary.isValid(timeout);
+  }
+
+  @Override
+  public String nativeSQL(String SQL) throws SQLException {
+    return this.primary.nativeSQL(SQL);
+  }
+
+  @Override
+  public java.sql.CallableStatement prepareCall(String SQL) throws SQLException {
+    // Procedures may write, they always run on the primary.
+    return route("java.sql.Connection.prepareCall", false).prepareCall(SQL);
+  }
+
+  @Override
+  public java.sql.CallableStatement prepareCall(
+      String SQL, int resultSetType, int resultSetConcurrency) throws SQLException {
+    return route("java.sql.Connection.prepareCall", false)
+        .prepareCall(SQL, resultSetType, resultSetConcurrency);
+  }
+
+  @Override
+  public java.sql.CallableStatement prepareCall(
+      String SQL, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+      throws SQLException {
+    return route("java.sql.Connection.prepareCall", false)
+        .prepareCall(SQL, resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override
+  public java.sql.PreparedStatement prepareStatement(String SQL) throws SQLException {
+    return route("java.sql.Connection.prepareStatement", isRead(SqlInfo.of(SQL)))
+        .prepareStatement(SQL);
+  }
+
+  @Override
+  public java.sql.PreparedStatement prepareStatement(String SQL, int autoGeneratedKeys)
+      throws SQLException {
+    return route("java.sql.Connection.prepareStatement", isRead(SqlInfo.of(SQL)))
+        .prepareStatement(SQL, autoGeneratedKeys);
+  }
+
+  @Override
+  public java.sql.PreparedStatement prepareStatement(String SQL, int[] columnIndices)
+      throws SQLException {
+    return route("java.sql.Connection.prepareStatement", isRead(SqlInfo.of(SQL)))
+        .prepareStatement(SQL, columnIndices);
+  }
+
+  @Override
+  public java.sql.PreparedStatement prepareStatement(String SQL, String[] columnNames)
+      throws SQLException {
+    return route("java.sql.Connection.prepareStatement", isRead(SqlInfo.of(SQL)))
+        .prepareStatement(SQL, columnNames);
+  }
+
+  @Override
+  public java.sql.PreparedStatement prepareStatement(
+      String SQL, int resultSetType, int resultSetConcurrency) throws SQLException {
+    return route("java.sql.Connection.prepareStatement", isRead(SqlInfo.of(SQL)))
+        .prepareStatement(SQL, resultSetType, resultSetConcurrency);
+  }
+
+  @Override
+  public java.sql.PreparedStatement prepareStatement(
+      String SQL, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+      throws SQLException {
+    return route("java.sql.Connection.prepareStatement", isRead(SqlInfo.of(SQL)))
+        .prepareStatement(SQL, resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override
+  public void releaseSavepoint(java.sql.Savepoint savepoint) throws SQLException {
+    this.primary.releaseSavepoint(savepoint);
+  }
+
+  @Override
+  public void rollback() throws SQLException {
+    this.primary.rollback();
+    try {
+      if (this.replica != null) {
+        this.replica.rollback();
+      }
+    } finally {
+      // Rolled back writes don't need to be read, but this keeps the window conservative.
+      endTransaction();
+    }
+  }
+
+  @Override
+  public void rollback(java.sql.Savepoint savepoint) throws SQLException {
+    this.primary.rollback(savepoint);
+  }
+
+  @Override
+  public void setAutoCommit(boolean autoCommit) throws SQLException {
+    this.primary.setAutoCommit(autoCommit);
+    if (this.replica != null) {
+      this.replica.setAutoCommit(autoCommit);
+    }
+    if (autoCommit != this.autoCommit) {
+      // Enabling auto-commit commits the current transaction.
+      endTransaction();
+    }
+    this.autoCommit = autoCommit;
+  }
+
+  @Override
+  public void setCatalog(String catalog) throws SQLException {
+    this.primary.setCatalog(catalog);
+    if (this.replica != null) {
+      this.replica.setCatalog(catalog);
+    }
+    this.catalog = catalog;
+  }
+
+  @Override
+  public void setClientInfo(java.util.Properties properties)
+      throws java.sql.SQLClientInfoException {
+    this.primary.setClientInfo(properties);
+  }
+
+  @Override
+  public void setClientInfo(String name, String value) throws java.sql.SQLClientInfoException {
+    this.primary.setClientInfo(name, value);
+  }
+
+  @Override
+  public void setHoldability(int holdability) throws SQLException {
+    this.primary.setHoldability(holdability);
+  }
+
+  @Override
+  public void setNetworkTimeout(java.util.concurrent.Executor executor, int milliseconds)
+      throws SQLException {
+    this.primary.setNetworkTimeout(executor, milliseconds);
+  }
+
+  @Override
+  public void setReadOnly(boolean readOnly) throws SQLException {
+    // The replica stays read-only.
+    this.primary.setReadOnly(readOnly);
+    this.readOnly = readOnly;
+  }
+
+  @Override
+  public java.sql.Savepoint setSavepoint() throws SQLException {
+    return this.primary.setSavepoint();
+  }
+
+  @Override
+  public java.sql.Savepoint setSavepoint(String name) throws SQLException {
+    return this.primary.setSavepoint(name);
+  }
+
+  @Override
+  public void setSchema(String schema) throws SQLException {
+    this.primary.setSchema(schema);
+    if (this.replica != null) {
+      this.replica.setSchema(schema);
+    }
+    this.schema = schema;
+  }
+
+  @Override
+  public void setTransactionIsolation(int level) throws SQLException {
+    this.primary.setTransactionIsolation(level);
+    if (this.replica != null) {
+      this.replica.setTransactionIsolation(level);
+    }
+    this.transactionIsolation = level;
+  }
+
+  @Override
+  public void setTypeMap(java.util.Map<String, Class<?>> map) throws SQLException {
+    this.primary.setTypeMap(map);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return this.primary.isWrapperFor(iface);
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    return this.primary.unwrap(iface);
+  }
+}
@@ -20,6 +20,7 @@ import io.opencensus.integration.jdbc.Observability.TrackingOperation;
 import java.sql.CallableStatement;
 import java.sql.SQLException;
 import java.util.EnumSet;
+import javax.annotation.Nullable;
 
 /**
  * Wraps and instruments a {@link CallableStatement} instance with tracing and metrics using
@@ -28,10 +29,50 @@ import java.util.EnumSet;
 public class OcWrapCallableStatement implements CallableStatement {
   private final CallableStatement callableStatement;
   private final boolean shouldAnnotateSpansWithSQL;
+  @Nullable private final SqlInfo sqlInfo;
+  @Nullable private final ConnectionInfo connectionInfo;
+  // Runs closes in the background with TraceOption.DEFER_CLOSE, null otherwise.
+  @Nullable private final DeferredCloser closer;
+  // Bounds executions by their deadline with TraceOption.ENFORCE_DEADLINES, null otherwise.
+  @Nullable private final DeadlineEnforcer deadlines;
+  private boolean closeDeferred;
+  // The most recent execution, which produced the current results of this statement.
+  @Nullable private TrackingOperation lastExecution;
+  @Nullable private OcWrapResultSet currentResultSet;
+  @Nullable private OcWrapResultSet generatedKeys;
 
   public OcWrapCallableStatement(CallableStatement callableStatement, EnumSet<TraceOption> opts) {
     this.callableStatement = callableStatement;
     this.shouldAnnotateSpansWithSQL = Observability.shouldAnnotateSpansWithSQL(opts);
+    this.sqlInfo = null;
+    this.connectionInfo = null;
+    this.closer = null;
+    this.deadlines =
+        opts.contains(TraceOption.ENFORCE_DEADLINES)
+            ? new DeadlineEnforcer(callableStatement)
+            : null;
+  }
+
+  public OcWrapCallableStatement(
+      CallableStatement callableStatement, EnumSet<TraceOption> opts, String SQL) {
+    this(callableStatement, opts, SQL, null, null);
+  }
+
+  OcWrapCallableStatement(
+      CallableStatement callableStatement,
+      EnumSet<TraceOption> opts,
+      String SQL,
+      @Nullable ConnectionInfo connectionInfo,
+      @Nullable DeferredCloser closer) {
+    this.callableStatement = callableStatement;
+    this.shouldAnnotateSpansWithSQL = Observability.shouldAnnotateSpansWithSQL(opts);
+    this.sqlInfo = SqlInfo.of(SQL);
+    this.connectionInfo = connectionInfo;
+    this.closer = closer;
+    this.deadlines =
+        opts.contains(TraceOption.ENFORCE_DEADLINES)
+            ? new DeadlineEnforcer(callableStatement)
+            : null;
   }
 
   @Override
@@ -55,7 +96,8 @@ public class OcWrapCallableStatement implements CallableStatement {
     // This method touches the database connection:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#cancel--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.cancel");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.cancel", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.callableStatement.cancel();
@@ -93,10 +135,32 @@ public class OcWrapCallableStatement implements CallableStatement {
 
   @Override
   public void close() throws SQLException {
+    if (this.closeDeferred) {
+      return;
+    }
+    // The lifecycle of the current cursor ends now, not once a deferred close is done.
+    final long closedNs = System.nanoTime();
+    if (this.closer != null
+        && this.closer.defer(
+            "java.sql.CallableStatement.close",
+            new DeferredCloser.Closer() {
+              @Override
+              public void close() throws SQLException {
+                closeNow(closedNs);
+              }
+            })) {
+      this.closeDeferred = true;
+      return;
+    }
+    closeNow(closedNs);
+  }
+
+  private void closeNow(long closedNs) throws SQLException {
     // This method touches the database connection:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#close--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.close");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.close", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.callableStatement.close();
@@ -105,6 +169,10 @@ public class OcWrapCallableStatement implements CallableStatement {
       throw e;
     } finally {
       trackingOperation.end();
+      // Closing a statement implicitly closes its current cursor.
+      if (this.currentResultSet != null) {
+        this.currentResultSet.recordQueryLifecycle(closedNs);
+      }
     }
   }
 
@@ -121,9 +189,16 @@ public class OcWrapCallableStatement implements CallableStatement {
     // This method touches the database connection:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#execute--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.execute");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            this.sqlInfo,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.callableStatement.execute();
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -140,9 +215,15 @@ public class OcWrapCallableStatement implements CallableStatement {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#execute-java.lang.String-
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.CallableStatement.execute", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.CallableStatement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.callableStatement.execute(SQL);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -159,9 +240,15 @@ public class OcWrapCallableStatement implements CallableStatement {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#execute-java.lang.String-java.lang.String:A-
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.CallableStatement.execute", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.CallableStatement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.callableStatement.execute(SQL, columnNames);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -178,9 +265,15 @@ public class OcWrapCallableStatement implements CallableStatement {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#execute-java.lang.String-int:A-
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.CallableStatement.execute", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.CallableStatement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.callableStatement.execute(SQL, columnIndices);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -197,9 +290,15 @@ public class OcWrapCallableStatement implements CallableStatement {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#execute-java.lang.String-int-
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.CallableStatement.execute", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.CallableStatement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.callableStatement.execute(SQL, autoGeneratedKeys);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -215,9 +314,13 @@ public class OcWrapCallableStatement implements CallableStatement {
     // Inherited from:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#executeBatch--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.executeBatch");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.executeBatch", this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.callableStatement.executeBatch();
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -234,11 +337,16 @@ public class OcWrapCallableStatement implements CallableStatement {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#executeQuery-java.lang.String-
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.CallableStatement.executeQuery", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.CallableStatement.executeQuery",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      java.sql.ResultSet rs = this.callableStatement.executeQuery(SQL);
-      return new OcWrapResultSet(rs);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      return wrapResultSet(this.callableStatement.executeQuery(SQL));
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -254,9 +362,15 @@ public class OcWrapCallableStatement implements CallableStatement {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#executeUpdate-java.lang.String-
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.CallableStatement.executeUpdate", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.CallableStatement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.callableStatement.executeUpdate(SQL);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -273,9 +387,15 @@ public class OcWrapCallableStatement implements CallableStatement {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#executeUpdate-java.lang.String-int-
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.CallableStatement.executeUpdate", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.CallableStatement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.callableStatement.executeUpdate(SQL, autoGeneratedKeys);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -292,9 +412,15 @@ public class OcWrapCallableStatement implements CallableStatement {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#executeUpdate-java.lang.String-java.lang.String:A-
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.CallableStatement.executeUpdate", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.CallableStatement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.callableStatement.executeUpdate(SQL, columnIndices);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -311,9 +437,15 @@ public class OcWrapCallableStatement implements CallableStatement {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#executeUpdate-java.lang.String-java.lang.String:A-
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.CallableStatement.executeUpdate", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.CallableStatement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.callableStatement.executeUpdate(SQL, columnNames);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -328,11 +460,17 @@ public class OcWrapCallableStatement implements CallableStatement {
     // This method touches the database connection:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#executeQuery--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.executeQuery");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.executeQuery",
+            this.shouldAnnotateSpansWithSQL,
+            this.sqlInfo,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      java.sql.ResultSet rs = this.callableStatement.executeQuery();
-      return new OcWrapResultSet(rs);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      return wrapResultSet(this.callableStatement.executeQuery());
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -346,9 +484,16 @@ public class OcWrapCallableStatement implements CallableStatement {
     // This method touches the database connection:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#executeUpdate--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.executeUpdate");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            this.sqlInfo,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.callableStatement.executeUpdate();
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -379,8 +524,7 @@ public class OcWrapCallableStatement implements CallableStatement {
     // This method doesn't touch the database:
     // Inherited from:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#getGeneratedKeys--
-    java.sql.ResultSet rs = this.callableStatement.getGeneratedKeys();
-    return new OcWrapResultSet(rs);
+    return wrapGeneratedKeys(this.callableStatement.getGeneratedKeys());
   }
 
   @Override
@@ -413,7 +557,8 @@ public class OcWrapCallableStatement implements CallableStatement {
     // Inherited from:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#getMoreResults-int-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.getMoreResults");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.getMoreResults", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.callableStatement.getMoreResults(current);
@@ -431,7 +576,8 @@ public class OcWrapCallableStatement implements CallableStatement {
     // Inherited from:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#getMoreResults--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.getMoreResults");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.getMoreResults", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.callableStatement.getMoreResults();
@@ -448,8 +594,7 @@ public class OcWrapCallableStatement implements CallableStatement {
     // This method doesn't touch the database:
     // Inherited from:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#getResultSet--
-    java.sql.ResultSet rs = this.callableStatement.getResultSet();
-    return new OcWrapResultSet(rs);
+    return wrapResultSet(this.callableStatement.getResultSet());
   }
 
   @Override
@@ -1438,7 +1583,8 @@ public class OcWrapCallableStatement implements CallableStatement {
     // Inherited from:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setTime-int-java.sql.Time-java.util.Calendar-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.setTime");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.setTime", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.callableStatement.setTime(parameterIndex, x, cal);
@@ -1456,7 +1602,8 @@ public class OcWrapCallableStatement implements CallableStatement {
     // This method touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/CallableStatement.html#setTime-java.lang.String-java.sql.Time-java.util.Calendar-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.setTime");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.setTime", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.callableStatement.setTime(parameterName, x, cal);
@@ -1520,7 +1667,8 @@ public class OcWrapCallableStatement implements CallableStatement {
     // Inherited from:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setTimestamp-int-java.sql.Timestamp-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.setTimestamp");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.setTimestamp", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.callableStatement.setTimestamp(parameterIndex, x, cal);
@@ -1538,7 +1686,8 @@ public class OcWrapCallableStatement implements CallableStatement {
     // This method touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/CallableStatement.html#setTimestamp-java.lang.String-java.sql.Timestamp-java.util.Calendar-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.setTimestamp");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.setTimestamp", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.callableStatement.setTimestamp(parameterName, x, cal);
@@ -1594,7 +1743,7 @@ public class OcWrapCallableStatement implements CallableStatement {
     // This method doesn't touch the database:
     // Inherited from:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#isClosed--
-    return this.callableStatement.isClosed();
+    return this.closeDeferred || this.callableStatement.isClosed();
   }
 
   @Override
@@ -1618,7 +1767,8 @@ public class OcWrapCallableStatement implements CallableStatement {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#setCursorName-java.lang.String-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.CallableStatement.setCursorName");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.CallableStatement.setCursorName", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.callableStatement.setCursorName(cursorName);
@@ -1677,6 +1827,9 @@ public class OcWrapCallableStatement implements CallableStatement {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#setQueryTimeout-int-
     this.callableStatement.setQueryTimeout(seconds);
+    if (this.deadlines != null) {
+      this.deadlines.setApplicationTimeout(seconds);
+    }
   }
 
   @Override
@@ -1860,4 +2013,34 @@ public class OcWrapCallableStatement implements CallableStatement {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/CallableStatement.html#wasNull--
     return this.callableStatement.wasNull();
   }
+
+  // Returns the wrapper for the current result set of this statement, reusing the existing one
+  // when the driver hands out the same cursor again.
+  @Nullable
+  private java.sql.ResultSet wrapResultSet(@Nullable java.sql.ResultSet rs) {
+    if (rs == null) {
+      return null;
+    }
+    if (this.currentResultSet == null || !this.currentResultSet.wraps(rs)) {
+      if (this.currentResultSet != null) {
+        // The driver closes the previous cursor of a statement when it produces a new one.
+        this.currentResultSet.recordQueryLifecycle(System.nanoTime());
+      }
+      this.currentResultSet = new OcWrapResultSet(rs, this, this.lastExecution, this.closer);
+    }
+    return this.currentResultSet;
+  }
+
+  @Nullable
+  private java.sql.ResultSet wrapGeneratedKeys(@Nullable java.sql.ResultSet rs) {
+    if (rs == null) {
+      return null;
+    }
+    if (this.generatedKeys == null || !this.generatedKeys.wraps(rs)) {
+      // Without an origin: the keys aren't rows of the statement's SQL, and mustn't be accounted
+      // as such in its query lifecycle, fetch size advice or column usage.
+      this.generatedKeys = new OcWrapResultSet(rs, this, null, this.closer);
+    }
+    return this.generatedKeys;
+  }
 }
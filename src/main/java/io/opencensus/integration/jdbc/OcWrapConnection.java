@@ -15,12 +15,14 @@
 package io.opencensus.integration.jdbc;
 
 import io.opencensus.common.Scope;
+import io.opencensus.integration.jdbc.ConnectionState.Property;
 import io.opencensus.integration.jdbc.Observability.TraceOption;
 import io.opencensus.integration.jdbc.Observability.TrackingOperation;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.EnumSet;
 import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
 
 /**
  * Wraps and instruments a {@link Connection} instance with tracing and metrics using OpenCensus.
@@ -28,11 +30,30 @@ import java.util.concurrent.Executor;
 public class OcWrapConnection implements Connection {
   private final Connection connection;
   private final boolean shouldAnnotateSpansWithSQL;
+  private final boolean shouldCommentSQLWithTraceContext;
+  // The identity of the database, tagged on the metrics of this connection and its statements.
+  @Nullable private final ConnectionInfo connectionInfo;
+  // The last-known session state, null unless TraceOption.TRACK_CONNECTION_STATE is set.
+  @Nullable private final ConnectionState state;
+  // Runs the closes of statements and cursors in the background, null unless
+  // TraceOption.DEFER_CLOSE is set.
+  @Nullable private final DeferredCloser closer;
   private EnumSet<TraceOption> startOptions;
 
   public OcWrapConnection(Connection connection, EnumSet<TraceOption> opts) {
+    this(connection, opts, ConnectionInfo.of(connection));
+  }
+
+  OcWrapConnection(
+      Connection connection, EnumSet<TraceOption> opts, @Nullable ConnectionInfo connectionInfo) {
     this.connection = connection;
+    this.connectionInfo = connectionInfo;
     this.shouldAnnotateSpansWithSQL = Observability.shouldAnnotateSpansWithSQL(opts);
+    this.shouldCommentSQLWithTraceContext =
+        opts.contains(TraceOption.COMMENT_SQL_WITH_TRACE_CONTEXT);
+    this.state =
+        opts.contains(TraceOption.TRACK_CONNECTION_STATE) ? new ConnectionState() : null;
+    this.closer = opts.contains(TraceOption.DEFER_CLOSE) ? new DeferredCloser() : null;
     this.startOptions = opts;
   }
 
@@ -41,7 +62,7 @@ public class OcWrapConnection implements Connection {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#abort-java.util.concurrent.Executor-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.abort");
+        Observability.createRoundtripTrackingSpan("java.sql.Connection.abort", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.abort(executor);
@@ -57,8 +78,15 @@ public class OcWrapConnection implements Connection {
   public void clearWarnings() throws SQLException {
     // This method may directly touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#clearWarnings--
+    // Getting the warnings doesn't touch the database, so that there is nothing to clear can be
+    // checked locally.
+    if (this.state != null && this.connection.getWarnings() == null) {
+      Observability.recordElidedCall("java.sql.Connection.clearWarnings");
+      return;
+    }
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.clearWarnings");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.clearWarnings", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.clearWarnings();
@@ -74,8 +102,12 @@ public class OcWrapConnection implements Connection {
   public void close() throws SQLException {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#close--
+    // The deferred closes of statements and cursors are done first, synchronously.
+    if (this.closer != null) {
+      this.closer.closeAll();
+    }
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.close");
+        Observability.createRoundtripTrackingSpan("java.sql.Connection.close", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.close();
@@ -92,7 +124,8 @@ public class OcWrapConnection implements Connection {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#commit--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.commit");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.commit", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.commit();
@@ -144,7 +177,7 @@ public class OcWrapConnection implements Connection {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#createStatement--
     java.sql.Statement stmt = this.connection.createStatement();
-    return new OcWrapStatement(stmt, this.startOptions);
+    return new OcWrapStatement(stmt, this.startOptions, this.connectionInfo, this.closer);
   }
 
   @Override
@@ -153,7 +186,7 @@ public class OcWrapConnection implements Connection {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#createStatement-int-int-
     java.sql.Statement stmt = this.connection.createStatement(resultSetType, resultSetConcurrency);
-    return new OcWrapStatement(stmt, this.startOptions);
+    return new OcWrapStatement(stmt, this.startOptions, this.connectionInfo, this.closer);
   }
 
   @Override
@@ -163,7 +196,7 @@ public class OcWrapConnection implements Connection {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#createStatement-int-int-int-
     java.sql.Statement stmt =
         this.connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
-    return new OcWrapStatement(stmt, this.startOptions);
+    return new OcWrapStatement(stmt, this.startOptions, this.connectionInfo, this.closer);
   }
 
   @Override
@@ -177,14 +210,24 @@ public class OcWrapConnection implements Connection {
   public boolean getAutoCommit() throws SQLException {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getAutoCommit--
-    return this.connection.getAutoCommit();
+    if (isKnown(Property.AUTO_COMMIT)) {
+      return (Boolean) this.state.get(Property.AUTO_COMMIT);
+    }
+    boolean autoCommit = this.connection.getAutoCommit();
+    remember(Property.AUTO_COMMIT, autoCommit);
+    return autoCommit;
   }
 
   @Override
   public String getCatalog() throws SQLException {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getCatalog--
-    return this.connection.getCatalog();
+    if (isKnown(Property.CATALOG)) {
+      return (String) this.state.get(Property.CATALOG);
+    }
+    String catalog = this.connection.getCatalog();
+    remember(Property.CATALOG, catalog);
+    return catalog;
   }
 
   @Override
@@ -213,7 +256,8 @@ public class OcWrapConnection implements Connection {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getMetaData--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.getMetaData");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.getMetaData", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.connection.getMetaData();
@@ -236,11 +280,17 @@ public class OcWrapConnection implements Connection {
   public String getSchema() throws SQLException {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getSchema--
+    if (isKnown(Property.SCHEMA, "java.sql.Connection.getSchema")) {
+      return (String) this.state.get(Property.SCHEMA);
+    }
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.getSchema");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.getSchema", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return this.connection.getSchema();
+      String schema = this.connection.getSchema();
+      remember(Property.SCHEMA, schema);
+      return schema;
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -253,11 +303,17 @@ public class OcWrapConnection implements Connection {
   public int getTransactionIsolation() throws SQLException {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#getTransactionIsolation--
+    if (isKnown(Property.TRANSACTION_ISOLATION, "java.sql.Connection.getTransactionIsolation")) {
+      return (Integer) this.state.get(Property.TRANSACTION_ISOLATION);
+    }
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.getTransactionIsolation");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.getTransactionIsolation", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return this.connection.getTransactionIsolation();
+      int level = this.connection.getTransactionIsolation();
+      remember(Property.TRANSACTION_ISOLATION, level);
+      return level;
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -289,15 +345,26 @@ public class OcWrapConnection implements Connection {
   @Override
   public boolean isReadOnly() throws SQLException {
     // This method doesn't touch the database:
-    return this.connection.isReadOnly();
+    if (isKnown(Property.READ_ONLY)) {
+      return (Boolean) this.state.get(Property.READ_ONLY);
+    }
+    boolean readOnly = this.connection.isReadOnly();
+    remember(Property.READ_ONLY, readOnly);
+    return readOnly;
   }
 
   @Override
   public boolean isValid(int timeout) throws SQLException {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#isValid-int-
+    // A connection that just completed a call is valid, unless it was closed since.
+    if (Observability.isRecentlyValid(this.connectionInfo) && !this.connection.isClosed()) {
+      Observability.recordElidedCall("java.sql.Connection.isValid");
+      return true;
+    }
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.isValid");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.isValid", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.connection.isValid(timeout);
@@ -315,7 +382,10 @@ public class OcWrapConnection implements Connection {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#nativeSQL-java.lang.String-
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.Connection.nativeSQL", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.Connection.nativeSQL",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.connection.nativeSQL(SQL);
@@ -331,8 +401,9 @@ public class OcWrapConnection implements Connection {
   public java.sql.CallableStatement prepareCall(String SQL) throws SQLException {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareCall-java.lang.String-
-    java.sql.CallableStatement cstmt = this.connection.prepareCall(SQL);
-    return new OcWrapCallableStatement(cstmt, this.startOptions);
+    java.sql.CallableStatement cstmt = this.connection.prepareCall(commentSQL(SQL));
+    return new OcWrapCallableStatement(
+        cstmt, this.startOptions, SQL, this.connectionInfo, this.closer);
   }
 
   @Override
@@ -341,8 +412,9 @@ public class OcWrapConnection implements Connection {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareCall-java.lang.String-int-int-
     java.sql.CallableStatement cstmt =
-        this.connection.prepareCall(SQL, resultSetType, resultSetConcurrency);
-    return new OcWrapCallableStatement(cstmt, this.startOptions);
+        this.connection.prepareCall(commentSQL(SQL), resultSetType, resultSetConcurrency);
+    return new OcWrapCallableStatement(
+        cstmt, this.startOptions, SQL, this.connectionInfo, this.closer);
   }
 
   @Override
@@ -352,16 +424,20 @@ public class OcWrapConnection implements Connection {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareCall-java.lang.String-int-int-int-
     java.sql.CallableStatement cstmt =
-        this.connection.prepareCall(SQL, resultSetType, resultSetConcurrency, resultSetHoldability);
-    return new OcWrapCallableStatement(cstmt, this.startOptions);
+        this.connection.prepareCall(
+            commentSQL(SQL), resultSetType, resultSetConcurrency, resultSetHoldability);
+    return new OcWrapCallableStatement(
+        cstmt, this.startOptions, SQL, this.connectionInfo, this.closer);
   }
 
   @Override
   public java.sql.PreparedStatement prepareStatement(String SQL) throws SQLException {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareStatement-java.lang.String-
-    java.sql.PreparedStatement pstmt = this.connection.prepareStatement(SQL);
-    return new OcWrapPreparedStatement(pstmt, this.startOptions, SQL);
+    java.sql.PreparedStatement pstmt = this.connection.prepareStatement(commentSQL(SQL));
+    learnCoalescingState();
+    return new OcWrapPreparedStatement(
+        pstmt, this.startOptions, SQL, this.connectionInfo, this.state, this.closer);
   }
 
   @Override
@@ -369,8 +445,11 @@ public class OcWrapConnection implements Connection {
       throws SQLException {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareStatement-java.lang.String-int-
-    java.sql.PreparedStatement pstmt = this.connection.prepareStatement(SQL, autoGeneratedKeys);
-    return new OcWrapPreparedStatement(pstmt, this.startOptions, SQL);
+    java.sql.PreparedStatement pstmt =
+        this.connection.prepareStatement(commentSQL(SQL), autoGeneratedKeys);
+    learnCoalescingState();
+    return new OcWrapPreparedStatement(
+        pstmt, this.startOptions, SQL, this.connectionInfo, this.state, this.closer);
   }
 
   @Override
@@ -378,8 +457,11 @@ public class OcWrapConnection implements Connection {
       throws SQLException {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareStatement-java.lang.String-int:A-
-    java.sql.PreparedStatement pstmt = this.connection.prepareStatement(SQL, columnIndices);
-    return new OcWrapPreparedStatement(pstmt, this.startOptions, SQL);
+    java.sql.PreparedStatement pstmt =
+        this.connection.prepareStatement(commentSQL(SQL), columnIndices);
+    learnCoalescingState();
+    return new OcWrapPreparedStatement(
+        pstmt, this.startOptions, SQL, this.connectionInfo, this.state, this.closer);
   }
 
   @Override
@@ -387,8 +469,11 @@ public class OcWrapConnection implements Connection {
       throws SQLException {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareStatement-java.lang.String-java.lang.String:A-
-    java.sql.PreparedStatement pstmt = this.connection.prepareStatement(SQL, columnNames);
-    return new OcWrapPreparedStatement(pstmt, this.startOptions, SQL);
+    java.sql.PreparedStatement pstmt =
+        this.connection.prepareStatement(commentSQL(SQL), columnNames);
+    learnCoalescingState();
+    return new OcWrapPreparedStatement(
+        pstmt, this.startOptions, SQL, this.connectionInfo, this.state, this.closer);
   }
 
   @Override
@@ -397,8 +482,10 @@ public class OcWrapConnection implements Connection {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareStatement-java.lang.String-int-int
     java.sql.PreparedStatement pstmt =
-        this.connection.prepareStatement(SQL, resultSetType, resultSetConcurrency);
-    return new OcWrapPreparedStatement(pstmt, this.startOptions, SQL);
+        this.connection.prepareStatement(commentSQL(SQL), resultSetType, resultSetConcurrency);
+    learnCoalescingState();
+    return new OcWrapPreparedStatement(
+        pstmt, this.startOptions, SQL, this.connectionInfo, this.state, this.closer);
   }
 
   @Override
@@ -409,8 +496,10 @@ public class OcWrapConnection implements Connection {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#prepareStatement-java.lang.String-int-int-int-
     java.sql.PreparedStatement pstmt =
         this.connection.prepareStatement(
-            SQL, resultSetType, resultSetConcurrency, resultSetHoldability);
-    return new OcWrapPreparedStatement(pstmt, this.startOptions, SQL);
+            commentSQL(SQL), resultSetType, resultSetConcurrency, resultSetHoldability);
+    learnCoalescingState();
+    return new OcWrapPreparedStatement(
+        pstmt, this.startOptions, SQL, this.connectionInfo, this.state, this.closer);
   }
 
   @Override
@@ -418,7 +507,8 @@ public class OcWrapConnection implements Connection {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#releaseSavepoint-java.sql.Savepoint-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.releaseSavepoint");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.releaseSavepoint", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.releaseSavepoint(savepoint);
@@ -435,7 +525,8 @@ public class OcWrapConnection implements Connection {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#rollback--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.rollback");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.rollback", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.rollback();
@@ -452,7 +543,8 @@ public class OcWrapConnection implements Connection {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#rollback-java.sql.Savepoint-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.rollback");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.rollback", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.rollback(savepoint);
@@ -468,14 +560,22 @@ public class OcWrapConnection implements Connection {
   public void setAutoCommit(boolean autoCommit) throws SQLException {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setAutoCommit-boolean-
+    if (isAlreadySet(Property.AUTO_COMMIT, autoCommit, "java.sql.Connection.setAutoCommit")) {
+      return;
+    }
     this.connection.setAutoCommit(autoCommit);
+    remember(Property.AUTO_COMMIT, autoCommit);
   }
 
   @Override
   public void setCatalog(String catalog) throws SQLException {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setCatalog-java.lang.String-
+    if (isAlreadySet(Property.CATALOG, catalog, "java.sql.Connection.setCatalog")) {
+      return;
+    }
     this.connection.setCatalog(catalog);
+    remember(Property.CATALOG, catalog);
   }
 
   @Override
@@ -484,7 +584,8 @@ public class OcWrapConnection implements Connection {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setClientInfo-java.util.Properties-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setClientInfo");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.setClientInfo", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.setClientInfo(properties);
@@ -501,7 +602,8 @@ public class OcWrapConnection implements Connection {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setClientInfo-java.lang.String-java.lang.String-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setClientInfo");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.setClientInfo", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.setClientInfo(name, value);
@@ -526,7 +628,8 @@ public class OcWrapConnection implements Connection {
     // This method may touch the database or incur some expenses:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setNetworkTimeout-java.util.concurrent.Executor-int-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setNetowrkTimeout");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.setNetowrkTimeout", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.setNetworkTimeout(executor, milliseconds);
@@ -542,8 +645,12 @@ public class OcWrapConnection implements Connection {
   public void setReadOnly(boolean readOnly) throws SQLException {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setReadOnly-boolean-
+    if (isAlreadySet(Property.READ_ONLY, readOnly, "java.sql.Connection.setReadOnly")) {
+      return;
+    }
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setReadOnly");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.setReadOnly", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.setReadOnly(readOnly);
@@ -553,6 +660,7 @@ public class OcWrapConnection implements Connection {
     } finally {
       trackingOperation.end();
     }
+    remember(Property.READ_ONLY, readOnly);
   }
 
   @Override
@@ -560,7 +668,8 @@ public class OcWrapConnection implements Connection {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setSavepoint--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setSavepoint");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.setSavepoint", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.connection.setSavepoint();
@@ -577,7 +686,8 @@ public class OcWrapConnection implements Connection {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setSavepoint-java.lang.String-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setSavepoint");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.setSavepoint", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.connection.setSavepoint(name);
@@ -593,8 +703,12 @@ public class OcWrapConnection implements Connection {
   public void setSchema(String schema) throws SQLException {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setSchema-java.lang.String-
+    if (isAlreadySet(Property.SCHEMA, schema, "java.sql.Connection.setSchema")) {
+      return;
+    }
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setSavepoint");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.setSchema", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.setSchema(schema);
@@ -604,14 +718,20 @@ public class OcWrapConnection implements Connection {
     } finally {
       trackingOperation.end();
     }
+    remember(Property.SCHEMA, schema);
   }
 
   @Override
   public void setTransactionIsolation(int level) throws SQLException {
     // This method directly touches the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Connection.html#setTransactionIsolation-int-
+    if (isAlreadySet(
+        Property.TRANSACTION_ISOLATION, level, "java.sql.Connection.setTransactionIsolation")) {
+      return;
+    }
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Connection.setTransactionIsolation");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Connection.setTransactionIsolation", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.connection.setTransactionIsolation(level);
@@ -621,6 +741,7 @@ public class OcWrapConnection implements Connection {
     } finally {
       trackingOperation.end();
     }
+    remember(Property.TRANSACTION_ISOLATION, level);
   }
 
   @Override
@@ -645,4 +766,71 @@ public class OcWrapConnection implements Connection {
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Wrapper.html#unwrap-java.lang.Class-
     return this.connection.unwrap(iface);
   }
+
+  // Returns whether setting property to value can be skipped, as it is known to have that value
+  // already. Otherwise forgets its value, which stays unknown if setting it fails.
+  private boolean isAlreadySet(Property property, @Nullable Object value, String method) {
+    if (this.state == null) {
+      return false;
+    }
+    if (this.state.is(property, value)) {
+      Observability.recordElidedCall(method);
+      return true;
+    }
+    this.state.forget(property);
+    return false;
+  }
+
+  // Returns whether the value of property is known, for its getter to answer from the state. For
+  // the getters that are local to drivers anyway, which aren't elided round-trips.
+  private boolean isKnown(Property property) {
+    return this.state != null && this.state.isKnown(property);
+  }
+
+  // Returns whether the value of property is known, for its getter to answer from the state,
+  // recording the round-trip of the getter method as elided.
+  private boolean isKnown(Property property, String method) {
+    if (!isKnown(property)) {
+      return false;
+    }
+    Observability.recordElidedCall(method);
+    return true;
+  }
+
+  private void remember(Property property, @Nullable Object value) {
+    if (this.state != null) {
+      this.state.remember(property, value);
+    }
+  }
+
+  // Learns the session state that queries are coalesced by with TraceOption.COALESCE_QUERIES, once
+  // per connection as it is tracked from then on, so that executions don't ask the driver for it.
+  // Queries aren't coalesced while it isn't known.
+  private void learnCoalescingState() {
+    if (this.state == null || !this.startOptions.contains(TraceOption.COALESCE_QUERIES)) {
+      return;
+    }
+    try {
+      if (!isKnown(Property.AUTO_COMMIT)) {
+        getAutoCommit();
+      }
+      if (!isKnown(Property.CATALOG)) {
+        getCatalog();
+      }
+      if (!isKnown(Property.SCHEMA)) {
+        getSchema();
+      }
+    } catch (SQLException | RuntimeException e) {
+      // Left unknown, the queries of the connection are executed on their own.
+    }
+  }
+
+  // Statements prepared once and executed many times are commented without the trace context, so
+  // that their SQL stays the same for the statement caches of drivers and databases.
+  private String commentSQL(String SQL) {
+    if (!this.shouldCommentSQLWithTraceContext || SQL == null) {
+      return SQL;
+    }
+    return SqlCommenter.stable(SQL);
+  }
 }
@@ -39,12 +39,14 @@ public class OcWrapDriver implements Driver {
 
   @Override
   public java.sql.Connection connect(String url, Properties info) throws SQLException {
+    // Parsed from the URL, since the connection may not be available yet, or at all.
+    ConnectionInfo connectionInfo = ConnectionInfo.of(url, info);
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Driver.connect");
+        Observability.createRoundtripTrackingSpan("java.sql.Driver.connect", connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return new OcWrapConnection(
-          this.driver.connect(url, info), EnumSet.noneOf(TraceOption.class));
+          this.driver.connect(url, info), EnumSet.noneOf(TraceOption.class), connectionInfo);
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
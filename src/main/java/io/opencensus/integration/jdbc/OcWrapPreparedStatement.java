@@ -15,11 +15,15 @@
 package io.opencensus.integration.jdbc;
 
 import io.opencensus.common.Scope;
+import io.opencensus.integration.jdbc.ConnectionState.Property;
 import io.opencensus.integration.jdbc.Observability.TraceOption;
 import io.opencensus.integration.jdbc.Observability.TrackingOperation;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Wraps and instruments a {@link PreparedStatement} instance with tracing and metrics using
@@ -28,30 +32,106 @@ import java.util.EnumSet;
 public class OcWrapPreparedStatement implements PreparedStatement {
   private final PreparedStatement preparedStatement;
   private final boolean shouldAnnotateSpansWithSQL;
-  private final String sql;
+  @Nullable private final SqlInfo sqlInfo;
+  @Nullable private final ConnectionInfo connectionInfo;
+  // The last-known session state of the connection with TraceOption.TRACK_CONNECTION_STATE, null
+  // otherwise.
+  @Nullable private final ConnectionState connectionState;
+  // Runs closes in the background with TraceOption.DEFER_CLOSE, null otherwise.
+  @Nullable private final DeferredCloser closer;
+  // Bounds executions by their deadline with TraceOption.ENFORCE_DEADLINES, null otherwise.
+  @Nullable private final DeadlineEnforcer deadlines;
+  // The parameters bound, for queries to be replayed by a hedge when their SQL was marked as
+  // hedgeable before the statement was prepared, or to be compared with those of concurrent
+  // queries with TraceOption.COALESCE_QUERIES, null otherwise.
+  @Nullable private final StatementParameters parameters;
+  // Whether the SQL was marked as hedgeable before the statement was prepared.
+  private final boolean hedgeable;
+  private final boolean coalesceQueries;
+  // The maximum number of rows set by the application, which queries are coalesced by.
+  private int maxRows;
+  // The query timeout set by the application in seconds, 0 for none, which bounds the time queries
+  // wait on an identical query in flight.
+  private int queryTimeoutSeconds;
+  // Completed by cancel to stop the query waiting on an identical query in flight, if any.
+  @Nullable private volatile CompletableFuture<Void> coalescedCancellation;
+  private boolean closeDeferred;
+  // The most recent execution, which produced the current results of this statement.
+  @Nullable private TrackingOperation lastExecution;
+  // The last execution whose rows were read into memory by QueryCoalescer or ReadHedging, rather
+  // than left on a cursor of the driver's statement.
+  @Nullable private TrackingOperation inMemoryExecution;
+  @Nullable private OcWrapResultSet currentResultSet;
+  @Nullable private OcWrapResultSet generatedKeys;
+
+  // State of TraceOption.ADAPTIVE_FETCH_SIZE: the fetch size last applied to the driver's
+  // statement, or 0 if none, and whether it is in effect for the current results. A fetch size
+  // set by the application always wins.
+  private final boolean adaptiveFetchSize;
+  private boolean fetchSizeSetByApplication;
+  private int adaptedFetchSize;
+  private boolean fetchSizeAdapted;
 
   public OcWrapPreparedStatement(PreparedStatement pstmt, EnumSet<TraceOption> opts) {
     this.preparedStatement = pstmt;
     this.shouldAnnotateSpansWithSQL = Observability.shouldAnnotateSpansWithSQL(opts);
-    this.sql = null;
+    this.sqlInfo = null;
+    this.connectionInfo = null;
+    this.connectionState = null;
+    this.closer = null;
+    this.deadlines =
+        opts.contains(TraceOption.ENFORCE_DEADLINES) ? new DeadlineEnforcer(pstmt) : null;
+    this.parameters = null;
+    this.hedgeable = false;
+    this.coalesceQueries = false;
+    this.adaptiveFetchSize = opts.contains(TraceOption.ADAPTIVE_FETCH_SIZE);
   }
 
   public OcWrapPreparedStatement(PreparedStatement pstmt, boolean shouldAnnotateSpansWithSQL) {
     this.preparedStatement = pstmt;
     this.shouldAnnotateSpansWithSQL = shouldAnnotateSpansWithSQL;
-    this.sql = null;
+    this.sqlInfo = null;
+    this.connectionInfo = null;
+    this.connectionState = null;
+    this.closer = null;
+    this.deadlines = null;
+    this.parameters = null;
+    this.hedgeable = false;
+    this.coalesceQueries = false;
+    this.adaptiveFetchSize = false;
   }
 
   public OcWrapPreparedStatement(PreparedStatement pstmt, EnumSet<TraceOption> opts, String SQL) {
+    this(pstmt, opts, SQL, null, null, null);
+  }
+
+  OcWrapPreparedStatement(
+      PreparedStatement pstmt,
+      EnumSet<TraceOption> opts,
+      String SQL,
+      @Nullable ConnectionInfo connectionInfo,
+      @Nullable ConnectionState connectionState,
+      @Nullable DeferredCloser closer) {
     this.preparedStatement = pstmt;
     this.shouldAnnotateSpansWithSQL = Observability.shouldAnnotateSpansWithSQL(opts);
-    this.sql = this.shouldAnnotateSpansWithSQL ? SQL : null;
+    // The SQL is kept even when spans aren't annotated with it, for its fingerprint.
+    this.sqlInfo = SqlInfo.of(SQL);
+    this.connectionInfo = connectionInfo;
+    this.connectionState = connectionState;
+    this.closer = closer;
+    this.deadlines =
+        opts.contains(TraceOption.ENFORCE_DEADLINES) ? new DeadlineEnforcer(pstmt) : null;
+    this.hedgeable = ReadHedging.isHedgeable(this.sqlInfo);
+    this.coalesceQueries = opts.contains(TraceOption.COALESCE_QUERIES);
+    this.parameters = this.hedgeable || this.coalesceQueries ? new StatementParameters() : null;
+    this.adaptiveFetchSize = opts.contains(TraceOption.ADAPTIVE_FETCH_SIZE);
   }
 
   @Override
   public void addBatch() throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.PreparedStatement.addBatch");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.PreparedStatement.addBatch", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.preparedStatement.addBatch();
@@ -73,9 +153,14 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   @Override
   public void cancel() throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.PreparedStatement.cancel");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.PreparedStatement.cancel", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
+      CompletableFuture<Void> coalescedCancellation = this.coalescedCancellation;
+      if (coalescedCancellation != null) {
+        coalescedCancellation.complete(null);
+      }
       this.preparedStatement.cancel();
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -91,7 +176,8 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // Inherited from:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#clearBatch--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.PreparedStatement.createBatch");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.PreparedStatement.createBatch", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.preparedStatement.clearBatch();
@@ -109,7 +195,8 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // Inherited from:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#clearWarnings--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.PreparedStatement.clearWarnings");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.PreparedStatement.clearWarnings", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.preparedStatement.clearWarnings();
@@ -126,12 +213,37 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#clearParameters--
     this.preparedStatement.clearParameters();
+    if (this.parameters != null) {
+      this.parameters.clear();
+    }
   }
 
   @Override
   public void close() throws SQLException {
+    if (this.closeDeferred) {
+      return;
+    }
+    // The lifecycle of the current cursor ends now, not once a deferred close is done.
+    final long closedNs = System.nanoTime();
+    if (this.closer != null
+        && this.closer.defer(
+            "java.sql.PreparedStatement.close",
+            new DeferredCloser.Closer() {
+              @Override
+              public void close() throws SQLException {
+                closeNow(closedNs);
+              }
+            })) {
+      this.closeDeferred = true;
+      return;
+    }
+    closeNow(closedNs);
+  }
+
+  private void closeNow(long closedNs) throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.PreparedStatement.close");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.PreparedStatement.close", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.preparedStatement.close();
@@ -140,6 +252,10 @@ public class OcWrapPreparedStatement implements PreparedStatement {
       throw e;
     } finally {
       trackingOperation.end();
+      // Closing a statement implicitly closes its current cursor.
+      if (this.currentResultSet != null) {
+        this.currentResultSet.recordQueryLifecycle(closedNs);
+      }
     }
   }
 
@@ -153,11 +269,18 @@ public class OcWrapPreparedStatement implements PreparedStatement {
 
   @Override
   public boolean execute() throws SQLException {
+    applyAdaptiveFetchSize();
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.PreparedStatement.execute", this.shouldAnnotateSpansWithSQL, this.sql);
+            "java.sql.PreparedStatement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            this.sqlInfo,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.preparedStatement.execute();
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -171,8 +294,15 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   public boolean execute(String SQL) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.PreparedStatement.execute", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.PreparedStatement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
+
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.preparedStatement.execute(SQL);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -186,8 +316,15 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   public boolean execute(String SQL, String[] columnNames) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.PreparedStatement.execute", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.PreparedStatement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
+
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.preparedStatement.execute(SQL, columnNames);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -201,8 +338,15 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   public boolean execute(String SQL, int[] columnIndices) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.PreparedStatement.execute", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.PreparedStatement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
+
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.preparedStatement.execute(SQL, columnIndices);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -216,8 +360,15 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   public boolean execute(String SQL, int autoGeneratedKeys) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.PreparedStatement.execute", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.PreparedStatement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
+
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.preparedStatement.execute(SQL, autoGeneratedKeys);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -230,9 +381,13 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   @Override
   public int[] executeBatch() throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.PreparedStatement.executeBatch");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.PreparedStatement.executeBatch", this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.preparedStatement.executeBatch();
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -246,10 +401,16 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   public java.sql.ResultSet executeQuery(String SQL) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.PreparedStatement.executeQuery", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.PreparedStatement.executeQuery",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
+
     try (Scope ws = trackingOperation.withSpan()) {
-      java.sql.ResultSet rs = this.preparedStatement.executeQuery(SQL);
-      return new OcWrapResultSet(rs);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      return wrapResultSet(this.preparedStatement.executeQuery(SQL));
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -262,8 +423,15 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   public int executeUpdate(String SQL) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.PreparedStatement.executeUpdate", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.PreparedStatement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
+
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.preparedStatement.executeUpdate(SQL);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -277,8 +445,15 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   public int executeUpdate(String SQL, int autoGeneratedKeys) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.PreparedStatement.executeUpdate", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.PreparedStatement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
+
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.preparedStatement.executeUpdate(SQL, autoGeneratedKeys);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -292,8 +467,15 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   public int executeUpdate(String SQL, int[] columnIndices) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.PreparedStatement.executeUpdate", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.PreparedStatement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
+
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.preparedStatement.executeUpdate(SQL, columnIndices);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -307,9 +489,15 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   public int executeUpdate(String SQL, String[] columnNames) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.PreparedStatement.executeUpdate", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.PreparedStatement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.preparedStatement.executeUpdate(SQL, columnNames);
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -321,13 +509,37 @@ public class OcWrapPreparedStatement implements PreparedStatement {
 
   @Override
   public java.sql.ResultSet executeQuery() throws SQLException {
+    applyAdaptiveFetchSize();
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.PreparedStatement.executeQuery", this.shouldAnnotateSpansWithSQL, this.sql);
+            "java.sql.PreparedStatement.executeQuery",
+            this.shouldAnnotateSpansWithSQL,
+            this.sqlInfo,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      java.sql.ResultSet rs = this.preparedStatement.executeQuery();
-      return new OcWrapResultSet(rs);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      QueryCoalescer.Key key = coalescingKey();
+      if (key != null) {
+        CompletableFuture<Void> cancellation = new CompletableFuture<>();
+        this.coalescedCancellation = cancellation;
+        try {
+          java.sql.ResultSet rs =
+              QueryCoalescer.shared.execute(
+                  key,
+                  "java.sql.PreparedStatement.executeQuery",
+                  newQuery(trackingOperation),
+                  coalescingTimeoutNs(),
+                  cancellation);
+          this.inMemoryExecution = trackingOperation;
+          return wrapResultSet(rs);
+        } finally {
+          this.coalescedCancellation = null;
+        }
+      }
+      return wrapResultSet(newQuery(trackingOperation).execute());
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -340,9 +552,15 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   public int executeUpdate() throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.PreparedStatement.executeUpdate", this.shouldAnnotateSpansWithSQL, this.sql);
+            "java.sql.PreparedStatement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            this.sqlInfo,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.preparedStatement.executeUpdate();
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -373,8 +591,7 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // Inherited from:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#getGeneratedKeys--
-    java.sql.ResultSet rs = this.preparedStatement.getGeneratedKeys();
-    return new OcWrapResultSet(rs);
+    return wrapGeneratedKeys(this.preparedStatement.getGeneratedKeys());
   }
 
   @Override
@@ -421,8 +638,11 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // Inherited from:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/Statement.html#getResultSet--
-    java.sql.ResultSet rs = this.preparedStatement.getResultSet();
-    return new OcWrapResultSet(rs);
+    if (this.lastExecution != null && this.lastExecution == this.inMemoryExecution) {
+      // The driver's statement has no cursor for those rows, or a cancelled one.
+      return this.currentResultSet;
+    }
+    return wrapResultSet(this.preparedStatement.getResultSet());
   }
 
   @Override
@@ -493,6 +713,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setArray-int-java.sql.Array-
     this.preparedStatement.setArray(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -500,6 +723,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setAsciiStream-int-java.io.InputStream-
     this.preparedStatement.setAsciiStream(parameterIndex, stream);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -508,6 +734,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setAsciiStream-int-java.io.InputStream-int-
     this.preparedStatement.setAsciiStream(parameterIndex, stream, length);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -516,6 +745,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setAsciiStream-int-java.io.InputStream-long-
     this.preparedStatement.setAsciiStream(parameterIndex, stream, length);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -523,6 +755,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setBigDecimal-int-java.math.BigDecimal-
     this.preparedStatement.setBigDecimal(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -530,6 +765,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setBinaryStream-int-java.io.InputStream-
     this.preparedStatement.setBinaryStream(parameterIndex, stream);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -538,6 +776,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setBinaryStream-int-java.io.InputStream-int-
     this.preparedStatement.setBinaryStream(parameterIndex, stream, length);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -546,6 +787,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go oer the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setBinaryStream-int-java.io.InputStream-long-
     this.preparedStatement.setBinaryStream(parameterIndex, stream, length);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -553,6 +797,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setBlob-int-java.sql.Blob-
     this.preparedStatement.setBlob(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -560,6 +807,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setBlob-int-java.io.InputStream-
     this.preparedStatement.setBlob(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -568,6 +818,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setBlob-int-java.io.InputStream-long-
     this.preparedStatement.setBlob(parameterIndex, inputStream, length);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -575,6 +828,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setBoolean-int-boolean-
     this.preparedStatement.setBoolean(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -582,6 +838,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setByte-int-byte-
     this.preparedStatement.setByte(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -589,6 +848,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setBytes-int-byte:A-
     this.preparedStatement.setBytes(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -596,6 +858,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setCharacterStream-int-java.io.Reader-
     this.preparedStatement.setCharacterStream(parameterIndex, reader);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -604,6 +869,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setCharacterStream-int-java.io.Reader-int-
     this.preparedStatement.setCharacterStream(parameterIndex, reader, length);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -612,6 +880,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setCharacterStream-int-java.io.Reader-long-
     this.preparedStatement.setCharacterStream(parameterIndex, reader, length);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -619,6 +890,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setClob-int-java.sql.Clob-
     this.preparedStatement.setClob(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -626,6 +900,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setClob-int-java.io.Reader-
     this.preparedStatement.setClob(parameterIndex, reader);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -633,6 +910,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setClob-int-java.io.Reader-long-
     this.preparedStatement.setClob(parameterIndex, reader, length);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -640,6 +920,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setDate-int-java.sql.Date-
     this.preparedStatement.setDate(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -648,10 +931,14 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method goes over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setDate-int-java.sql.Date-java.util.Calendar-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.PreparedStatement.setDate");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.PreparedStatement.setDate", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.preparedStatement.setDate(parameterIndex, x, cal);
+      if (this.parameters != null) {
+        this.parameters.setUnreplayable();
+      }
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -665,6 +952,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setDouble-int-double-
     this.preparedStatement.setDouble(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -672,6 +962,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setFloat-int-float-
     this.preparedStatement.setFloat(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -679,6 +972,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setInt-int-int-
     this.preparedStatement.setInt(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -686,6 +982,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setLong-int-long-
     this.preparedStatement.setLong(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -693,6 +992,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setNCharacterStream-int-java.io.Reader-
     this.preparedStatement.setNCharacterStream(parameterIndex, value);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -701,6 +1003,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setNCharacterStream-int-java.io.Reader-long-
     this.preparedStatement.setNCharacterStream(parameterIndex, value, length);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -708,6 +1013,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setNClob-int-java.sql.NClob-
     this.preparedStatement.setNClob(parameterIndex, value);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -715,6 +1023,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setNClob-int-java.io.Reader-
     this.preparedStatement.setNClob(parameterIndex, reader);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -722,6 +1033,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setNClob-int-java.io.Reader-long-
     this.preparedStatement.setNClob(parameterIndex, reader, length);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -729,6 +1043,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setNString-int-java.lang.String-
     this.preparedStatement.setNString(parameterIndex, value);
+    if (this.parameters != null) {
+      this.parameters.setNString(parameterIndex, value);
+    }
   }
 
   @Override
@@ -736,6 +1053,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setNull-int-int-
     this.preparedStatement.setNull(parameterIndex, sqlType);
+    if (this.parameters != null) {
+      this.parameters.setNull(parameterIndex, sqlType);
+    }
   }
 
   @Override
@@ -743,6 +1063,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setNull-int-int-java.lang.String-
     this.preparedStatement.setNull(parameterIndex, sqlType, typeName);
+    if (this.parameters != null) {
+      this.parameters.setNull(parameterIndex, sqlType, typeName);
+    }
   }
 
   @Override
@@ -750,6 +1073,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setObject-int-java.lang.Object-
     this.preparedStatement.setObject(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -757,6 +1083,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setObject-int-java.lang.Object-java.sql.SQLType-
     this.preparedStatement.setObject(parameterIndex, x, targetSqlType);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x, targetSqlType);
+    }
   }
 
   @Override
@@ -765,6 +1094,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setObject-int-java.lang.Object-java.sql.SQLType-int-
     this.preparedStatement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    }
   }
 
   @Override
@@ -772,6 +1104,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setRef-int-java.sql.Ref-
     this.preparedStatement.setRef(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -779,6 +1114,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setRowId-int-java.sql.RowId-
     this.preparedStatement.setRowId(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -786,6 +1124,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setShort-int-short-
     this.preparedStatement.setShort(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -793,6 +1134,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setSQLXML-int-java.sql.SQLXML-
     this.preparedStatement.setSQLXML(parameterIndex, xmlObject);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -800,6 +1144,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setString-int-java.lang.String-
     this.preparedStatement.setString(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -807,6 +1154,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setTime-int-java.sql.Time-
     this.preparedStatement.setTime(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -815,10 +1165,14 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method goes over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setTime-int-java.sql.Time-java.util.Calendar-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.PreparedStatement.setTime");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.PreparedStatement.setTime", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.preparedStatement.setTime(parameterIndex, x, cal);
+      if (this.parameters != null) {
+        this.parameters.setUnreplayable();
+      }
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -832,6 +1186,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setTimestamp-int-java.sql.Timestamp-
     this.preparedStatement.setTimestamp(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setObject(parameterIndex, x);
+    }
   }
 
   @Override
@@ -840,10 +1197,14 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method goes over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setTimestamp-int-java.sql.Timestamp-java.util.Calendar-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.PreparedStatement.setTimestamp");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.PreparedStatement.setTimestamp", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.preparedStatement.setTimestamp(parameterIndex, x, cal);
+      if (this.parameters != null) {
+        this.parameters.setUnreplayable();
+      }
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -859,6 +1220,9 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setUnicodeStream-int-java.io.InputStream-int-
     this.preparedStatement.setUnicodeStream(parameterIndex, x, length);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
@@ -866,11 +1230,14 @@ public class OcWrapPreparedStatement implements PreparedStatement {
     // This method doesn't go over the network:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/PreparedStatement.html#setURL-int-java.net.URL-
     this.preparedStatement.setURL(parameterIndex, x);
+    if (this.parameters != null) {
+      this.parameters.setUnreplayable();
+    }
   }
 
   @Override
   public boolean isClosed() throws SQLException {
-    return this.preparedStatement.isClosed();
+    return this.closeDeferred || this.preparedStatement.isClosed();
   }
 
   @Override
@@ -901,6 +1268,7 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   @Override
   public void setFetchSize(int rows) throws SQLException {
     this.preparedStatement.setFetchSize(rows);
+    this.fetchSizeSetByApplication = true;
   }
 
   @Override
@@ -911,6 +1279,7 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   @Override
   public void setMaxRows(int max) throws SQLException {
     this.preparedStatement.setMaxRows(max);
+    this.maxRows = max;
   }
 
   @Override
@@ -921,6 +1290,10 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   @Override
   public void setQueryTimeout(int seconds) throws SQLException {
     this.preparedStatement.setQueryTimeout(seconds);
+    this.queryTimeoutSeconds = seconds;
+    if (this.deadlines != null) {
+      this.deadlines.setApplicationTimeout(seconds);
+    }
   }
 
   @Override
@@ -932,4 +1305,121 @@ public class OcWrapPreparedStatement implements PreparedStatement {
   public <T> T unwrap(Class<T> iface) throws SQLException {
     return this.preparedStatement.unwrap(iface);
   }
+
+  // Returns the wrapper for the current result set of this statement, reusing the existing one
+  // when the driver hands out the same cursor again.
+  @Nullable
+  private java.sql.ResultSet wrapResultSet(@Nullable java.sql.ResultSet rs) {
+    if (rs == null) {
+      return null;
+    }
+    if (this.currentResultSet == null || !this.currentResultSet.wraps(rs)) {
+      if (this.currentResultSet != null) {
+        // The driver closes the previous cursor of a statement when it produces a new one.
+        this.currentResultSet.recordQueryLifecycle(System.nanoTime());
+      }
+      this.currentResultSet = new OcWrapResultSet(rs, this, this.lastExecution, this.closer);
+      if (this.fetchSizeAdapted) {
+        this.currentResultSet.setFetchSizeAdapted();
+      }
+    }
+    return this.currentResultSet;
+  }
+
+  // Returns the query of this statement, hedged when hedging is enabled and its parameters can be
+  // replayed.
+  private QueryCoalescer.Query newQuery(final TrackingOperation trackingOperation) {
+    return new QueryCoalescer.Query() {
+      @Override
+      public java.sql.ResultSet execute() throws SQLException {
+        ReadHedging hedging = Observability.hedging();
+        if (hedging != null && hedgeable && parameters.isReplayable()) {
+          java.sql.ResultSet rs =
+              hedging.executeQuery(
+                  preparedStatement, sqlInfo, parameters.snapshot(), trackingOperation);
+          if (ReadHedging.isHedge(rs)) {
+            inMemoryExecution = trackingOperation;
+          }
+          return rs;
+        }
+        return preparedStatement.executeQuery();
+      }
+    };
+  }
+
+  // Returns the identity of the query of this statement with TraceOption.COALESCE_QUERIES, or
+  // null if it can't be coalesced: its parameters can't be compared, its data source or user is
+  // unknown, its connection isn't known to be in auto-commit mode, as the isolation of a
+  // transaction may give it other rows, or the catalog and schema its names resolve in aren't
+  // known. The session state is the one tracked by the connection, without asking the driver.
+  @Nullable
+  private QueryCoalescer.Key coalescingKey() {
+    ConnectionState state = this.connectionState;
+    if (!this.coalesceQueries
+        || this.connectionInfo == null
+        || this.connectionInfo.getUser().isEmpty()
+        || state == null
+        || !state.is(Property.AUTO_COMMIT, true)
+        || !state.isKnown(Property.CATALOG)
+        || !state.isKnown(Property.SCHEMA)
+        || !this.parameters.isReplayable()) {
+      return null;
+    }
+    return new QueryCoalescer.Key(
+        this.connectionInfo.getDataSource(),
+        this.connectionInfo.getUser(),
+        (String) state.get(Property.CATALOG),
+        (String) state.get(Property.SCHEMA),
+        this.sqlInfo.getSql(),
+        this.maxRows,
+        this.parameters.snapshot());
+  }
+
+  // Returns how long a query may wait on an identical query in flight: its query timeout, bounded
+  // by the time left until its deadline with TraceOption.ENFORCE_DEADLINES, or -1 if unbounded.
+  private long coalescingTimeoutNs() {
+    long timeoutNs =
+        this.queryTimeoutSeconds > 0 ? TimeUnit.SECONDS.toNanos(this.queryTimeoutSeconds) : -1;
+    if (this.deadlines != null) {
+      long deadlineNs = DeadlineEnforcer.timeoutNs(this.sqlInfo);
+      if (deadlineNs >= 0 && (timeoutNs < 0 || deadlineNs < timeoutNs)) {
+        timeoutNs = deadlineNs;
+      }
+    }
+    return timeoutNs;
+  }
+
+  // Applies the fetch size recommended for the SQL of this statement before it is executed, when
+  // TraceOption.ADAPTIVE_FETCH_SIZE is set and the application didn't choose a fetch size.
+  private void applyAdaptiveFetchSize() throws SQLException {
+    this.fetchSizeAdapted = false;
+    if (!this.adaptiveFetchSize || this.fetchSizeSetByApplication || this.sqlInfo == null) {
+      return;
+    }
+
+    int recommended = FetchSizeAdvisor.recommend(this.sqlInfo.getFingerprint());
+    if (recommended <= 0) {
+      // Executions keep the fetch size applied last, until the recommendation is back.
+      this.fetchSizeAdapted = this.adaptedFetchSize > 0;
+      return;
+    }
+    if (recommended != this.adaptedFetchSize) {
+      this.preparedStatement.setFetchSize(recommended);
+      this.adaptedFetchSize = recommended;
+    }
+    this.fetchSizeAdapted = true;
+  }
+
+  @Nullable
+  private java.sql.ResultSet wrapGeneratedKeys(@Nullable java.sql.ResultSet rs) {
+    if (rs == null) {
+      return null;
+    }
+    if (this.generatedKeys == null || !this.generatedKeys.wraps(rs)) {
+      // Without an origin: the keys aren't rows of the statement's SQL, and mustn't be accounted
+      // as such in its query lifecycle, fetch size advice or column usage.
+      this.generatedKeys = new OcWrapResultSet(rs, this, null, this.closer);
+    }
+    return this.generatedKeys;
+  }
 }
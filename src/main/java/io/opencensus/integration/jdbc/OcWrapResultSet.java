@@ -18,13 +18,67 @@ import io.opencensus.common.Scope;
 import io.opencensus.integration.jdbc.Observability.TrackingOperation;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import javax.annotation.Nullable;
 
 /** Wraps and instruments a {@link ResultSet} instance with tracing and metrics using OpenCensus. */
 public class OcWrapResultSet implements ResultSet {
   private final ResultSet resultSet;
+  // The wrapped statement that produced this cursor, if known.
+  @Nullable private final Statement statement;
+  // The operation that produced this cursor. Operations on the cursor are traced as its children
+  // and carry its SQL fingerprint.
+  @Nullable private final TrackingOperation origin;
+  // Runs closes in the background with TraceOption.DEFER_CLOSE, null otherwise.
+  @Nullable private final DeferredCloser closer;
+  private boolean closeDeferred;
+
+  // Accounting of the query lifecycle, from the execution of the query until this cursor is
+  // exhausted or closed.
+  private final QueryLifecycle lifecycle = new QueryLifecycle();
+  private boolean lifecycleRecorded;
+  // The fetch size in effect, reported to the FetchSizeAdvisor with the rows fetched.
+  private int fetchSize;
+  private boolean fetchSizeAdapted;
+  // The columns read through the getters, as a bitmap of their 1-based indices, and the index
+  // resolving column labels for the getters taking labels.
+  private long[] columnsRead = new long[1];
+  // The calls to getters that are local to the driver, which are counted instead of traced.
+  private long localCalls;
+  private long localCallsNs;
+  @Nullable private ColumnLabelIndex labelIndex;
+  private boolean labelIndexUnavailable;
 
   public OcWrapResultSet(ResultSet rs) {
+    this(rs, null, null, null);
+  }
+
+  OcWrapResultSet(
+      ResultSet rs,
+      @Nullable Statement statement,
+      @Nullable TrackingOperation origin,
+      @Nullable DeferredCloser closer) {
     this.resultSet = rs;
+    this.statement = statement;
+    this.origin = origin;
+    this.closer = closer;
+  }
+
+  // Reports whether this wrapper is the one for rs, so that statements can hand out the same
+  // wrapper for repeated calls returning the same cursor.
+  boolean wraps(ResultSet rs) {
+    return this.resultSet == rs;
+  }
+
+  // Marks the fetch size of this cursor as applied by the FetchSizeAdvisor rather than chosen by
+  // the driver.
+  void setFetchSizeAdapted() {
+    this.fetchSizeAdapted = true;
+  }
+
+  // VisibleForTesting
+  long getLocalCalls() {
+    return this.localCalls;
   }
 
   @Override
@@ -32,7 +86,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#clearWarnings--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.clearWarnings");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.clearWarnings", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.resultSet.clearWarnings();
@@ -46,10 +100,31 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public void close() throws SQLException {
+    if (this.closeDeferred) {
+      return;
+    }
+    // The cursor's lifecycle ends now, not once a deferred close is done.
+    final long closedNs = System.nanoTime();
+    if (this.closer != null
+        && this.closer.defer(
+            "java.sql.ResultSet.close",
+            new DeferredCloser.Closer() {
+              @Override
+              public void close() throws SQLException {
+                closeNow(closedNs);
+              }
+            })) {
+      this.closeDeferred = true;
+      return;
+    }
+    closeNow(closedNs);
+  }
+
+  private void closeNow(long closedNs) throws SQLException {
     // This method goes to the database directly:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#close--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.close");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.close", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.resultSet.close();
@@ -58,6 +133,7 @@ public class OcWrapResultSet implements ResultSet {
       throw e;
     } finally {
       trackingOperation.end();
+      recordQueryLifecycle(closedNs);
     }
   }
 
@@ -66,7 +142,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method goes to the database directly:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#deleteRow--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.deleteRow");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.deleteRow", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.resultSet.deleteRow();
@@ -80,18 +156,15 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public int findColumn(String columnLabel) throws SQLException {
-    // This method may touch the database:
+    // This method doesn't touch the database, so it is accounted for as a local call on this
+    // cursor rather than traced:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#findColumn-java.lang.String-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.findColumn");
-
-    try (Scope ws = trackingOperation.withSpan()) {
-      return this.resultSet.findColumn(columnLabel);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
+    long startNs = System.nanoTime();
+    try {
+      int columnIndex = columnIndexOf(columnLabel);
+      return columnIndex > 0 ? columnIndex : this.resultSet.findColumn(columnLabel);
     } finally {
-      trackingOperation.end();
+      recordLocalCall(startNs);
     }
   }
 
@@ -100,7 +173,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#first--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.first");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.first", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.resultSet.first();
@@ -117,7 +190,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#insertRow--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.insertRow");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.insertRow", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.resultSet.insertRow();
@@ -418,6 +491,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Array getArray(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getArray-int-
     return this.resultSet.getArray(parameterIndex);
@@ -425,6 +499,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Array getArray(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getArray(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getArray-java.lang.String-
     return this.resultSet.getArray(parameterName);
@@ -432,6 +510,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.math.BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+    markColumnRead(columnIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getBigDecimal-int-
     return this.resultSet.getBigDecimal(columnIndex);
@@ -440,6 +519,7 @@ public class OcWrapResultSet implements ResultSet {
   @SuppressWarnings("deprecation")
   @Override
   public java.math.BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+    markColumnRead(columnIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getBigDecimal-int-int-
     return this.resultSet.getBigDecimal(columnIndex, scale);
@@ -447,6 +527,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.math.BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+    int columnIndex = columnIndexOf(columnLabel);
+    if (columnIndex > 0) {
+      return getBigDecimal(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getBigDecimal-java.lang.String-
     return this.resultSet.getBigDecimal(columnLabel);
@@ -455,6 +539,10 @@ public class OcWrapResultSet implements ResultSet {
   @SuppressWarnings("deprecation")
   @Override
   public java.math.BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+    int columnIndex = columnIndexOf(columnLabel);
+    if (columnIndex > 0) {
+      return getBigDecimal(columnIndex, scale);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getBigDecimal-java.lang.String-int-
     return this.resultSet.getBigDecimal(columnLabel, scale);
@@ -462,6 +550,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Blob getBlob(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getBlob-int-
     return this.resultSet.getBlob(parameterIndex);
@@ -469,6 +558,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Blob getBlob(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getBlob(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getBlob-java.lang.String-
     return this.resultSet.getBlob(parameterName);
@@ -521,6 +614,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public boolean getBoolean(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getBoolean-int-
     return this.resultSet.getBoolean(parameterIndex);
@@ -528,6 +622,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public boolean getBoolean(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getBoolean(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getBoolean-java.lang.String-
     return this.resultSet.getBoolean(parameterName);
@@ -535,6 +633,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Clob getClob(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getClob-int-
     return this.resultSet.getClob(parameterIndex);
@@ -542,6 +641,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Clob getClob(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getClob(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getClob-java.lang.String-
     return this.resultSet.getClob(parameterName);
@@ -592,6 +695,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Date getDate(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getDate-int-
     return this.resultSet.getDate(parameterIndex);
@@ -599,6 +703,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Date getDate(int parameterIndex, java.util.Calendar cal) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getDate-int-java.util.Calendar-
     return this.resultSet.getDate(parameterIndex, cal);
@@ -606,6 +711,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Date getDate(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getDate(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getDate-java.lang.String-
     return this.resultSet.getDate(parameterName);
@@ -613,6 +722,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Date getDate(String parameterName, java.util.Calendar cal) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getDate(columnIndex, cal);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getDate-java.lang.String-java.util.Calendar-
     return this.resultSet.getDate(parameterName, cal);
@@ -620,6 +733,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public double getDouble(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getDouble-int-
     return this.resultSet.getDouble(parameterIndex);
@@ -627,6 +741,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public double getDouble(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getDouble(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getDouble-java.lang.String-
     return this.resultSet.getDouble(parameterName);
@@ -634,6 +752,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public float getFloat(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getFloat-int-
     return this.resultSet.getFloat(parameterIndex);
@@ -641,6 +760,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public float getFloat(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getFloat(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getFloat-java.lang.String-
     return this.resultSet.getFloat(parameterName);
@@ -648,6 +771,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public int getInt(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getInt-int-
     return this.resultSet.getInt(parameterIndex);
@@ -655,6 +779,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public int getInt(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getInt(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getInt-java.lang.String-
     return this.resultSet.getInt(parameterName);
@@ -662,6 +790,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public long getLong(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getLong-java.lang.String-
     return this.resultSet.getLong(parameterIndex);
@@ -669,6 +798,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public long getLong(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getLong(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getLong-java.lang.String-
     return this.resultSet.getLong(parameterName);
@@ -676,6 +809,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Ref getRef(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getRef-int-
     return this.resultSet.getRef(parameterIndex);
@@ -683,6 +817,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Ref getRef(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getRef(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getRef-java.lang.String-
     return this.resultSet.getRef(parameterName);
@@ -690,6 +828,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.RowId getRowId(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getRowId-int-
     return this.resultSet.getRowId(parameterIndex);
@@ -697,6 +836,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.RowId getRowId(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getRowId(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getRowId-java.lang.String-
     return this.resultSet.getRowId(parameterName);
@@ -704,6 +847,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public short getShort(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getShort-int-
     return this.resultSet.getShort(parameterIndex);
@@ -711,6 +855,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public short getShort(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getShort(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getShort-java.lang.String-
     return this.resultSet.getShort(parameterName);
@@ -718,6 +866,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public String getString(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getString-int-
     return this.resultSet.getString(parameterIndex);
@@ -725,6 +874,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public String getString(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getString(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getString-java.lang.String-
     return this.resultSet.getString(parameterName);
@@ -732,6 +885,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Time getTime(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getTime-int-
     return this.resultSet.getTime(parameterIndex);
@@ -739,6 +893,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Time getTime(int parameterIndex, java.util.Calendar cal) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getTime-int-java.util.Calendar-
     return this.resultSet.getTime(parameterIndex, cal);
@@ -746,6 +901,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Time getTime(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getTime(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getTime-java.lang.String-
     return this.resultSet.getTime(parameterName);
@@ -753,6 +912,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Time getTime(String parameterName, java.util.Calendar cal) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getTime(columnIndex, cal);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getTime-java.lang.String-java.util.Calendar-
     return this.resultSet.getTime(parameterName, cal);
@@ -760,6 +923,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.net.URL getURL(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getURL-int-
     return this.resultSet.getURL(parameterIndex);
@@ -767,6 +931,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.net.URL getURL(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getURL(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getURL-java.lang.String-
     return this.resultSet.getURL(parameterName);
@@ -776,7 +944,7 @@ public class OcWrapResultSet implements ResultSet {
   public boolean isClosed() throws SQLException {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#isClosed--
-    return this.resultSet.isClosed();
+    return this.closeDeferred || this.resultSet.isClosed();
   }
 
   @Override
@@ -784,7 +952,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#isLast--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.isLast");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.isLast", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.resultSet.isLast();
@@ -812,23 +980,20 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public String getCursorName() throws SQLException {
-    // This method may touch the database:
+    // This method doesn't touch the database, so it is accounted for as a local call on this
+    // cursor rather than traced:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getCursorName--
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getCursorName");
-
-    try (Scope ws = trackingOperation.withSpan()) {
+    long startNs = System.nanoTime();
+    try {
       return this.resultSet.getCursorName();
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
     } finally {
-      trackingOperation.end();
+      recordLocalCall(startNs);
     }
   }
 
   @Override
   public byte[] getBytes(int columnIndex) throws SQLException {
+    markColumnRead(columnIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getBytes-int-
     return this.resultSet.getBytes(columnIndex);
@@ -836,6 +1001,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public byte getByte(int columnIndex) throws SQLException {
+    markColumnRead(columnIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getByte-int-
     return this.resultSet.getByte(columnIndex);
@@ -843,6 +1009,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public byte getByte(String columnLabel) throws SQLException {
+    int columnIndex = columnIndexOf(columnLabel);
+    if (columnIndex > 0) {
+      return getByte(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getByte-java.lang.String-
     return this.resultSet.getByte(columnLabel);
@@ -850,6 +1020,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public byte[] getBytes(String columnLabel) throws SQLException {
+    int columnIndex = columnIndexOf(columnLabel);
+    if (columnIndex > 0) {
+      return getBytes(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getBytes-java.lang.String-
     return this.resultSet.getBytes(columnLabel);
@@ -857,6 +1031,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.io.InputStream getBinaryStream(int columnIndex) throws SQLException {
+    markColumnRead(columnIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getBinaryStream-int-
     return this.resultSet.getBinaryStream(columnIndex);
@@ -864,6 +1039,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.io.InputStream getBinaryStream(String columnLabel) throws SQLException {
+    int columnIndex = columnIndexOf(columnLabel);
+    if (columnIndex > 0) {
+      return getBinaryStream(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getBinaryStream-java.lang.String-
     return this.resultSet.getBinaryStream(columnLabel);
@@ -871,10 +1050,11 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.io.InputStream getAsciiStream(int columnIndex) throws SQLException {
+    markColumnRead(columnIndex);
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getAsciiStream-int-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getAsciiStream");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getAsciiStream", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.resultSet.getAsciiStream(columnIndex);
@@ -888,10 +1068,14 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.io.InputStream getAsciiStream(String columnLabel) throws SQLException {
+    int columnIndex = columnIndexOf(columnLabel);
+    if (columnIndex > 0) {
+      return getAsciiStream(columnIndex);
+    }
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getAsciiStream-java.lang.String-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getAsciiStream");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getAsciiStream", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.resultSet.getAsciiStream(columnLabel);
@@ -906,10 +1090,12 @@ public class OcWrapResultSet implements ResultSet {
   @SuppressWarnings("deprecation")
   @Override
   public java.io.InputStream getUnicodeStream(int columnIndex) throws SQLException {
+    markColumnRead(columnIndex);
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getUnicodeStream-int-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getUnicodeStream");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.ResultSet.getUnicodeStream", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.resultSet.getUnicodeStream(columnIndex);
@@ -924,10 +1110,15 @@ public class OcWrapResultSet implements ResultSet {
   @SuppressWarnings("deprecation")
   @Override
   public java.io.InputStream getUnicodeStream(String columnLabel) throws SQLException {
+    int columnIndex = columnIndexOf(columnLabel);
+    if (columnIndex > 0) {
+      return getUnicodeStream(columnIndex);
+    }
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getUnicodeStream-java.lang.String-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getUnicodeStream");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.ResultSet.getUnicodeStream", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.resultSet.getUnicodeStream(columnLabel);
@@ -972,6 +1163,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public Object getObject(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getObject-int-
     return this.resultSet.getObject(parameterIndex);
@@ -979,6 +1171,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public <T> T getObject(int parameterIndex, Class<T> type) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getObject-int-java.lang.Class-
     return this.resultSet.getObject(parameterIndex, type);
@@ -987,6 +1180,7 @@ public class OcWrapResultSet implements ResultSet {
   @Override
   public Object getObject(int parameterIndex, java.util.Map<String, Class<?>> map)
       throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getObject-int-java.util.Map-
     return this.resultSet.getObject(parameterIndex, map);
@@ -994,6 +1188,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public Object getObject(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getObject(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getObject-java.lang.String-
     return this.resultSet.getObject(parameterName);
@@ -1001,6 +1199,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public <T> T getObject(String parameterName, Class<T> type) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getObject(columnIndex, type);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getObject-java.lang.String-java.lang.Class-
     return this.resultSet.getObject(parameterName, type);
@@ -1009,6 +1211,10 @@ public class OcWrapResultSet implements ResultSet {
   @Override
   public Object getObject(String parameterName, java.util.Map<String, Class<?>> map)
       throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getObject(columnIndex, map);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getObject-java.lang.String-java.util.Map-
     return this.resultSet.getObject(parameterName, map);
@@ -1016,6 +1222,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.SQLXML getSQLXML(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getSQLXML-int-
     return this.resultSet.getSQLXML(parameterIndex);
@@ -1023,6 +1230,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.SQLXML getSQLXML(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getSQLXML(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getSQLXML-java.lang.String-
     return this.resultSet.getSQLXML(parameterName);
@@ -1030,6 +1241,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public String getNString(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getNString-int-
     return this.resultSet.getNString(parameterIndex);
@@ -1037,6 +1249,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public String getNString(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getNString(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getNString-java.lang.String-
     return this.resultSet.getNString(parameterName);
@@ -1044,6 +1260,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.io.Reader getNCharacterStream(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getNCharacterStream-int-
     return this.resultSet.getNCharacterStream(parameterIndex);
@@ -1051,6 +1268,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.io.Reader getNCharacterStream(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getNCharacterStream(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getNCharacterStream-java.lang.String-
     return this.resultSet.getNCharacterStream(parameterName);
@@ -1058,6 +1279,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.io.Reader getCharacterStream(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getCharacterStream-int-
     return this.resultSet.getCharacterStream(parameterIndex);
@@ -1065,6 +1287,10 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.io.Reader getCharacterStream(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getCharacterStream(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getCharacterStream-java.lang.String-
     return this.resultSet.getCharacterStream(parameterName);
@@ -1240,6 +1466,7 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.NClob getNClob(int parameterIndex) throws SQLException {
+    markColumnRead(parameterIndex);
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getNClob-int-
     return this.resultSet.getNClob(parameterIndex);
@@ -1275,18 +1502,14 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public int getHoldability() throws SQLException {
-    // This method may touch the database:
+    // This method doesn't touch the database, so it is accounted for as a local call on this
+    // cursor rather than traced:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getHoldability--
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getHoldability");
-
-    try (Scope ws = trackingOperation.withSpan()) {
+    long startNs = System.nanoTime();
+    try {
       return this.resultSet.getHoldability();
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
     } finally {
-      trackingOperation.end();
+      recordLocalCall(startNs);
     }
   }
 
@@ -1295,7 +1518,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method goes to the database directly:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#updateRow--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.updateRow");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.updateRow", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.resultSet.updateRow();
@@ -1351,71 +1574,65 @@ public class OcWrapResultSet implements ResultSet {
 
   @Override
   public java.sql.Timestamp getTimestamp(int parameterIndex) throws SQLException {
-    // This method may touch the database:
+    markColumnRead(parameterIndex);
+    // This method doesn't touch the database, so it is accounted for as a local call on this
+    // cursor rather than traced:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getTimestamp-int-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getTimestamp");
-
-    try (Scope ws = trackingOperation.withSpan()) {
+    long startNs = System.nanoTime();
+    try {
       return this.resultSet.getTimestamp(parameterIndex);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
     } finally {
-      trackingOperation.end();
+      recordLocalCall(startNs);
     }
   }
 
   @Override
   public java.sql.Timestamp getTimestamp(int parameterIndex, java.util.Calendar cal)
       throws SQLException {
-    // This method may touch the database:
+    markColumnRead(parameterIndex);
+    // This method doesn't touch the database, so it is accounted for as a local call on this
+    // cursor rather than traced:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getTimestamp-int-java.util.Calendar-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getTimestamp");
-
-    try (Scope ws = trackingOperation.withSpan()) {
+    long startNs = System.nanoTime();
+    try {
       return this.resultSet.getTimestamp(parameterIndex, cal);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
     } finally {
-      trackingOperation.end();
+      recordLocalCall(startNs);
     }
   }
 
   @Override
   public java.sql.Timestamp getTimestamp(String parameterName) throws SQLException {
-    // This method may touch the database:
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getTimestamp(columnIndex);
+    }
+    // This method doesn't touch the database, so it is accounted for as a local call on this
+    // cursor rather than traced:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getTimestamp-java.lang.String-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getTimestamp");
-
-    try (Scope ws = trackingOperation.withSpan()) {
+    long startNs = System.nanoTime();
+    try {
       return this.resultSet.getTimestamp(parameterName);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
     } finally {
-      trackingOperation.end();
+      recordLocalCall(startNs);
     }
   }
 
   @Override
   public java.sql.Timestamp getTimestamp(String parameterName, java.util.Calendar cal)
       throws SQLException {
-    // This method may touch the database:
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getTimestamp(columnIndex, cal);
+    }
+    // This method doesn't touch the database, so it is accounted for as a local call on this
+    // cursor rather than traced:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getTimestamp-java.lang.String-java.util.Calendar-
-    TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getTimestamp");
-
-    try (Scope ws = trackingOperation.withSpan()) {
+    long startNs = System.nanoTime();
+    try {
       return this.resultSet.getTimestamp(parameterName, cal);
-    } catch (Exception e) {
-      trackingOperation.recordException(e);
-      throw e;
     } finally {
-      trackingOperation.end();
+      recordLocalCall(startNs);
     }
   }
 
@@ -1424,7 +1641,8 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#moveToCurrentRow--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.moveToCurrentRow");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.ResultSet.moveToCurrentRow", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.resultSet.moveToCurrentRow();
@@ -1441,7 +1659,8 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#moveToInsertRow--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.moveToInsertRow");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.ResultSet.moveToInsertRow", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.resultSet.moveToInsertRow();
@@ -1458,7 +1677,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#last--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.last");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.last", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.resultSet.last();
@@ -1475,7 +1694,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#afterLast--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.afterLast");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.afterLast", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.resultSet.afterLast();
@@ -1492,7 +1711,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#beforeFirst--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.beforeFirst");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.beforeFirst", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.resultSet.beforeFirst();
@@ -1509,24 +1728,137 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#next--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.next");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.next", this.origin);
+    long startNs = System.nanoTime();
+    boolean hasNext = false;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return this.resultSet.next();
+      hasNext = this.resultSet.next();
+      return hasNext;
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
     } finally {
+      recordFetch(startNs, System.nanoTime(), hasNext);
       trackingOperation.end();
     }
   }
 
+  private void recordFetch(long startNs, long endNs, boolean hasNext) {
+    if (this.origin == null || this.lifecycleRecorded) {
+      return;
+    }
+
+    if (!this.lifecycle.hasFetched()) {
+      this.fetchSize = readFetchSize();
+      labelIndex();
+    }
+    this.lifecycle.recordNext(startNs, endNs, hasNext);
+    if (!hasNext) {
+      recordQueryLifecycle(endNs);
+    }
+  }
+
+  // Records the lifecycle of the query that produced this cursor, once the cursor is exhausted or
+  // closed, whichever comes first. Statements call this when they close their current cursor.
+  void recordQueryLifecycle(long endNs) {
+    if (this.origin == null || this.lifecycleRecorded) {
+      return;
+    }
+
+    this.lifecycleRecorded = true;
+    long startNs = this.origin.getStartTimeNs();
+    Observability.recordQueryLifecycle(
+        this.origin.getMethod(),
+        endNs - startNs,
+        this.lifecycle.getFirstRowNs(startNs),
+        this.lifecycle.getFetchNs(),
+        this.lifecycle.getThinkNs());
+
+    if (this.localCalls > 0) {
+      Observability.recordLocalCalls(this.origin.getMethod(), this.localCalls, this.localCallsNs);
+    }
+
+    if (this.lifecycle.hasFetched()) {
+      long rows = this.lifecycle.getRows();
+      Observability.recordFetchRoundtrips(
+          this.origin.getMethod(),
+          FetchSizeAdvisor.roundtrips(rows, this.fetchSize),
+          this.fetchSizeAdapted);
+      SqlInfo sqlInfo = this.origin.getSqlInfo();
+      if (sqlInfo != null) {
+        FetchSizeAdvisor.observe(
+            sqlInfo.getFingerprint(), rows, this.fetchSize, this.fetchSizeAdapted);
+        Observability.recordTopFingerprintRows(sqlInfo.getFingerprint(), rows);
+      }
+
+      if (rows > 0 && this.labelIndex != null) {
+        int selected = this.labelIndex.getColumnCount();
+        Observability.recordColumnAccess(
+            this.origin.getMethod(), selected, ColumnUsage.count(this.columnsRead));
+        if (sqlInfo != null) {
+          ColumnUsage.record(sqlInfo.getFingerprint(), selected, this.columnsRead);
+        }
+      }
+    }
+  }
+
+  private void recordLocalCall(long startNs) {
+    if (this.origin != null) {
+      this.localCalls++;
+      this.localCallsNs += System.nanoTime() - startNs;
+    }
+  }
+
+  private void markColumnRead(int columnIndex) {
+    if (this.origin != null && columnIndex > 0) {
+      this.columnsRead = ColumnUsage.set(this.columnsRead, columnIndex);
+    }
+  }
+
+  // Returns the index of the column labelled columnLabel, or 0 if the label is left for the driver
+  // to resolve. Getters taking labels use it to call the getters taking indices instead, since
+  // many drivers resolve labels with a linear scan.
+  private int columnIndexOf(String columnLabel) {
+    if (this.origin == null || columnLabel == null) {
+      return 0;
+    }
+    ColumnLabelIndex labelIndex = labelIndex();
+    return labelIndex == null ? 0 : labelIndex.indexOf(columnLabel);
+  }
+
+  // Returns the index of the column labels of this cursor, shared with the other cursors of the
+  // same SQL fingerprint and shape, or null if the driver can't describe the columns.
+  @Nullable
+  private ColumnLabelIndex labelIndex() {
+    if (this.labelIndex == null && !this.labelIndexUnavailable && this.origin != null) {
+      SqlInfo sqlInfo = this.origin.getSqlInfo();
+      try {
+        this.labelIndex =
+            ColumnLabelIndex.of(
+                sqlInfo == null ? null : sqlInfo.getFingerprint(), this.resultSet.getMetaData());
+      } catch (SQLException e) {
+        this.labelIndexUnavailable = true;
+      }
+    }
+    return this.labelIndex;
+  }
+
+  private int readFetchSize() {
+    try {
+      return this.resultSet.getFetchSize();
+    } catch (SQLException e) {
+      // Treated like a driver that fetches all rows at once, for which nothing is recommended.
+      return 0;
+    }
+  }
+
   @Override
   public boolean previous() throws SQLException {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#previous--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.previous");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.previous", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.resultSet.previous();
@@ -1543,7 +1875,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#absolute-int-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.absolute");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.absolute", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.resultSet.absolute(rows);
@@ -1560,7 +1892,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getRow--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getRow");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.getRow", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.resultSet.getRow();
@@ -1577,7 +1909,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method may touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#relative-int-
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.relative");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.relative", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.resultSet.relative(rows);
@@ -1594,7 +1926,8 @@ public class OcWrapResultSet implements ResultSet {
     // This method goes to the database directly:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#cancelRowUpdates--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.cancelRowUpdates");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.ResultSet.cancelRowUpdates", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.resultSet.cancelRowUpdates();
@@ -1611,7 +1944,7 @@ public class OcWrapResultSet implements ResultSet {
     // This method goes to the database directly:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#refreshRow--
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.refreshRow");
+        Observability.createRoundtripTrackingSpan("java.sql.ResultSet.refreshRow", this.origin);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.resultSet.refreshRow();
@@ -1627,11 +1960,18 @@ public class OcWrapResultSet implements ResultSet {
   public java.sql.Statement getStatement() throws SQLException {
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getStatement--
+    if (this.statement != null) {
+      return this.statement;
+    }
     return this.resultSet.getStatement();
   }
 
   @Override
   public java.sql.NClob getNClob(String parameterName) throws SQLException {
+    int columnIndex = columnIndexOf(parameterName);
+    if (columnIndex > 0) {
+      return getNClob(columnIndex);
+    }
     // This method doesn't touch the database:
     // https://docs.oracle.com/javase/8/docs/api/java/sql/ResultSet.html#getNClob-java.lang.String-
     return this.resultSet.getNClob(parameterName);
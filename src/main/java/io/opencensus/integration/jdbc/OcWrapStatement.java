@@ -20,15 +20,41 @@ import io.opencensus.integration.jdbc.Observability.TrackingOperation;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.EnumSet;
+import javax.annotation.Nullable;
 
 /** Wraps and instruments a {@link Statement} instance with tracing and metrics using OpenCensus. */
 public class OcWrapStatement implements Statement {
   private final Statement statement;
   private final boolean shouldAnnotateSpansWithSQL;
+  private final boolean shouldCommentSQLWithTraceContext;
+  @Nullable private final ConnectionInfo connectionInfo;
+  // Runs closes in the background with TraceOption.DEFER_CLOSE, null otherwise.
+  @Nullable private final DeferredCloser closer;
+  // Bounds executions by their deadline with TraceOption.ENFORCE_DEADLINES, null otherwise.
+  @Nullable private final DeadlineEnforcer deadlines;
+  private boolean closeDeferred;
+  // The most recent execution, which produced the current results of this statement.
+  @Nullable private TrackingOperation lastExecution;
+  @Nullable private OcWrapResultSet currentResultSet;
+  @Nullable private OcWrapResultSet generatedKeys;
 
   public OcWrapStatement(Statement stmt, EnumSet<TraceOption> opts) {
+    this(stmt, opts, null, null);
+  }
+
+  OcWrapStatement(
+      Statement stmt,
+      EnumSet<TraceOption> opts,
+      @Nullable ConnectionInfo connectionInfo,
+      @Nullable DeferredCloser closer) {
     this.statement = stmt;
     this.shouldAnnotateSpansWithSQL = Observability.shouldAnnotateSpansWithSQL(opts);
+    this.shouldCommentSQLWithTraceContext =
+        opts.contains(TraceOption.COMMENT_SQL_WITH_TRACE_CONTEXT);
+    this.connectionInfo = connectionInfo;
+    this.closer = closer;
+    this.deadlines =
+        opts.contains(TraceOption.ENFORCE_DEADLINES) ? new DeadlineEnforcer(stmt) : null;
   }
 
   @Override
@@ -39,7 +65,7 @@ public class OcWrapStatement implements Statement {
   @Override
   public void cancel() throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Statement.cancel");
+        Observability.createRoundtripTrackingSpan("java.sql.Statement.cancel", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.statement.cancel();
@@ -63,8 +89,29 @@ public class OcWrapStatement implements Statement {
 
   @Override
   public void close() throws SQLException {
+    if (this.closeDeferred) {
+      return;
+    }
+    // The lifecycle of the current cursor ends now, not once a deferred close is done.
+    final long closedNs = System.nanoTime();
+    if (this.closer != null
+        && this.closer.defer(
+            "java.sql.Statement.close",
+            new DeferredCloser.Closer() {
+              @Override
+              public void close() throws SQLException {
+                closeNow(closedNs);
+              }
+            })) {
+      this.closeDeferred = true;
+      return;
+    }
+    closeNow(closedNs);
+  }
+
+  private void closeNow(long closedNs) throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Statement.close");
+        Observability.createRoundtripTrackingSpan("java.sql.Statement.close", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       this.statement.close();
@@ -73,6 +120,10 @@ public class OcWrapStatement implements Statement {
       throw e;
     } finally {
       trackingOperation.end();
+      // Closing a statement implicitly closes its current cursor.
+      if (this.currentResultSet != null) {
+        this.currentResultSet.recordQueryLifecycle(closedNs);
+      }
     }
   }
 
@@ -85,10 +136,16 @@ public class OcWrapStatement implements Statement {
   public boolean execute(String SQL) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.Statement.execute", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.Statement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return this.statement.execute(SQL);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      return this.statement.execute(commentSQL(SQL, trackingOperation));
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -101,10 +158,16 @@ public class OcWrapStatement implements Statement {
   public boolean execute(String SQL, int autoGeneratedKeys) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.Statement.execute", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.Statement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return this.statement.execute(SQL, autoGeneratedKeys);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      return this.statement.execute(commentSQL(SQL, trackingOperation), autoGeneratedKeys);
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -117,10 +180,16 @@ public class OcWrapStatement implements Statement {
   public boolean execute(String SQL, int[] columnIndices) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.Statement.execute", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.Statement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return this.statement.execute(SQL, columnIndices);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      return this.statement.execute(commentSQL(SQL, trackingOperation), columnIndices);
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -133,10 +202,16 @@ public class OcWrapStatement implements Statement {
   public boolean execute(String SQL, String[] columnNames) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.Statement.execute", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.Statement.execute",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return this.statement.execute(SQL, columnNames);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      return this.statement.execute(commentSQL(SQL, trackingOperation), columnNames);
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -148,9 +223,13 @@ public class OcWrapStatement implements Statement {
   @Override
   public int[] executeBatch() throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Statement.executeBatch");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Statement.executeBatch", this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
       return this.statement.executeBatch();
     } catch (Exception e) {
       trackingOperation.recordException(e);
@@ -164,11 +243,16 @@ public class OcWrapStatement implements Statement {
   public java.sql.ResultSet executeQuery(String SQL) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.Statement.executeQuery", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.Statement.executeQuery",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      java.sql.ResultSet rs = this.statement.executeQuery(SQL);
-      return new OcWrapResultSet(rs);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      return wrapResultSet(this.statement.executeQuery(commentSQL(SQL, trackingOperation)));
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -181,10 +265,16 @@ public class OcWrapStatement implements Statement {
   public int executeUpdate(String SQL) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.Statement.executeUpdate", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.Statement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return this.statement.executeUpdate(SQL);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      return this.statement.executeUpdate(commentSQL(SQL, trackingOperation));
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -197,10 +287,16 @@ public class OcWrapStatement implements Statement {
   public int executeUpdate(String SQL, int autoGeneratedKeys) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.Statement.executeUpdate", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.Statement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return this.statement.executeUpdate(SQL, autoGeneratedKeys);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      return this.statement.executeUpdate(commentSQL(SQL, trackingOperation), autoGeneratedKeys);
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -213,10 +309,16 @@ public class OcWrapStatement implements Statement {
   public int executeUpdate(String SQL, int[] columnIndices) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.Statement.executeUpdate", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.Statement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return this.statement.executeUpdate(SQL, columnIndices);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      return this.statement.executeUpdate(commentSQL(SQL, trackingOperation), columnIndices);
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -229,10 +331,16 @@ public class OcWrapStatement implements Statement {
   public int executeUpdate(String SQL, String[] columnNames) throws SQLException {
     TrackingOperation trackingOperation =
         Observability.createRoundtripTrackingSpan(
-            "java.sql.Statement.executeUpdate", this.shouldAnnotateSpansWithSQL, SQL);
+            "java.sql.Statement.executeUpdate",
+            this.shouldAnnotateSpansWithSQL,
+            SQL,
+            this.connectionInfo);
+    this.lastExecution = trackingOperation;
 
     try (Scope ws = trackingOperation.withSpan()) {
-      return this.statement.executeUpdate(SQL, columnNames);
+      trackingOperation.admit();
+      trackingOperation.enforceDeadline(this.deadlines);
+      return this.statement.executeUpdate(commentSQL(SQL, trackingOperation), columnNames);
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -259,11 +367,11 @@ public class OcWrapStatement implements Statement {
   @Override
   public java.sql.ResultSet getGeneratedKeys() throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Statement.getGeneratedKeys");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Statement.getGeneratedKeys", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
-      java.sql.ResultSet rs = this.statement.getGeneratedKeys();
-      return new OcWrapResultSet(rs);
+      return wrapGeneratedKeys(this.statement.getGeneratedKeys());
     } catch (Exception e) {
       trackingOperation.recordException(e);
       throw e;
@@ -285,7 +393,8 @@ public class OcWrapStatement implements Statement {
   @Override
   public boolean getMoreResults(int current) throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Statement.getMoreResults");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Statement.getMoreResults", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.statement.getMoreResults(current);
@@ -300,7 +409,8 @@ public class OcWrapStatement implements Statement {
   @Override
   public boolean getMoreResults() throws SQLException {
     TrackingOperation trackingOperation =
-        Observability.createRoundtripTrackingSpan("java.sql.Statement.getMoreResults");
+        Observability.createRoundtripTrackingSpan(
+            "java.sql.Statement.getMoreResults", this.connectionInfo);
 
     try (Scope ws = trackingOperation.withSpan()) {
       return this.statement.getMoreResults();
@@ -319,8 +429,45 @@ public class OcWrapStatement implements Statement {
 
   @Override
   public java.sql.ResultSet getResultSet() throws SQLException {
-    java.sql.ResultSet rs = this.statement.getResultSet();
-    return new OcWrapResultSet(rs);
+    return wrapResultSet(this.statement.getResultSet());
+  }
+
+  // Comments SQL with the trace context of the operation executing it, if enabled.
+  private String commentSQL(String SQL, TrackingOperation trackingOperation) {
+    if (!this.shouldCommentSQLWithTraceContext || SQL == null) {
+      return SQL;
+    }
+    return SqlCommenter.withTraceContext(SQL, trackingOperation.getSpan().getContext());
+  }
+
+  // Returns the wrapper for the current result set of this statement, reusing the existing one
+  // when the driver hands out the same cursor again.
+  @Nullable
+  private java.sql.ResultSet wrapResultSet(@Nullable java.sql.ResultSet rs) {
+    if (rs == null) {
+      return null;
+    }
+    if (this.currentResultSet == null || !this.currentResultSet.wraps(rs)) {
+      if (this.currentResultSet != null) {
+        // The driver closes the previous cursor of a statement when it produces a new one.
+        this.currentResultSet.recordQueryLifecycle(System.nanoTime());
+      }
+      this.currentResultSet = new OcWrapResultSet(rs, this, this.lastExecution, this.closer);
+    }
+    return this.currentResultSet;
+  }
+
+  @Nullable
+  private java.sql.ResultSet wrapGeneratedKeys(@Nullable java.sql.ResultSet rs) {
+    if (rs == null) {
+      return null;
+    }
+    if (this.generatedKeys == null || !this.generatedKeys.wraps(rs)) {
+      // Without an origin: the keys aren't rows of the statement's SQL, and mustn't be accounted
+      // as such in its query lifecycle, fetch size advice or column usage.
+      this.generatedKeys = new OcWrapResultSet(rs, this, null, this.closer);
+    }
+    return this.generatedKeys;
   }
 
   @Override
@@ -350,7 +497,7 @@ public class OcWrapStatement implements Statement {
 
   @Override
   public boolean isClosed() throws SQLException {
-    return this.statement.isClosed();
+    return this.closeDeferred || this.statement.isClosed();
   }
 
   @Override
@@ -401,6 +548,9 @@ public class OcWrapStatement implements Statement {
   @Override
   public void setQueryTimeout(int seconds) throws SQLException {
     this.statement.setQueryTimeout(seconds);
+    if (this.deadlines != null) {
+      this.deadlines.setApplicationTimeout(seconds);
+    }
   }
 
   @Override
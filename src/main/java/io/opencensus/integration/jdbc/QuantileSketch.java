@@ -0,0 +1,69 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * QuantileSketch counts latencies in logarithmic buckets, see {@link QuantileSketchSnapshot} for
+ * its accuracy. Recording is lock-free and its memory is fixed by its accuracy and range.
+ */
+final class QuantileSketch {
+  // VisibleForTesting
+  // Latencies from 1 microsecond to about 3 hours are tracked within the relative accuracy, which
+  // takes 1200 buckets, i.e. about 10KB, for an accuracy of 1%.
+  static final long MIN_TRACKABLE_NS = 1000;
+  static final long MAX_TRACKABLE_NS = 10_000_000_000_000L;
+
+  private final double relativeAccuracy;
+  private final double logGamma;
+  private final AtomicLongArray counts;
+
+  QuantileSketch(double relativeAccuracy) {
+    checkRelativeAccuracy(relativeAccuracy);
+    this.relativeAccuracy = relativeAccuracy;
+    this.logGamma = Math.log((1 + relativeAccuracy) / (1 - relativeAccuracy));
+    int buckets =
+        (int) Math.ceil(Math.log((double) MAX_TRACKABLE_NS / MIN_TRACKABLE_NS) / logGamma) + 1;
+    this.counts = new AtomicLongArray(buckets);
+  }
+
+  static void checkRelativeAccuracy(double relativeAccuracy) {
+    if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+      throw new IllegalArgumentException(
+          "Invalid relative accuracy " + relativeAccuracy + ", want within (0, 1)");
+    }
+  }
+
+  void record(long valueNs) {
+    counts.incrementAndGet(index(valueNs));
+  }
+
+  private int index(long valueNs) {
+    if (valueNs <= MIN_TRACKABLE_NS) {
+      return 0;
+    }
+    int index = (int) Math.ceil(Math.log((double) valueNs / MIN_TRACKABLE_NS) / logGamma);
+    return Math.min(index, counts.length() - 1);
+  }
+
+  QuantileSketchSnapshot snapshot() {
+    long[] snapshot = new long[counts.length()];
+    for (int i = 0; i < snapshot.length; i++) {
+      snapshot[i] = counts.get(i);
+    }
+    return new QuantileSketchSnapshot(relativeAccuracy, MIN_TRACKABLE_NS, snapshot);
+  }
+}
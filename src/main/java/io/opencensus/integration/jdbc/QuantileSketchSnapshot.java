@@ -0,0 +1,130 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * QuantileSketchSnapshot is a snapshot of a relative-error quantile sketch of latencies, in the
+ * manner of DDSketch.
+ *
+ * <p>Latencies are counted in logarithmic buckets such that every quantile returned by {@link
+ * #getQuantileNs} is within the relative accuracy of the exact quantile of the recorded
+ * latencies: for an accuracy of 1%, the estimate of an exact p99 of 200ms lies within [198ms,
+ * 202ms]. The guarantee holds for latencies between {@link #getMinTrackableNs} and {@link
+ * #getMaxTrackableNs}, lower latencies are estimated as the minimum and higher ones as the
+ * maximum.
+ *
+ * <p>Snapshots are serializable and can be merged, e.g. to combine the sketches of several hosts.
+ * Merging loses no accuracy.
+ */
+public final class QuantileSketchSnapshot implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final double relativeAccuracy;
+  private final long minTrackableNs;
+  private final long[] counts;
+  private final long count;
+
+  QuantileSketchSnapshot(double relativeAccuracy, long minTrackableNs, long[] counts) {
+    this.relativeAccuracy = relativeAccuracy;
+    this.minTrackableNs = minTrackableNs;
+    this.counts = counts;
+    long count = 0;
+    for (long c : counts) {
+      count += c;
+    }
+    this.count = count;
+  }
+
+  /** Returns the relative accuracy of the quantiles, e.g. 0.01 for 1%. */
+  public double getRelativeAccuracy() {
+    return relativeAccuracy;
+  }
+
+  /** Returns the lowest latency for which the accuracy is guaranteed. */
+  public long getMinTrackableNs() {
+    return minTrackableNs;
+  }
+
+  /** Returns the highest latency for which the accuracy is guaranteed. */
+  public long getMaxTrackableNs() {
+    return (long) (minTrackableNs * Math.pow(gamma(), counts.length - 1));
+  }
+
+  /** Returns the number of recorded latencies. */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the estimate of the q-quantile of the recorded latencies, e.g. of the 99th percentile
+   * for 0.99, or 0 if none was recorded.
+   *
+   * @throws IllegalArgumentException if q isn't within [0, 1].
+   */
+  public long getQuantileNs(double q) {
+    if (!(q >= 0 && q <= 1)) {
+      throw new IllegalArgumentException("Invalid quantile " + q + ", want within [0, 1]");
+    }
+    if (count == 0) {
+      return 0;
+    }
+
+    // The 0-based rank of the quantile among the sorted latencies.
+    long rank = (long) (q * (count - 1));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen > rank) {
+        return value(i);
+      }
+    }
+    return value(counts.length - 1);
+  }
+
+  /**
+   * Returns a snapshot counting the latencies of both this snapshot and other.
+   *
+   * @throws IllegalArgumentException if the snapshots don't have the same accuracy and range.
+   */
+  public QuantileSketchSnapshot merge(QuantileSketchSnapshot other) {
+    if (other.relativeAccuracy != relativeAccuracy
+        || other.minTrackableNs != minTrackableNs
+        || other.counts.length != counts.length) {
+      throw new IllegalArgumentException("Can't merge sketches of different accuracies or ranges");
+    }
+    long[] merged = Arrays.copyOf(counts, counts.length);
+    for (int i = 0; i < merged.length; i++) {
+      merged[i] += other.counts[i];
+    }
+    return new QuantileSketchSnapshot(relativeAccuracy, minTrackableNs, merged);
+  }
+
+  private double gamma() {
+    return (1 + relativeAccuracy) / (1 - relativeAccuracy);
+  }
+
+  // Bucket i counts the latencies within (min * gamma^(i-1), min * gamma^i], whose values are
+  // all within the relative accuracy of the returned estimate.
+  private long value(int i) {
+    if (i == 0) {
+      return minTrackableNs;
+    }
+    double gamma = gamma();
+    return Math.round(minTrackableNs * Math.pow(gamma, i) * 2 / (gamma + 1));
+  }
+}
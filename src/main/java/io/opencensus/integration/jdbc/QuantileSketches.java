@@ -0,0 +1,85 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * QuantileSketches keeps a latency {@link QuantileSketch} per method and per SQL fingerprint.
+ *
+ * <p>The number of fingerprints is bounded: once MAX_FINGERPRINTS have a sketch, the latencies of
+ * other fingerprints are only counted in the sketches of their methods.
+ */
+final class QuantileSketches {
+  // VisibleForTesting
+  static final int MAX_FINGERPRINTS = 256;
+
+  private final double relativeAccuracy;
+  private final ConcurrentMap<String, QuantileSketch> methods = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, QuantileSketch> fingerprints = new ConcurrentHashMap<>();
+
+  QuantileSketches(double relativeAccuracy) {
+    QuantileSketch.checkRelativeAccuracy(relativeAccuracy);
+    this.relativeAccuracy = relativeAccuracy;
+  }
+
+  void record(String method, @Nullable String fingerprint, long latencyNs) {
+    sketch(methods, method, Integer.MAX_VALUE).record(latencyNs);
+    if (fingerprint != null) {
+      QuantileSketch sketch = sketch(fingerprints, fingerprint, MAX_FINGERPRINTS);
+      if (sketch != null) {
+        sketch.record(latencyNs);
+      }
+    }
+  }
+
+  @Nullable
+  private QuantileSketch sketch(
+      ConcurrentMap<String, QuantileSketch> sketches, String key, int maxKeys) {
+    QuantileSketch sketch = sketches.get(key);
+    if (sketch == null) {
+      if (sketches.size() >= maxKeys) {
+        return null;
+      }
+      QuantileSketch created = new QuantileSketch(relativeAccuracy);
+      sketch = sketches.putIfAbsent(key, created);
+      if (sketch == null) {
+        sketch = created;
+      }
+    }
+    return sketch;
+  }
+
+  Map<String, QuantileSketchSnapshot> methodSnapshots() {
+    return snapshots(methods);
+  }
+
+  Map<String, QuantileSketchSnapshot> fingerprintSnapshots() {
+    return snapshots(fingerprints);
+  }
+
+  private static Map<String, QuantileSketchSnapshot> snapshots(
+      Map<String, QuantileSketch> sketches) {
+    Map<String, QuantileSketchSnapshot> snapshots = new HashMap<>();
+    for (Map.Entry<String, QuantileSketch> entry : sketches.entrySet()) {
+      snapshots.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return snapshots;
+  }
+}
@@ -0,0 +1,189 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.trace.Tracer;
+import io.opencensus.trace.Tracing;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * QueryCoalescer shares one execution between the identical queries issued concurrently against
+ * a data source, e.g. by the threads refreshing the same expired cache entry.
+ *
+ * <p>Queries are identical when they have the same data source, user, catalog, schema, SQL,
+ * maximum number of rows and parameters. The first of them executes, and reads its rows into a
+ * CachedRowSet that every query waiting on it gets a copy of, with its own cursor. A failure of
+ * the execution is reported to all of them. Queries arriving once the execution returned start a
+ * new one, so coalescing never serves rows older than the execution of a concurrent query.
+ *
+ * <p>Queries wait on the execution in flight for no longer than their own timeout, and stop
+ * waiting when their statement is cancelled, failing then like an execution of their own would.
+ */
+final class QueryCoalescer {
+  interface Query {
+    ResultSet execute() throws SQLException;
+  }
+
+  private static final Tracer tracer = Tracing.getTracer();
+
+  static final QueryCoalescer shared = new QueryCoalescer();
+
+  private final ConcurrentMap<Key, Flight> flights = new ConcurrentHashMap<>();
+  @Nullable private volatile RowSetFactory rowSetFactory;
+
+  // The identity of a query.
+  static final class Key {
+    private final Object[] parts;
+    private final int hash;
+
+    Key(
+        String dataSource,
+        String user,
+        @Nullable String catalog,
+        @Nullable String schema,
+        String sql,
+        int maxRows,
+        StatementParameters.Snapshot parameters) {
+      this.parts = new Object[] {dataSource, user, catalog, schema, sql, maxRows, parameters};
+      this.hash = Arrays.hashCode(parts);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && Arrays.equals(parts, ((Key) obj).parts);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  // An execution in flight, and the queries waiting on it.
+  private static final class Flight {
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    @Nullable private CachedRowSet result;
+    @Nullable private SQLException failure;
+    @Nullable private RuntimeException unchecked;
+  }
+
+  // Returns the rows of query, executing it unless an identical query is already in flight, in
+  // which case the query executed by method is recorded as coalesced and waits on it for up to
+  // timeoutNs, without bound if negative, or until cancelled completes.
+  ResultSet execute(
+      Key key, String method, Query query, long timeoutNs, CompletableFuture<?> cancelled)
+      throws SQLException {
+    Flight flight = new Flight();
+    Flight inFlight = flights.putIfAbsent(key, flight);
+    if (inFlight != null) {
+      tracer.getCurrentSpan().addAnnotation("Coalesced with an identical query in flight");
+      Observability.recordCoalescedQuery(method);
+      inFlight.waiting.incrementAndGet();
+      try {
+        return await(inFlight, timeoutNs, cancelled);
+      } finally {
+        inFlight.waiting.decrementAndGet();
+      }
+    }
+
+    try {
+      CachedRowSet result = newRowSet();
+      try (ResultSet rs = query.execute()) {
+        result.populate(rs);
+      }
+      flight.result = result;
+      return result.createCopy();
+    } catch (SQLException e) {
+      flight.failure = e;
+      throw e;
+    } catch (RuntimeException e) {
+      flight.unchecked = e;
+      throw e;
+    } finally {
+      flights.remove(key, flight);
+      flight.done.complete(null);
+    }
+  }
+
+  // VisibleForTesting: returns the number of queries waiting on the execution in flight of key.
+  int waiting(Key key) {
+    Flight flight = flights.get(key);
+    return flight == null ? 0 : flight.waiting.get();
+  }
+
+  private static ResultSet await(Flight flight, long timeoutNs, CompletableFuture<?> cancelled)
+      throws SQLException {
+    CompletableFuture<Object> waited = CompletableFuture.anyOf(flight.done, cancelled);
+    try {
+      if (timeoutNs < 0) {
+        waited.get();
+      } else {
+        waited.get(timeoutNs, TimeUnit.NANOSECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting on an identical query", e);
+    } catch (ExecutionException e) {
+      throw new SQLException("Cancelled while waiting on an identical query", "HY008", e);
+    } catch (TimeoutException e) {
+      throw new SQLTimeoutException("Timed out waiting on an identical query", e);
+    }
+    if (!flight.done.isDone()) {
+      throw new SQLException("Cancelled while waiting on an identical query", "HY008");
+    }
+    return copy(flight);
+  }
+
+  // Returns a copy of the rows of a flight, or throws its failure. Each waiting query gets its own
+  // exception, with the failure as its cause.
+  private static ResultSet copy(Flight flight) throws SQLException {
+    if (flight.failure != null) {
+      SQLException e = flight.failure;
+      throw new SQLException(e.getMessage(), e.getSQLState(), e.getErrorCode(), e);
+    }
+    if (flight.unchecked != null) {
+      throw new SQLException("The identical query in flight failed", flight.unchecked);
+    }
+    // createCopy doesn't move the cursor of the original, which copies are taken from only.
+    return flight.result.createCopy();
+  }
+
+  private CachedRowSet newRowSet() throws SQLException {
+    RowSetFactory factory = this.rowSetFactory;
+    if (factory == null) {
+      factory = RowSetProvider.newFactory();
+      this.rowSetFactory = factory;
+    }
+    CachedRowSet rowSet = factory.createCachedRowSet();
+    rowSet.setReadOnly(true);
+    rowSet.setConcurrency(ResultSet.CONCUR_READ_ONLY);
+    return rowSet;
+  }
+}
@@ -0,0 +1,69 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+/**
+ * QueryLifecycle splits the time a cursor is open between fetching its rows and the application
+ * thinking between them, from the calls to next.
+ *
+ * <p>Times are System.nanoTime values. Like cursors, it isn't meant to be used by several threads
+ * at once.
+ */
+final class QueryLifecycle {
+  // The end of the first call to next, and of the last one, 0 until next has been called once.
+  private long firstRowEndNs;
+  private long lastNextEndNs;
+  private long fetchNs;
+  private long thinkNs;
+  private long rows;
+
+  // Records a call to next from startNs to endNs, which returned hasNext.
+  void recordNext(long startNs, long endNs, boolean hasNext) {
+    if (this.lastNextEndNs != 0) {
+      // The time since the previous row was fetched was spent in the application.
+      this.thinkNs += startNs - this.lastNextEndNs;
+    } else {
+      this.firstRowEndNs = endNs;
+    }
+    this.fetchNs += endNs - startNs;
+    this.lastNextEndNs = endNs;
+    if (hasNext) {
+      this.rows++;
+    }
+  }
+
+  // Returns whether next has been called.
+  boolean hasFetched() {
+    return this.lastNextEndNs != 0;
+  }
+
+  // Returns the time from the execution at executionStartNs to the first row, or -1 if next
+  // hasn't been called.
+  long getFirstRowNs(long executionStartNs) {
+    return this.lastNextEndNs == 0 ? -1 : this.firstRowEndNs - executionStartNs;
+  }
+
+  long getFetchNs() {
+    return this.fetchNs;
+  }
+
+  long getThinkNs() {
+    return this.thinkNs;
+  }
+
+  long getRows() {
+    return this.rows;
+  }
+}
@@ -0,0 +1,422 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.common.Scope;
+import io.opencensus.integration.jdbc.Observability.TrackingOperation;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * ReadHedging hedges the queries of prepared statements marked hedgeable: when a query hasn't
+ * returned within a quantile of its recent latencies, the same query is issued on a connection of
+ * a second data source, and the first of both to return wins while the other is cancelled.
+ *
+ * <p>The results of hedges are read into a CachedRowSet before the hedge's connection is given
+ * back, and the query of the statement is cancelled when its hedge wins, before the execution
+ * returns. Hedges only start once a fingerprint has MIN_SAMPLES latencies, and a budget earned by
+ * executions bounds their rate: each hedgeable execution earns maxHedgeRate of a hedge, and at
+ * most one hedge is saved up.
+ *
+ * <p>The hedging quantile is that of the last WINDOW_SAMPLES to twice as many latencies of a
+ * fingerprint, so that it follows shifts in latency.
+ */
+final class ReadHedging {
+  // VisibleForTesting
+  static final int MIN_SAMPLES = 100;
+  // The hedging quantile is recomputed every so many latencies.
+  private static final int QUANTILE_PERIOD = 64;
+  // The latencies are rotated out of the sketch of a fingerprint by windows of so many.
+  // VisibleForTesting
+  static final int WINDOW_SAMPLES = 1024;
+  private static final double RELATIVE_ACCURACY = 0.02;
+  private static final int MAX_FINGERPRINTS = 256;
+  private static final int MAX_HEDGE_THREADS = 16;
+
+  private static final String METHOD = "java.sql.PreparedStatement.executeQuery";
+
+  // The states of a hedged execution.
+  private static final int PENDING = 0;
+  private static final int HEDGING = 1;
+  // The hedge won, and cancels the query of the statement.
+  private static final int CANCELLING = 2;
+  private static final int HEDGE_WON = 3;
+  private static final int DONE = 4;
+
+  // The fingerprints of the statements marked hedgeable.
+  private static final Set<String> hedgeable =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private static final ScheduledThreadPoolExecutor timer = newTimer();
+  private static final ThreadPoolExecutor executor = newExecutor();
+
+  private final DataSource connections;
+  private final double quantile;
+  private final double maxHedgeRate;
+  private final RowSetFactory rowSetFactory;
+  private final ConcurrentMap<String, Latencies> latencies = new ConcurrentHashMap<>();
+  // Guarded by this.
+  private double budget;
+
+  ReadHedging(DataSource connections, double quantile, double maxHedgeRate) throws SQLException {
+    if (!(quantile >= 0 && quantile <= 1)) {
+      throw new IllegalArgumentException("Invalid quantile " + quantile + ", want within [0, 1]");
+    }
+    if (!(maxHedgeRate > 0 && maxHedgeRate <= 1)) {
+      throw new IllegalArgumentException(
+          "Invalid maximum hedge rate " + maxHedgeRate + ", want within (0, 1]");
+    }
+    this.connections = connections;
+    this.quantile = quantile;
+    this.maxHedgeRate = maxHedgeRate;
+    this.rowSetFactory = RowSetProvider.newFactory();
+  }
+
+  private static ThreadFactory daemonThreads(final String prefix) {
+    return new ThreadFactory() {
+      private final AtomicInteger threads = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, prefix + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
+  private static ScheduledThreadPoolExecutor newTimer() {
+    ScheduledThreadPoolExecutor timer =
+        new ScheduledThreadPoolExecutor(1, daemonThreads("ocjdbc-hedge-timer-"));
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
+  }
+
+  private static ThreadPoolExecutor newExecutor() {
+    // Hedges are dropped rather than queued when all threads are busy.
+    return new ThreadPoolExecutor(
+        0,
+        MAX_HEDGE_THREADS,
+        60,
+        TimeUnit.SECONDS,
+        new SynchronousQueue<Runnable>(),
+        daemonThreads("ocjdbc-hedge-"));
+  }
+
+  static void setHedgeable(String fingerprint, boolean isHedgeable) {
+    if (isHedgeable) {
+      hedgeable.add(fingerprint);
+    } else {
+      hedgeable.remove(fingerprint);
+    }
+  }
+
+  static boolean isHedgeable(@Nullable SqlInfo sqlInfo) {
+    return sqlInfo != null && !hedgeable.isEmpty() && hedgeable.contains(sqlInfo.getFingerprint());
+  }
+
+  // The recent latencies of a fingerprint, and the delay after which its queries are hedged.
+  final class Latencies {
+    // The latencies of the current window, and those of the previous one, if any.
+    private volatile QuantileSketch current = new QuantileSketch(RELATIVE_ACCURACY);
+    @Nullable private QuantileSketchSnapshot previous;
+    private final AtomicLong samples = new AtomicLong();
+    // -1 until there are MIN_SAMPLES latencies.
+    private volatile long delayNs = -1;
+
+    void record(long latencyNs) {
+      current.record(latencyNs);
+      long samples = this.samples.incrementAndGet();
+      if (samples % WINDOW_SAMPLES == 0) {
+        rotate();
+      }
+      if (samples >= MIN_SAMPLES && (samples - MIN_SAMPLES) % QUANTILE_PERIOD == 0) {
+        delayNs = quantileNs();
+      }
+    }
+
+    long getDelayNs() {
+      return delayNs;
+    }
+
+    // Drops the previous window. Latencies recorded concurrently may be lost, which the quantile
+    // doesn't suffer from.
+    private synchronized void rotate() {
+      previous = current.snapshot();
+      current = new QuantileSketch(RELATIVE_ACCURACY);
+    }
+
+    private synchronized long quantileNs() {
+      QuantileSketchSnapshot snapshot = current.snapshot();
+      if (previous != null) {
+        snapshot = snapshot.merge(previous);
+      }
+      return snapshot.getQuantileNs(quantile);
+    }
+  }
+
+  // VisibleForTesting
+  @Nullable
+  Latencies latencies(String fingerprint) {
+    Latencies latencies = this.latencies.get(fingerprint);
+    if (latencies == null && this.latencies.size() < MAX_FINGERPRINTS) {
+      latencies = new Latencies();
+      Latencies previous = this.latencies.putIfAbsent(fingerprint, latencies);
+      latencies = previous == null ? latencies : previous;
+    }
+    return latencies;
+  }
+
+  private synchronized void earn() {
+    budget = Math.min(1, budget + maxHedgeRate);
+  }
+
+  private synchronized boolean spend() {
+    if (budget < 1) {
+      return false;
+    }
+    budget -= 1;
+    return true;
+  }
+
+  // Returns whether rs, returned by executeQuery, holds the rows of a hedge rather than a cursor of
+  // the statement.
+  static boolean isHedge(ResultSet rs) {
+    return rs instanceof CachedRowSet;
+  }
+
+  // Executes the query of statement, hedging it once it exceeds the hedging quantile of its
+  // fingerprint. origin is the operation tracking the execution.
+  ResultSet executeQuery(
+      PreparedStatement statement,
+      SqlInfo sqlInfo,
+      StatementParameters.Snapshot parameters,
+      TrackingOperation origin)
+      throws SQLException {
+    Latencies latencies = latencies(sqlInfo.getFingerprint());
+    if (latencies == null) {
+      return statement.executeQuery();
+    }
+    earn();
+    long startNs = System.nanoTime();
+    long delayNs = latencies.delayNs;
+    Attempt attempt = null;
+    if (delayNs >= 0) {
+      attempt = new Attempt(statement, sqlInfo, parameters, origin);
+      attempt.timeout = timer.schedule(attempt, delayNs, TimeUnit.NANOSECONDS);
+    }
+
+    ResultSet rs;
+    try {
+      rs = statement.executeQuery();
+    } catch (SQLException | RuntimeException e) {
+      // The query was cancelled as its hedge won, or failed in its own right.
+      if (attempt != null && attempt.finish() == HEDGE_WON) {
+        latencies.record(System.nanoTime() - startNs);
+        return attempt.result;
+      }
+      throw e;
+    }
+    if (attempt != null && attempt.finish() == HEDGE_WON) {
+      // The hedge won just as the query returned, and cancelled it, the hedge's rows are safe.
+      closeQuietly(rs);
+      latencies.record(System.nanoTime() - startNs);
+      return attempt.result;
+    }
+    latencies.record(System.nanoTime() - startNs);
+    return rs;
+  }
+
+  // A hedged execution, which issues its hedge when its timeout runs.
+  private final class Attempt implements Runnable {
+    private final PreparedStatement statement;
+    private final SqlInfo sqlInfo;
+    private final StatementParameters.Snapshot parameters;
+    private final TrackingOperation origin;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    @Nullable private volatile ScheduledFuture<?> timeout;
+    @Nullable private volatile PreparedStatement hedge;
+    @Nullable private volatile CachedRowSet result;
+
+    Attempt(
+        PreparedStatement statement,
+        SqlInfo sqlInfo,
+        StatementParameters.Snapshot parameters,
+        TrackingOperation origin) {
+      this.statement = statement;
+      this.sqlInfo = sqlInfo;
+      this.parameters = parameters;
+      this.origin = origin;
+    }
+
+    // Issues the hedge, on the timer thread.
+    @Override
+    public void run() {
+      if (!state.compareAndSet(PENDING, HEDGING)) {
+        return;
+      }
+      if (!spend()) {
+        state.set(DONE);
+        Observability.recordHedge(METHOD, Observability.VALUE_HEDGE_THROTTLED);
+        return;
+      }
+      try {
+        executor.execute(
+            new Runnable() {
+              @Override
+              public void run() {
+                hedge();
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        state.set(DONE);
+        Observability.recordHedge(METHOD, Observability.VALUE_HEDGE_THROTTLED);
+        return;
+      }
+      Observability.recordHedge(METHOD, Observability.VALUE_HEDGE_ISSUED);
+    }
+
+    private void hedge() {
+      TrackingOperation trackingOperation =
+          Observability.createRoundtripTrackingSpan(METHOD, origin);
+      trackingOperation.getSpan().addAnnotation("Hedge");
+      Connection connection = null;
+      try (Scope ws = trackingOperation.withSpan()) {
+        connection = connections.getConnection();
+        // Closed before the connection, which pools may hand out again with its statements open.
+        try (PreparedStatement hedgeStatement = connection.prepareStatement(sqlInfo.getSql())) {
+          this.hedge = hedgeStatement;
+          // The query may have returned meanwhile, without seeing the hedge to cancel.
+          if (state.get() != HEDGING) {
+            return;
+          }
+          parameters.bind(hedgeStatement);
+          CachedRowSet result = rowSetFactory.createCachedRowSet();
+          try (ResultSet rs = hedgeStatement.executeQuery()) {
+            result.populate(rs);
+          }
+          this.result = result;
+          if (state.compareAndSet(HEDGING, CANCELLING)) {
+            Observability.recordHedge(METHOD, Observability.VALUE_HEDGE_WON);
+            try {
+              statement.cancel();
+            } finally {
+              won();
+            }
+          }
+        }
+      } catch (Exception e) {
+        trackingOperation.recordException(e);
+        state.compareAndSet(HEDGING, DONE);
+      } finally {
+        trackingOperation.end();
+        if (connection != null) {
+          try {
+            connection.close();
+          } catch (SQLException | RuntimeException e) {
+            // The hedge is over either way.
+          }
+        }
+      }
+    }
+
+    private synchronized void won() {
+      state.set(HEDGE_WON);
+      notifyAll();
+    }
+
+    // Ends the attempt once the query returned or failed, cancelling the hedge if it is still
+    // running. Returns HEDGE_WON if the hedge won, whose result must be used then. Waits for the
+    // hedge cancelling the query, so that it can't reach the next execution of the statement.
+    int finish() {
+      ScheduledFuture<?> timeout = this.timeout;
+      if (timeout != null) {
+        timeout.cancel(false);
+      }
+      while (true) {
+        int state = this.state.get();
+        if (state == HEDGE_WON || state == DONE) {
+          return state;
+        }
+        if (state == CANCELLING) {
+          awaitCancelled();
+          return HEDGE_WON;
+        }
+        if (this.state.compareAndSet(state, DONE)) {
+          if (state == HEDGING) {
+            cancelHedge();
+          }
+          return DONE;
+        }
+      }
+    }
+
+    private void awaitCancelled() {
+      boolean interrupted = false;
+      synchronized (this) {
+        while (state.get() == CANCELLING) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void cancelHedge() {
+      PreparedStatement hedge = this.hedge;
+      if (hedge != null) {
+        try {
+          hedge.cancel();
+        } catch (SQLException | RuntimeException e) {
+          // The hedge runs to completion, and its result is dropped.
+        }
+      }
+      Observability.recordHedge(METHOD, Observability.VALUE_HEDGE_CANCELLED);
+    }
+  }
+
+  private static void closeQuietly(ResultSet rs) {
+    try {
+      rs.close();
+    } catch (SQLException | RuntimeException e) {
+      // The rows of the hedge are used instead.
+    }
+  }
+}
@@ -0,0 +1,141 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.trace.SpanContext;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * SqlCommenter appends a comment carrying the trace context to SQL, in the format of sqlcommenter:
+ *
+ * <pre>{@code
+ * SELECT * FROM users /*service='billing',traceparent='00-<trace id>-<span id>-01'*\/
+ * }</pre>
+ *
+ * <p>so that slow query logs and statement statistics of the database can be correlated to traces.
+ * SQL that already has a comment is left untouched.
+ *
+ * <p>Statements that are prepared once and executed many times only get the service, since a
+ * comment changing with every trace would defeat the statement caches of drivers and databases.
+ */
+final class SqlCommenter {
+  // VisibleForTesting
+  static final int MAX_CACHED_STATEMENTS = 1024;
+
+  // The 55 characters of "<trace id>-<span id>-<options>".
+  private static final int TRACE_CONTEXT_LENGTH = 32 + 1 + 16 + 1 + 2;
+
+  // The comments around each SQL, cached to only fill in the trace context on every execution.
+  private static final ConcurrentMap<String, Template> cache = new ConcurrentHashMap<>();
+
+  @Nullable private static volatile String service;
+
+  private SqlCommenter() {}
+
+  private static final class Template {
+    // The commented SQL up to the trace context, null if the SQL isn't commented.
+    @Nullable final String head;
+    final String tail;
+    // The SQL commented without trace context.
+    final String stable;
+
+    Template(@Nullable String head, String tail, String stable) {
+      this.head = head;
+      this.tail = tail;
+      this.stable = stable;
+    }
+  }
+
+  static void setService(@Nullable String service) {
+    SqlCommenter.service = service == null ? null : encode(service);
+    cache.clear();
+  }
+
+  // Returns sql commented with the trace context of context.
+  static String withTraceContext(String sql, SpanContext context) {
+    Template template = template(sql);
+    if (template.head == null || !context.isValid()) {
+      return template.stable;
+    }
+
+    StringBuilder sb =
+        new StringBuilder(template.head.length() + TRACE_CONTEXT_LENGTH + template.tail.length());
+    sb.append(template.head);
+    sb.append(context.getTraceId().toLowerBase16());
+    sb.append('-');
+    sb.append(context.getSpanId().toLowerBase16());
+    sb.append(context.getTraceOptions().isSampled() ? "-01" : "-00");
+    sb.append(template.tail);
+    return sb.toString();
+  }
+
+  // Returns sql commented without trace context, for statements prepared once.
+  static String stable(String sql) {
+    return template(sql).stable;
+  }
+
+  private static Template template(String sql) {
+    Template template = cache.get(sql);
+    if (template == null) {
+      template = newTemplate(sql, service);
+      if (cache.size() >= MAX_CACHED_STATEMENTS) {
+        cache.clear();
+      }
+      cache.put(sql, template);
+    }
+    return template;
+  }
+
+  private static Template newTemplate(String sql, @Nullable String service) {
+    if (sql.contains("/*") || sql.contains("--")) {
+      return new Template(null, "", sql);
+    }
+
+    // The comment goes before a trailing semicolon.
+    int end = sql.length();
+    while (end > 0) {
+      char c = sql.charAt(end - 1);
+      if (c != ';' && !Character.isWhitespace(c)) {
+        break;
+      }
+      end--;
+    }
+    String statement = sql.substring(0, end);
+    String trailer = sql.substring(end);
+
+    // Keys are sorted, as sqlcommenter requires.
+    if (service == null) {
+      return new Template(statement + " /*traceparent='00-", "'*/" + trailer, sql);
+    }
+    String serviceKey = "service='" + service + "'";
+    return new Template(
+        statement + " /*" + serviceKey + ",traceparent='00-",
+        "'*/" + trailer,
+        statement + " /*" + serviceKey + "*/" + trailer);
+  }
+
+  // Values are URL encoded, which also encodes the quotes delimiting them.
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
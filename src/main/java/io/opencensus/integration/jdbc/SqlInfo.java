@@ -0,0 +1,162 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * SqlInfo holds a SQL string together with its fingerprint: the same statement with literals
+ * replaced by "?", comments removed and whitespace collapsed, so that executions differing only in
+ * their literal values are grouped together. It also holds the operation the statement performs.
+ */
+final class SqlInfo {
+  // The cache is cleared once it grows past this size, which bounds its memory when an application
+  // generates unbounded distinct SQL strings, e.g. by inlining literals.
+  // VisibleForTesting
+  static final int MAX_CACHED_STATEMENTS = 1024;
+
+  private static final ConcurrentMap<String, SqlInfo> cache = new ConcurrentHashMap<>();
+
+  // Collapses "IN (?, ?, ?)" style lists, whose length usually depends on the input.
+  private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+
+  private final String sql;
+  private final String fingerprint;
+  private final SqlOperation operation;
+  // Extracted on first use, only table metrics need them.
+  @Nullable private volatile List<String> tables;
+
+  private SqlInfo(String sql, String fingerprint, SqlOperation operation) {
+    this.sql = sql;
+    this.fingerprint = fingerprint;
+    this.operation = operation;
+  }
+
+  @Nullable
+  static SqlInfo of(@Nullable String sql) {
+    if (sql == null) {
+      return null;
+    }
+
+    SqlInfo info = cache.get(sql);
+    if (info == null) {
+      info = new SqlInfo(sql, fingerprint(sql), SqlOperation.classify(sql));
+      if (cache.size() >= MAX_CACHED_STATEMENTS) {
+        cache.clear();
+      }
+      cache.put(sql, info);
+    }
+    return info;
+  }
+
+  String getSql() {
+    return sql;
+  }
+
+  String getFingerprint() {
+    return fingerprint;
+  }
+
+  SqlOperation getOperation() {
+    return operation;
+  }
+
+  List<String> getTables() {
+    List<String> tables = this.tables;
+    if (tables == null) {
+      // Racing threads extract the same tables, either may win.
+      tables = SqlTables.extract(fingerprint);
+      this.tables = tables;
+    }
+    return tables;
+  }
+
+  // VisibleForTesting
+  static String fingerprint(String sql) {
+    StringBuilder sb = new StringBuilder(sql.length());
+    int n = sql.length();
+    int i = 0;
+    while (i < n) {
+      char c = sql.charAt(i);
+      if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+        // Line comment.
+        while (i < n && sql.charAt(i) != '\n') {
+          i++;
+        }
+        appendSpace(sb);
+      } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+        // Block comment.
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? n : end + 2;
+        appendSpace(sb);
+      } else if (c == '\'') {
+        // String literal, with '' as the escaped quote.
+        i++;
+        while (i < n) {
+          if (sql.charAt(i) == '\'') {
+            if (i + 1 < n && sql.charAt(i + 1) == '\'') {
+              i += 2;
+              continue;
+            }
+            break;
+          }
+          i++;
+        }
+        i++;
+        sb.append('?');
+      } else if (c == '"' || c == '`') {
+        // Quoted identifier, kept verbatim.
+        int end = sql.indexOf(c, i + 1);
+        end = end < 0 ? n : end + 1;
+        sb.append(sql, i, end);
+        i = end;
+      } else if (Character.isWhitespace(c)) {
+        appendSpace(sb);
+        i++;
+      } else if ((Character.isDigit(c) || c == '$') && !isIdentifierPart(sb)) {
+        // Numeric literal or a positional placeholder such as $1.
+        i++;
+        while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+          i++;
+        }
+        sb.append('?');
+      } else {
+        sb.append(c);
+        i++;
+      }
+    }
+
+    String fingerprint = sb.toString().trim();
+    return PLACEHOLDER_LIST.matcher(fingerprint).replaceAll("?");
+  }
+
+  private static void appendSpace(StringBuilder sb) {
+    if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+      sb.append(' ');
+    }
+  }
+
+  private static boolean isIdentifierPart(StringBuilder sb) {
+    if (sb.length() == 0) {
+      return false;
+    }
+    char last = sb.charAt(sb.length() - 1);
+    return Character.isLetterOrDigit(last) || last == '_' || last == '$';
+  }
+}
@@ -0,0 +1,172 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.tags.TagValue;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * SqlOperation classifies a SQL statement by its leading keyword, e.g. to tell reads from writes.
+ *
+ * <p>Only the first keyword is looked at, after comments, JDBC escapes such as "{call" and the
+ * common table expressions of a WITH prefix, so classifying never fails and costs a single scan
+ * of the start of the statement.
+ */
+enum SqlOperation {
+  SELECT("select"),
+  INSERT("insert"),
+  UPDATE("update"),
+  DELETE("delete"),
+  MERGE("merge"),
+  DDL("ddl"),
+  CALL("call"),
+  TRANSACTION("transaction"),
+  OTHER("other");
+
+  private static final Map<String, SqlOperation> KEYWORDS = new HashMap<>();
+
+  static {
+    for (String keyword : new String[] {"SELECT", "VALUES", "TABLE", "SHOW"}) {
+      KEYWORDS.put(keyword, SELECT);
+    }
+    for (String keyword : new String[] {"INSERT", "REPLACE", "UPSERT"}) {
+      KEYWORDS.put(keyword, INSERT);
+    }
+    KEYWORDS.put("UPDATE", UPDATE);
+    KEYWORDS.put("DELETE", DELETE);
+    KEYWORDS.put("MERGE", MERGE);
+    for (String keyword :
+        new String[] {
+          "CREATE", "ALTER", "DROP", "TRUNCATE", "RENAME", "COMMENT", "GRANT", "REVOKE"
+        }) {
+      KEYWORDS.put(keyword, DDL);
+    }
+    for (String keyword : new String[] {"CALL", "EXEC", "EXECUTE"}) {
+      KEYWORDS.put(keyword, CALL);
+    }
+    for (String keyword : new String[] {"START", "COMMIT", "ROLLBACK", "SAVEPOINT", "RELEASE"}) {
+      KEYWORDS.put(keyword, TRANSACTION);
+    }
+  }
+
+  private final TagValue tagValue;
+
+  SqlOperation(String name) {
+    this.tagValue = TagValue.create(name);
+  }
+
+  TagValue getTagValue() {
+    return tagValue;
+  }
+
+  // Returns whether statements of this operation change data or schema.
+  boolean isWrite() {
+    return this == INSERT
+        || this == UPDATE
+        || this == DELETE
+        || this == MERGE
+        || this == DDL
+        || this == CALL;
+  }
+
+  static SqlOperation classify(String sql) {
+    int n = sql.length();
+    int i = skipIgnored(sql, 0);
+    boolean inWith = false;
+    int depth = 0;
+    while (i < n) {
+      char c = sql.charAt(i);
+      if (Character.isLetter(c)) {
+        int start = i;
+        while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) {
+          i++;
+        }
+        String keyword = sql.substring(start, i).toUpperCase(Locale.ROOT);
+        if (!inWith) {
+          if (keyword.equals("WITH")) {
+            // Skip the common table expressions up to the statement they prefix, the first of
+            // its keywords outside of parentheses.
+            inWith = true;
+            continue;
+          }
+          SqlOperation operation = KEYWORDS.get(keyword);
+          return operation == null ? OTHER : operation;
+        }
+        if (depth == 0) {
+          SqlOperation operation = KEYWORDS.get(keyword);
+          if (operation == SELECT
+              || operation == INSERT
+              || operation == UPDATE
+              || operation == DELETE
+              || operation == MERGE) {
+            return operation;
+          }
+        }
+      } else if (c == '(') {
+        depth++;
+        i++;
+      } else if (c == ')') {
+        depth = Math.max(0, depth - 1);
+        i++;
+      } else if (c == '\'' || c == '"' || c == '`') {
+        int end = sql.indexOf(c, i + 1);
+        i = end < 0 ? n : end + 1;
+      } else {
+        i++;
+      }
+      if (inWith) {
+        i = skipComments(sql, i);
+      } else {
+        i = skipIgnored(sql, i);
+      }
+    }
+    return OTHER;
+  }
+
+  // Skips whitespace, comments and the characters that may precede the first keyword: opening
+  // parentheses and JDBC escapes such as "{call" or "{? = call".
+  private static int skipIgnored(String sql, int i) {
+    int n = sql.length();
+    while (true) {
+      i = skipComments(sql, i);
+      if (i < n && "({?=".indexOf(sql.charAt(i)) >= 0) {
+        i++;
+      } else {
+        return i;
+      }
+    }
+  }
+
+  private static int skipComments(String sql, int i) {
+    int n = sql.length();
+    while (i < n) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+        int end = sql.indexOf('\n', i + 2);
+        i = end < 0 ? n : end + 1;
+      } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? n : end + 2;
+      } else {
+        return i;
+      }
+    }
+    return i;
+  }
+}
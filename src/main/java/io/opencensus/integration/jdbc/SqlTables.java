@@ -0,0 +1,189 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * SqlTables extracts the tables a SQL statement refers to: the targets of FROM, JOIN, INTO,
+ * UPDATE and USING, including those of subqueries.
+ *
+ * <p>It is a lexer rather than a parser: it works on SqlInfo fingerprints, where comments and
+ * literals are already gone, looks at the identifier following each of these keywords and
+ * tolerates any dialect by ignoring what it doesn't recognize. Unquoted names are lower-cased,
+ * quoted names are kept as written, without their quotes.
+ */
+final class SqlTables {
+  // The keywords followed by a table.
+  private static final Set<String> TABLE_KEYWORDS =
+      new HashSet<>(Arrays.asList("FROM", "JOIN", "INTO", "UPDATE", "USING"));
+
+  // The keywords that can't be a table or the alias of a table in a FROM list.
+  private static final Set<String> CLAUSE_KEYWORDS =
+      new HashSet<>(
+          Arrays.asList(
+              "FROM", "INTO", "UPDATE", "WHERE", "JOIN", "INNER", "LEFT", "RIGHT", "FULL", "OUTER",
+              "CROSS", "NATURAL", "ON", "USING", "GROUP", "ORDER", "HAVING", "LIMIT", "OFFSET",
+              "FETCH", "FOR", "UNION", "INTERSECT", "EXCEPT", "MINUS", "SET", "VALUES", "SELECT",
+              "RETURNING", "WINDOW", "LATERAL", "WITH", "DEFAULT", "OUTPUT", "WHEN", "PARTITION"));
+
+  private SqlTables() {}
+
+  private static final class Token {
+    // The normalized name of an identifier, or the character of a punctuation token.
+    final String text;
+    // The upper-cased text of an unquoted identifier, to compare with keywords, null otherwise.
+    @Nullable final String keyword;
+    final boolean identifier;
+
+    Token(String text, @Nullable String keyword, boolean identifier) {
+      this.text = text;
+      this.keyword = keyword;
+      this.identifier = identifier;
+    }
+
+    boolean is(String keyword) {
+      return keyword.equals(this.keyword);
+    }
+
+    boolean isPunctuation(char c) {
+      return !identifier && text.charAt(0) == c;
+    }
+  }
+
+  // Returns the distinct tables of the fingerprint of a statement, in order of appearance.
+  static List<String> extract(String fingerprint) {
+    List<Token> tokens = tokenize(fingerprint);
+    List<String> tables = new ArrayList<>();
+    // Whether each enclosing parenthesis holds a subquery, whose tables count, rather than e.g.
+    // the arguments of EXTRACT(YEAR FROM column).
+    Deque<Boolean> subqueries = new ArrayDeque<>();
+    for (int i = 0; i < tokens.size(); i++) {
+      Token token = tokens.get(i);
+      if (token.isPunctuation('(')) {
+        Token next = i + 1 < tokens.size() ? tokens.get(i + 1) : null;
+        subqueries.push(next != null && (next.is("SELECT") || next.is("WITH")));
+        continue;
+      }
+      if (token.isPunctuation(')')) {
+        subqueries.poll();
+        continue;
+      }
+      if (token.keyword == null || !TABLE_KEYWORDS.contains(token.keyword)) {
+        continue;
+      }
+      if (!subqueries.isEmpty() && !subqueries.peek()) {
+        continue;
+      }
+      // Not a table in SELECT ... FOR UPDATE, ON DUPLICATE KEY UPDATE or IS DISTINCT FROM.
+      Token previous = i > 0 ? tokens.get(i - 1) : null;
+      if (previous != null
+          && (previous.is("FOR") || previous.is("KEY") || previous.is("DISTINCT"))) {
+        continue;
+      }
+
+      // The table, followed in a FROM list by an optional alias and further tables.
+      int j = i + 1;
+      while (j < tokens.size() && tokens.get(j).identifier && !isClauseKeyword(tokens.get(j))) {
+        addTable(tables, tokens.get(j).text);
+        j++;
+        if (j < tokens.size() && tokens.get(j).is("AS")) {
+          j++;
+        }
+        if (j < tokens.size() && tokens.get(j).identifier && !isClauseKeyword(tokens.get(j))) {
+          j++;
+        }
+        if (!token.is("FROM") || j >= tokens.size() || !tokens.get(j).isPunctuation(',')) {
+          break;
+        }
+        j++;
+      }
+    }
+    return tables.isEmpty() ? Collections.<String>emptyList() : tables;
+  }
+
+  private static boolean isClauseKeyword(Token token) {
+    return token.keyword != null && CLAUSE_KEYWORDS.contains(token.keyword);
+  }
+
+  private static void addTable(List<String> tables, String table) {
+    if (!table.isEmpty() && !tables.contains(table)) {
+      tables.add(table);
+    }
+  }
+
+  private static List<Token> tokenize(String sql) {
+    List<Token> tokens = new ArrayList<>();
+    int n = sql.length();
+    int i = 0;
+    while (i < n) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (isIdentifierStart(c)) {
+        // An identifier, possibly qualified, e.g. schema."Table".
+        StringBuilder name = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+          c = sql.charAt(i);
+          if (c == '"' || c == '`' || c == '[') {
+            char close = c == '[' ? ']' : c;
+            int end = sql.indexOf(close, i + 1);
+            end = end < 0 ? n : end;
+            name.append(sql, i + 1, end);
+            i = Math.min(n, end + 1);
+            quoted = true;
+          } else {
+            int start = i;
+            while (i < n && isIdentifierPart(sql.charAt(i))) {
+              i++;
+            }
+            name.append(sql.substring(start, i).toLowerCase(Locale.ROOT));
+          }
+          if (i + 1 < n && sql.charAt(i) == '.' && isIdentifierStart(sql.charAt(i + 1))) {
+            name.append('.');
+            i++;
+          } else {
+            break;
+          }
+        }
+        String text = name.toString();
+        String keyword = quoted ? null : text.toUpperCase(Locale.ROOT);
+        tokens.add(new Token(text, keyword, true));
+      } else {
+        tokens.add(new Token(String.valueOf(c), null, false));
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  private static boolean isIdentifierStart(char c) {
+    return Character.isLetter(c) || c == '_' || c == '"' || c == '`' || c == '[';
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#' || c == '@';
+  }
+}
@@ -0,0 +1,220 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * StatementParameters records the parameters bound to a prepared statement, so that they can be
+ * bound again to another statement of the same SQL, or compared with those of other executions.
+ *
+ * <p>Only values are recorded: setters of streams, LOBs, arrays and other driver objects, and
+ * those taking a Calendar, make the parameters unreplayable until they are cleared, and so does
+ * setObject with anything but strings, numbers, booleans, byte arrays and dates. Values bound by
+ * type-specific setters are bound again with setObject, which the JDBC specification maps to the
+ * same SQL types.
+ *
+ * <p>Like statements, it isn't meant to be used by several threads at once.
+ */
+final class StatementParameters {
+  private static final int OBJECT = 0;
+  private static final int OBJECT_WITH_TYPE = 1;
+  private static final int OBJECT_WITH_TYPE_AND_SCALE = 2;
+  private static final int NULL = 3;
+  private static final int NULL_WITH_TYPE_NAME = 4;
+  private static final int NSTRING = 5;
+
+  // A parameter bound by a setter, with its value, the SQL type and scale or length, and the type
+  // name it was bound with, if any.
+  private static final class Binding {
+    private final int kind;
+    @Nullable private final Object value;
+    private final int sqlType;
+    private final int scaleOrLength;
+    @Nullable private final String typeName;
+
+    Binding(
+        int kind,
+        @Nullable Object value,
+        int sqlType,
+        int scaleOrLength,
+        @Nullable String typeName) {
+      this.kind = kind;
+      // Byte arrays and dates are copied, the application may reuse them.
+      if (value instanceof byte[]) {
+        this.value = ((byte[]) value).clone();
+      } else if (value instanceof java.util.Date) {
+        this.value = ((java.util.Date) value).clone();
+      } else {
+        this.value = value;
+      }
+      this.sqlType = sqlType;
+      this.scaleOrLength = scaleOrLength;
+      this.typeName = typeName;
+    }
+
+    void bind(PreparedStatement statement, int index) throws SQLException {
+      switch (kind) {
+        case OBJECT_WITH_TYPE:
+          statement.setObject(index, value, sqlType);
+          break;
+        case OBJECT_WITH_TYPE_AND_SCALE:
+          statement.setObject(index, value, sqlType, scaleOrLength);
+          break;
+        case NULL:
+          statement.setNull(index, sqlType);
+          break;
+        case NULL_WITH_TYPE_NAME:
+          statement.setNull(index, sqlType, typeName);
+          break;
+        case NSTRING:
+          statement.setNString(index, (String) value);
+          break;
+        default:
+          statement.setObject(index, value);
+      }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Binding)) {
+        return false;
+      }
+      Binding other = (Binding) obj;
+      return kind == other.kind
+          && sqlType == other.sqlType
+          && scaleOrLength == other.scaleOrLength
+          && Objects.equals(typeName, other.typeName)
+          && Objects.deepEquals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+      int valueHash =
+          value instanceof byte[] ? Arrays.hashCode((byte[]) value) : Objects.hashCode(value);
+      return Objects.hash(kind, sqlType, scaleOrLength, typeName) * 31 + valueHash;
+    }
+  }
+
+  private final TreeMap<Integer, Binding> bindings = new TreeMap<>();
+  private boolean replayable = true;
+
+  void setObject(int index, @Nullable Object value) {
+    put(index, new Binding(OBJECT, value, 0, 0, null));
+  }
+
+  void setObject(int index, @Nullable Object value, int sqlType) {
+    put(index, new Binding(OBJECT_WITH_TYPE, value, sqlType, 0, null));
+  }
+
+  void setObject(int index, @Nullable Object value, int sqlType, int scaleOrLength) {
+    put(index, new Binding(OBJECT_WITH_TYPE_AND_SCALE, value, sqlType, scaleOrLength, null));
+  }
+
+  // Records binding, unless its value is a stream, a LOB or another object that can't be bound
+  // twice or compared, e.g. one a hedge would read while the query consumes it.
+  private void put(int index, Binding binding) {
+    if (!isValue(binding.value)) {
+      replayable = false;
+      return;
+    }
+    bindings.put(index, binding);
+  }
+
+  private static boolean isValue(@Nullable Object value) {
+    return value == null
+        || value instanceof String
+        || value instanceof Boolean
+        || value instanceof Character
+        || value instanceof Byte
+        || value instanceof Short
+        || value instanceof Integer
+        || value instanceof Long
+        || value instanceof Float
+        || value instanceof Double
+        || value instanceof java.math.BigDecimal
+        || value instanceof java.math.BigInteger
+        || value instanceof byte[]
+        || value instanceof java.util.Date
+        || value instanceof java.time.temporal.TemporalAccessor
+        || value instanceof java.util.UUID;
+  }
+
+  void setNull(int index, int sqlType) {
+    bindings.put(index, new Binding(NULL, null, sqlType, 0, null));
+  }
+
+  void setNull(int index, int sqlType, String typeName) {
+    bindings.put(index, new Binding(NULL_WITH_TYPE_NAME, null, sqlType, 0, typeName));
+  }
+
+  void setNString(int index, @Nullable String value) {
+    bindings.put(index, new Binding(NSTRING, value, 0, 0, null));
+  }
+
+  // Records a parameter bound by a setter that can't be replayed.
+  void setUnreplayable() {
+    replayable = false;
+  }
+
+  void clear() {
+    bindings.clear();
+    replayable = true;
+  }
+
+  boolean isReplayable() {
+    return replayable;
+  }
+
+  // Returns an immutable copy of the parameters, which must be replayable.
+  Snapshot snapshot() {
+    if (!replayable) {
+      throw new IllegalStateException("The parameters can't be replayed");
+    }
+    return new Snapshot(new TreeMap<>(bindings));
+  }
+
+  // An immutable copy of parameters, to bind to other statements or to compare.
+  static final class Snapshot {
+    private final Map<Integer, Binding> bindings;
+
+    private Snapshot(Map<Integer, Binding> bindings) {
+      this.bindings = Collections.unmodifiableMap(bindings);
+    }
+
+    void bind(PreparedStatement statement) throws SQLException {
+      for (Map.Entry<Integer, Binding> entry : bindings.entrySet()) {
+        entry.getValue().bind(statement, entry.getKey());
+      }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Snapshot && bindings.equals(((Snapshot) obj).bindings);
+    }
+
+    @Override
+    public int hashCode() {
+      return bindings.hashCode();
+    }
+  }
+}
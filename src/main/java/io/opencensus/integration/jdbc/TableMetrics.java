@@ -0,0 +1,55 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import io.opencensus.tags.TagValue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * TableMetrics caps the number of distinct tables that the per-table views are tagged with.
+ *
+ * <p>The first maxTables tables seen are tagged with their name for as long as table metrics are
+ * enabled, so that their series stay stable, and any further table is tagged "other".
+ */
+final class TableMetrics {
+  // VisibleForTesting
+  static final TagValue VALUE_OTHER_TABLE = TagValue.create("other");
+
+  private final int maxTables;
+  private final ConcurrentMap<String, TagValue> tagValues = new ConcurrentHashMap<>();
+
+  TableMetrics(int maxTables) {
+    if (maxTables <= 0) {
+      throw new IllegalArgumentException("Invalid maximum of tables " + maxTables + ", want > 0");
+    }
+    this.maxTables = maxTables;
+  }
+
+  TagValue tagValue(String table) {
+    TagValue tagValue = tagValues.get(table);
+    if (tagValue != null) {
+      return tagValue;
+    }
+    // The size is checked before inserting, so concurrent callers may admit a few tables past the
+    // maximum, which still bounds the number of series.
+    if (tagValues.size() >= maxTables) {
+      return VALUE_OTHER_TABLE;
+    }
+    tagValue = Observability.toTagValue(table);
+    TagValue previous = tagValues.putIfAbsent(table, tagValue);
+    return previous == null ? tagValue : previous;
+  }
+}
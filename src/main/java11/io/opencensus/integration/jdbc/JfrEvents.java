@@ -0,0 +1,117 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import javax.annotation.Nullable;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JfrEvents emits Java Flight Recorder events for JDBC calls.
+ *
+ * <p>This is the Java 11 implementation, in META-INF/versions/11 of the multi-release jar. Events
+ * are only allocated while their type is enabled in the running recording, and only committed
+ * when their duration passes the threshold of the recording's settings.
+ */
+final class JfrEvents {
+  private JfrEvents() {}
+
+  @Category({"Java Application", "JDBC"})
+  @StackTrace(false)
+  abstract static class JdbcEvent extends Event {
+    @Label("Method")
+    String method;
+
+    @Label("SQL")
+    @Description("The fingerprint of the SQL, with its literals replaced by placeholders")
+    String sql;
+
+    @Label("Error")
+    String error;
+  }
+
+  @Name("io.opencensus.jdbc.QueryExecute")
+  @Label("JDBC Query Execution")
+  @Threshold("10 ms")
+  static final class QueryExecuteEvent extends JdbcEvent {}
+
+  @Name("io.opencensus.jdbc.CursorFetch")
+  @Label("JDBC Cursor Fetch")
+  @Threshold("10 ms")
+  static final class CursorFetchEvent extends JdbcEvent {}
+
+  @Name("io.opencensus.jdbc.Transaction")
+  @Label("JDBC Commit or Rollback")
+  @Threshold("0 ms")
+  static final class TransactionEvent extends JdbcEvent {}
+
+  @Name("io.opencensus.jdbc.Connect")
+  @Label("JDBC Connect")
+  @Threshold("0 ms")
+  static final class ConnectEvent extends JdbcEvent {}
+
+  // The types of the events, whose isEnabled is checked before any event is allocated.
+  private static final EventType QUERY_EXECUTE = EventType.getEventType(QueryExecuteEvent.class);
+  private static final EventType CURSOR_FETCH = EventType.getEventType(CursorFetchEvent.class);
+  private static final EventType TRANSACTION = EventType.getEventType(TransactionEvent.class);
+  private static final EventType CONNECT = EventType.getEventType(ConnectEvent.class);
+
+  @Nullable
+  static Object begin(String method) {
+    JdbcEvent event = newEvent(method);
+    if (event == null) {
+      return null;
+    }
+    event.method = method;
+    event.begin();
+    return event;
+  }
+
+  static void end(@Nullable Object event, @Nullable SqlInfo sqlInfo, @Nullable String error) {
+    if (event == null) {
+      return;
+    }
+
+    JdbcEvent jdbcEvent = (JdbcEvent) event;
+    jdbcEvent.end();
+    if (jdbcEvent.shouldCommit()) {
+      jdbcEvent.sql = sqlInfo == null ? null : sqlInfo.getFingerprint();
+      jdbcEvent.error = error;
+      jdbcEvent.commit();
+    }
+  }
+
+  // Returns a new event recording a call to method, or null if its calls aren't recorded or its
+  // type isn't enabled in any running recording.
+  @Nullable
+  private static JdbcEvent newEvent(String method) {
+    if (method.endsWith(".next") && method.startsWith("java.sql.ResultSet")) {
+      return CURSOR_FETCH.isEnabled() ? new CursorFetchEvent() : null;
+    } else if (method.contains(".execute")) {
+      return QUERY_EXECUTE.isEnabled() ? new QueryExecuteEvent() : null;
+    } else if (method.endsWith(".commit") || method.endsWith(".rollback")) {
+      return TRANSACTION.isEnabled() ? new TransactionEvent() : null;
+    } else if (method.endsWith(".connect")) {
+      return CONNECT.isEnabled() ? new ConnectEvent() : null;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,72 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mockito;
+
+/** Tests for {@link ColumnLabelIndex}. */
+@RunWith(JUnit4.class)
+public class ColumnLabelIndexTest {
+
+  @After
+  public void tearDown() {
+    ColumnLabelIndex.clearCache();
+  }
+
+  private static ResultSetMetaData metaData(String... labels) throws SQLException {
+    ResultSetMetaData metaData = Mockito.mock(ResultSetMetaData.class);
+    Mockito.when(metaData.getColumnCount()).thenReturn(labels.length);
+    for (int i = 0; i < labels.length; i++) {
+      Mockito.when(metaData.getColumnLabel(i + 1)).thenReturn(labels[i]);
+    }
+    return metaData;
+  }
+
+  @Test
+  public void indexOf() throws SQLException {
+    ColumnLabelIndex index = ColumnLabelIndex.of(null, metaData("id", "Name", "id"));
+    assertThat(index.getColumnCount()).isEqualTo(3);
+    assertThat(index.indexOf("id")).isEqualTo(1);
+    assertThat(index.indexOf("NAME")).isEqualTo(2);
+    assertThat(index.indexOf("name")).isEqualTo(2);
+    assertThat(index.indexOf("missing")).isEqualTo(0);
+  }
+
+  @Test
+  public void indexOf_firstMatchingColumnWinsRegardlessOfCase() throws SQLException {
+    ColumnLabelIndex index = ColumnLabelIndex.of(null, metaData("ID", "id"));
+    assertThat(index.indexOf("id")).isEqualTo(1);
+    assertThat(index.indexOf("ID")).isEqualTo(1);
+  }
+
+  @Test
+  public void sharedPerFingerprintAndShape() throws SQLException {
+    String fingerprint = "SELECT * FROM users WHERE id = ?";
+    ColumnLabelIndex index = ColumnLabelIndex.of(fingerprint, metaData("id", "name"));
+    assertThat(ColumnLabelIndex.of(fingerprint, metaData("id", "name"))).isSameAs(index);
+
+    ColumnLabelIndex altered = ColumnLabelIndex.of(fingerprint, metaData("id", "email", "name"));
+    assertThat(altered).isNotSameAs(index);
+    assertThat(altered.indexOf("name")).isEqualTo(3);
+  }
+}
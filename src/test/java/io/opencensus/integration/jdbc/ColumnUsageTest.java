@@ -0,0 +1,63 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ColumnUsage}. */
+@RunWith(JUnit4.class)
+public class ColumnUsageTest {
+
+  @After
+  public void tearDown() {
+    ColumnUsage.reset();
+  }
+
+  @Test
+  public void bitmap() {
+    long[] bitmap = new long[1];
+    bitmap = ColumnUsage.set(bitmap, 1);
+    bitmap = ColumnUsage.set(bitmap, 64);
+    bitmap = ColumnUsage.set(bitmap, 200);
+    bitmap = ColumnUsage.set(bitmap, 200);
+
+    assertThat(ColumnUsage.isSet(bitmap, 1)).isTrue();
+    assertThat(ColumnUsage.isSet(bitmap, 2)).isFalse();
+    assertThat(ColumnUsage.isSet(bitmap, 64)).isTrue();
+    assertThat(ColumnUsage.isSet(bitmap, 200)).isTrue();
+    assertThat(ColumnUsage.isSet(bitmap, 1000)).isFalse();
+    assertThat(ColumnUsage.count(bitmap)).isEqualTo(3);
+  }
+
+  @Test
+  public void unreadColumns_unionOfCursors() {
+    String fingerprint = "SELECT * FROM documents WHERE id = ?";
+    ColumnUsage.record(fingerprint, 4, ColumnUsage.set(new long[1], 1));
+    ColumnUsage.record(fingerprint, 4, ColumnUsage.set(new long[1], 2));
+    assertThat(ColumnUsage.unreadColumns().get(fingerprint)).isEqualTo(2);
+
+    long[] all = new long[1];
+    for (int i = 1; i <= 4; i++) {
+      all = ColumnUsage.set(all, i);
+    }
+    ColumnUsage.record(fingerprint, 4, all);
+    assertThat(ColumnUsage.unreadColumns().containsKey(fingerprint)).isFalse();
+  }
+}
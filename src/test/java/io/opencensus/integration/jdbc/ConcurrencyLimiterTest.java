@@ -0,0 +1,106 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ConcurrencyLimiter}. */
+@RunWith(JUnit4.class)
+public class ConcurrencyLimiterTest {
+  private static final long MILLISECOND_NS = 1000 * 1000;
+
+  // Runs as many executions as the limit admits at once, each taking rttNs.
+  private static void runRound(ConcurrencyLimiter limiter, long rttNs) {
+    int admitted = 0;
+    while (limiter.acquire()) {
+      admitted++;
+    }
+    for (int i = 0; i < admitted; i++) {
+      limiter.release(rttNs, true);
+    }
+  }
+
+  @Test
+  public void growWhileLatenciesAreSteady() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter("h2://localhost/test", 2, 50, 0);
+    for (int i = 0; i < 50; i++) {
+      runRound(limiter, MILLISECOND_NS);
+    }
+    assertThat(limiter.stats().getLimit()).isGreaterThan(2);
+    assertThat(limiter.stats().getLimit()).isAtMost(50);
+    assertThat(limiter.stats().getInFlight()).isEqualTo(0);
+  }
+
+  @Test
+  public void shrinkAsLatenciesRise() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter("h2://localhost/test", 2, 50, 0);
+    for (int i = 0; i < 50; i++) {
+      runRound(limiter, MILLISECOND_NS);
+    }
+    int steadyLimit = limiter.stats().getLimit();
+    for (int i = 0; i < 10; i++) {
+      runRound(limiter, 20 * MILLISECOND_NS);
+    }
+    assertThat(limiter.stats().getLimit()).isLessThan(steadyLimit);
+    assertThat(limiter.stats().getLimit()).isAtLeast(2);
+  }
+
+  @Test
+  public void failuresDontChangeTheLimit() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter("h2://localhost/test", 2, 50, 0);
+    for (int i = 0; i < 50; i++) {
+      assertThat(limiter.acquire()).isTrue();
+      limiter.release(MILLISECOND_NS, false);
+    }
+    assertThat(limiter.stats().getLimit()).isEqualTo(2);
+  }
+
+  @Test
+  public void rejectPastTheLimit() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter("h2://localhost/test", 1, 1, 0);
+    assertThat(limiter.acquire()).isTrue();
+    assertThat(limiter.acquire()).isFalse();
+    assertThat(limiter.stats().getRejected()).isEqualTo(1);
+
+    limiter.release(MILLISECOND_NS, true);
+    assertThat(limiter.acquire()).isTrue();
+    assertThat(limiter.stats().getInFlight()).isEqualTo(1);
+  }
+
+  @Test
+  public void shareTheLimiterOfOtherDataSources() {
+    ConcurrencyLimiters limiters = new ConcurrencyLimiters(1, 10, 0);
+    for (int i = 0; i < ConcurrencyLimiters.MAX_DATA_SOURCES; i++) {
+      limiters.get("h2://localhost/db" + i);
+    }
+    ConcurrencyLimiter other = limiters.get("h2://localhost/another");
+    assertThat(other.stats().getDataSource()).isEqualTo(ConcurrencyLimiters.OTHER_DATA_SOURCES);
+    assertThat(limiters.get("h2://localhost/db0")).isSameAs(limiters.get("h2://localhost/db0"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectInvalidLimits() {
+    new ConcurrencyLimiters(10, 5, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectNegativeWait() {
+    new ConcurrencyLimiters(1, 5, -1);
+  }
+}
@@ -0,0 +1,125 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.ConnectionState.Property;
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ConnectionState} and its use by {@link OcWrapConnection}. */
+@RunWith(JUnit4.class)
+public class ConnectionStateTest {
+
+  // A connection recording the methods called on it, failing setSchema for "broken".
+  private static Connection recordingConnection(final List<String> calls) {
+    return (Connection)
+        Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                calls.add(method.getName());
+                if (method.getName().equals("setSchema") && "broken".equals(args[0])) {
+                  throw new SQLException("broken");
+                }
+                if (method.getName().equals("getTransactionIsolation")) {
+                  return Connection.TRANSACTION_READ_COMMITTED;
+                }
+                return null;
+              }
+            });
+  }
+
+  @Test
+  public void rememberAndForget() {
+    ConnectionState state = new ConnectionState();
+    assertThat(state.isKnown(Property.SCHEMA)).isFalse();
+    assertThat(state.is(Property.SCHEMA, null)).isFalse();
+
+    state.remember(Property.SCHEMA, null);
+    assertThat(state.isKnown(Property.SCHEMA)).isTrue();
+    assertThat(state.is(Property.SCHEMA, null)).isTrue();
+    assertThat(state.is(Property.SCHEMA, "app")).isFalse();
+
+    state.forget(Property.SCHEMA);
+    assertThat(state.isKnown(Property.SCHEMA)).isFalse();
+  }
+
+  @Test
+  public void elideCallsSettingTheSameValue() throws SQLException {
+    List<String> calls = new ArrayList<>();
+    Connection connection =
+        new OcWrapConnection(
+            recordingConnection(calls), EnumSet.of(TraceOption.TRACK_CONNECTION_STATE), null);
+
+    connection.setReadOnly(true);
+    connection.setReadOnly(true);
+    connection.setReadOnly(false);
+    assertThat(connection.isReadOnly()).isFalse();
+    assertThat(connection.getTransactionIsolation())
+        .isEqualTo(Connection.TRANSACTION_READ_COMMITTED);
+    connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+    connection.clearWarnings();
+
+    assertThat(calls)
+        .containsExactly("setReadOnly", "setReadOnly", "getTransactionIsolation", "getWarnings")
+        .inOrder();
+  }
+
+  @Test
+  public void forgetValuesThatFailedToBeSet() throws SQLException {
+    List<String> calls = new ArrayList<>();
+    Connection connection =
+        new OcWrapConnection(
+            recordingConnection(calls), EnumSet.of(TraceOption.TRACK_CONNECTION_STATE), null);
+
+    connection.setSchema("app");
+    try {
+      connection.setSchema("broken");
+    } catch (SQLException expected) {
+      // The schema may or may not have changed.
+    }
+    connection.setSchema("app");
+
+    assertThat(calls).containsExactly("setSchema", "setSchema", "setSchema").inOrder();
+  }
+
+  @Test
+  public void untrackedByDefault() throws SQLException {
+    List<String> calls = new ArrayList<>();
+    Connection connection =
+        new OcWrapConnection(
+            recordingConnection(calls), EnumSet.noneOf(TraceOption.class), null);
+
+    connection.setAutoCommit(true);
+    connection.setAutoCommit(true);
+    connection.clearWarnings();
+
+    assertThat(calls).containsExactly("setAutoCommit", "setAutoCommit", "clearWarnings").inOrder();
+  }
+}
@@ -0,0 +1,178 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.grpc.Context;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link DeadlineEnforcer} and {@link DeadlineWatchdog}. */
+@RunWith(JUnit4.class)
+public class DeadlineEnforcerTest {
+  private static final String SQL = "SELECT name FROM users WHERE id = 42";
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final DeadlineWatchdog watchdog =
+      new DeadlineWatchdog(TimeUnit.MILLISECONDS.toNanos(1), 8);
+
+  @After
+  public void tearDown() {
+    scheduler.shutdownNow();
+    DeadlineEnforcer.removeFingerprintTimeout(SqlInfo.of(SQL).getFingerprint());
+  }
+
+  // A statement recording the methods called on it with their argument, if any.
+  private static Statement recordingStatement(final List<String> calls) {
+    return (Statement)
+        Proxy.newProxyInstance(
+            Statement.class.getClassLoader(),
+            new Class<?>[] {Statement.class},
+            new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) {
+                calls.add(args == null ? method.getName() : method.getName() + " " + args[0]);
+                return null;
+              }
+            });
+  }
+
+  @Test
+  public void leaveExecutionsWithoutDeadlineAlone() throws SQLException {
+    List<String> calls = new CopyOnWriteArrayList<>();
+    DeadlineEnforcer deadlines = new DeadlineEnforcer(recordingStatement(calls), watchdog);
+    assertThat(deadlines.arm("execute", SqlInfo.of(SQL), null)).isNull();
+    assertThat(calls).isEmpty();
+  }
+
+  @Test
+  public void applyTheDeadlineOfTheContextWhenItChanges() throws SQLException {
+    List<String> calls = new CopyOnWriteArrayList<>();
+    DeadlineEnforcer deadlines = new DeadlineEnforcer(recordingStatement(calls), watchdog);
+    Context context = Context.current().withDeadlineAfter(90, TimeUnit.SECONDS, scheduler);
+    Context previous = context.attach();
+    try {
+      deadlines.arm("execute", SqlInfo.of(SQL), null).disarm();
+      deadlines.arm("execute", SqlInfo.of(SQL), null).disarm();
+    } finally {
+      context.detach(previous);
+    }
+    assertThat(calls).containsExactly("setQueryTimeout 90");
+
+    // Without a deadline, the query timeout of the application is restored.
+    assertThat(deadlines.arm("execute", SqlInfo.of(SQL), null)).isNull();
+    assertThat(calls).containsExactly("setQueryTimeout 90", "setQueryTimeout 0").inOrder();
+  }
+
+  @Test
+  public void keepShorterApplicationTimeouts() throws SQLException {
+    List<String> calls = new CopyOnWriteArrayList<>();
+    DeadlineEnforcer deadlines = new DeadlineEnforcer(recordingStatement(calls), watchdog);
+    deadlines.setApplicationTimeout(5);
+    DeadlineEnforcer.setFingerprintTimeout(
+        SqlInfo.of(SQL).getFingerprint(), TimeUnit.SECONDS.toNanos(60));
+    deadlines.arm("execute", SqlInfo.of(SQL), null).disarm();
+    assertThat(calls).isEmpty();
+  }
+
+  @Test
+  public void rejectExpiredDeadlines() {
+    List<String> calls = new CopyOnWriteArrayList<>();
+    DeadlineEnforcer deadlines = new DeadlineEnforcer(recordingStatement(calls), watchdog);
+    Context context = Context.current().withDeadlineAfter(-1, TimeUnit.SECONDS, scheduler);
+    Context previous = context.attach();
+    try {
+      deadlines.arm("execute", SqlInfo.of(SQL), null);
+      throw new AssertionError("Expected SQLTimeoutException");
+    } catch (SQLTimeoutException e) {
+      assertThat(calls).isEmpty();
+    } catch (SQLException e) {
+      throw new AssertionError(e);
+    } finally {
+      context.detach(previous);
+    }
+  }
+
+  @Test
+  public void cancelOverdueStatements() throws InterruptedException {
+    List<String> calls = new CopyOnWriteArrayList<>();
+    watchdog.schedule(recordingStatement(calls), "execute", null, 0);
+    DeadlineWatchdog.Task disarmed =
+        watchdog.schedule(recordingStatement(calls), "execute", null, 20000000L);
+    assertThat(disarmed.disarm()).isTrue();
+
+    long deadlineNs = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (calls.isEmpty() && System.nanoTime() < deadlineNs) {
+      Thread.sleep(1);
+    }
+    Thread.sleep(50);
+    assertThat(calls).containsExactly("cancel");
+  }
+
+  @Test
+  public void endExecutionsOnlyOnceTheirCancellationIsDone() throws Exception {
+    final CountDownLatch cancelling = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Statement statement =
+        (Statement)
+            Proxy.newProxyInstance(
+                Statement.class.getClassLoader(),
+                new Class<?>[] {Statement.class},
+                new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args)
+                      throws InterruptedException {
+                    if (method.getName().equals("cancel")) {
+                      cancelling.countDown();
+                      release.await();
+                    }
+                    return null;
+                  }
+                });
+    final DeadlineWatchdog.Task task = watchdog.schedule(statement, "execute", null, 0);
+    assertThat(cancelling.await(5, TimeUnit.SECONDS)).isTrue();
+
+    // The execution ends while the driver is being asked to cancel it.
+    Future<Boolean> disarmed =
+        scheduler.submit(
+            new Callable<Boolean>() {
+              @Override
+              public Boolean call() {
+                return task.disarm();
+              }
+            });
+    Thread.sleep(50);
+    assertThat(disarmed.isDone()).isFalse();
+    release.countDown();
+    assertThat(disarmed.get()).isFalse();
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link DeferredCloser}. */
+@RunWith(JUnit4.class)
+public class DeferredCloserTest {
+  private final List<String> closed = new CopyOnWriteArrayList<>();
+
+  @After
+  public void tearDown() {
+    DeferredCloser.setCapacity(DeferredCloser.DEFAULT_CAPACITY);
+  }
+
+  private DeferredCloser.Closer closer(final String name, final CountDownLatch started) {
+    return closer(name, started, new CountDownLatch(0));
+  }
+
+  private DeferredCloser.Closer closer(
+      final String name, final CountDownLatch started, final CountDownLatch proceed) {
+    return new DeferredCloser.Closer() {
+      @Override
+      public void close() throws SQLException {
+        started.countDown();
+        try {
+          proceed.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        closed.add(name);
+        if (name.startsWith("failing")) {
+          throw new SQLException(name);
+        }
+      }
+    };
+  }
+
+  @Test
+  public void closeInOrderInTheBackground() throws InterruptedException {
+    DeferredCloser closer = new DeferredCloser();
+    CountDownLatch done = new CountDownLatch(3);
+    assertThat(closer.defer("m", closer("resultSet", done))).isTrue();
+    assertThat(closer.defer("m", closer("failingStatement", done))).isTrue();
+    assertThat(closer.defer("m", closer("statement", done))).isTrue();
+
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    closer.closeAll();
+    assertThat(closed).containsExactly("resultSet", "failingStatement", "statement").inOrder();
+  }
+
+  @Test
+  public void closeAllRunsPendingClosesAfterTheRunningOne() throws InterruptedException {
+    DeferredCloser closer = new DeferredCloser();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch proceed = new CountDownLatch(1);
+    assertThat(closer.defer("m", closer("first", started, proceed))).isTrue();
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(closer.defer("m", closer("second", new CountDownLatch(1)))).isTrue();
+
+    proceed.countDown();
+    closer.closeAll();
+    assertThat(closed).containsExactly("first", "second").inOrder();
+
+    // Once the connection is closing, closes are no longer deferred.
+    assertThat(closer.defer("m", closer("third", new CountDownLatch(1)))).isFalse();
+  }
+
+  @Test
+  public void closeSynchronouslyPastCapacity() {
+    DeferredCloser.setCapacity(0);
+    DeferredCloser closer = new DeferredCloser();
+    assertThat(closer.defer("m", closer("resultSet", new CountDownLatch(1)))).isFalse();
+    assertThat(closed).isEmpty();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectNegativeCapacity() {
+    DeferredCloser.setCapacity(-1);
+  }
+}
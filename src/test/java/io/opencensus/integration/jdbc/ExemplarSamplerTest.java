@@ -0,0 +1,54 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ExemplarSampler}. */
+@RunWith(JUnit4.class)
+public class ExemplarSamplerTest {
+  private static final long INTERVAL_NS = 1000;
+
+  @Test
+  public void sample_oncePerBucketPerInterval() {
+    ExemplarSampler sampler = new ExemplarSampler(Arrays.asList(0.0, 1.0, 10.0), INTERVAL_NS);
+    long nowNs = System.nanoTime();
+
+    assertThat(sampler.sample(5, nowNs)).isTrue();
+    assertThat(sampler.sample(6, nowNs + 1)).isFalse();
+    // Other buckets are sampled independently.
+    assertThat(sampler.sample(0.5, nowNs + 1)).isTrue();
+    assertThat(sampler.sample(20, nowNs + 1)).isTrue();
+
+    assertThat(sampler.sample(6, nowNs + INTERVAL_NS - 1)).isFalse();
+    assertThat(sampler.sample(6, nowNs + INTERVAL_NS)).isTrue();
+  }
+
+  @Test
+  public void sample_bucketBoundaries() {
+    ExemplarSampler sampler = new ExemplarSampler(Arrays.asList(0.0, 1.0, 10.0), INTERVAL_NS);
+    long nowNs = System.nanoTime();
+
+    // A boundary is the lower bound of its bucket.
+    assertThat(sampler.sample(1.0, nowNs)).isTrue();
+    assertThat(sampler.sample(9.9, nowNs)).isFalse();
+    assertThat(sampler.sample(10.0, nowNs)).isTrue();
+  }
+}
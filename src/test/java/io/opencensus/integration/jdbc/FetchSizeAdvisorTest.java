@@ -0,0 +1,76 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link FetchSizeAdvisor}. */
+@RunWith(JUnit4.class)
+public class FetchSizeAdvisorTest {
+
+  @After
+  public void tearDown() {
+    FetchSizeAdvisor.reset();
+  }
+
+  @Test
+  public void roundtrips() {
+    assertThat(FetchSizeAdvisor.roundtrips(0, 10)).isEqualTo(1);
+    assertThat(FetchSizeAdvisor.roundtrips(25, 10)).isEqualTo(3);
+    assertThat(FetchSizeAdvisor.roundtrips(25, 0)).isEqualTo(1);
+  }
+
+  @Test
+  public void recommend_keepsDriverDefaults() {
+    // Drivers that fetch all rows at once, or fetch them in a single batch.
+    assertThat(FetchSizeAdvisor.recommend(5000, 0)).isEqualTo(0);
+    assertThat(FetchSizeAdvisor.recommend(8, 10)).isEqualTo(0);
+  }
+
+  @Test
+  public void recommend_withinBounds() {
+    assertThat(FetchSizeAdvisor.recommend(100, 10)).isEqualTo(128);
+    assertThat(FetchSizeAdvisor.recommend(11, 10)).isEqualTo(16);
+    assertThat(FetchSizeAdvisor.recommend(50000, 10)).isEqualTo(1000);
+
+    FetchSizeAdvisor.setBounds(50, 200);
+    assertThat(FetchSizeAdvisor.recommend(11, 10)).isEqualTo(50);
+    assertThat(FetchSizeAdvisor.recommend(500, 10)).isEqualTo(200);
+  }
+
+  @Test
+  public void observe() {
+    String fingerprint = "SELECT * FROM orders WHERE customer_id = ?";
+    assertThat(FetchSizeAdvisor.recommend(fingerprint)).isEqualTo(0);
+
+    FetchSizeAdvisor.observe(fingerprint, 100, 10, false);
+    assertThat(FetchSizeAdvisor.recommend(fingerprint)).isEqualTo(128);
+    assertThat(FetchSizeAdvisor.recommendations().get(fingerprint)).isEqualTo(128);
+
+    // Executions with the adapted fetch size don't change the driver's default.
+    FetchSizeAdvisor.observe(fingerprint, 100, 128, true);
+    assertThat(FetchSizeAdvisor.recommend(fingerprint)).isEqualTo(128);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void setBounds_invalid() {
+    FetchSizeAdvisor.setBounds(100, 10);
+  }
+}
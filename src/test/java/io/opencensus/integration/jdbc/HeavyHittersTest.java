@@ -0,0 +1,67 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link HeavyHitters}. */
+@RunWith(JUnit4.class)
+public class HeavyHittersTest {
+
+  @Test
+  public void top_orderedByTotalTime() {
+    HeavyHitters heavyHitters = new HeavyHitters(2);
+    heavyHitters.record("SELECT a", 10, 1);
+    heavyHitters.record("SELECT b", 30, 1);
+    heavyHitters.record("SELECT b", 5, 0);
+    heavyHitters.recordRows("SELECT b", 7);
+    heavyHitters.record("SELECT c", 20, 1);
+
+    List<FingerprintStats> top = heavyHitters.top(false);
+    assertThat(top).hasSize(2);
+    assertThat(top.get(0).getFingerprint()).isEqualTo("SELECT b");
+    assertThat(top.get(0).getTotalTimeNs()).isEqualTo(35);
+    assertThat(top.get(0).getCalls()).isEqualTo(1);
+    assertThat(top.get(0).getRows()).isEqualTo(7);
+    assertThat(top.get(1).getFingerprint()).isEqualTo("SELECT c");
+  }
+
+  @Test
+  public void top_boundedMemory() {
+    HeavyHitters heavyHitters = new HeavyHitters(4);
+    for (int i = 0; i < 10000; i++) {
+      heavyHitters.record("SELECT " + i, 1, 1);
+      heavyHitters.record("SELECT heavy", 10, 1);
+    }
+
+    List<FingerprintStats> top = heavyHitters.top(false);
+    assertThat(top).hasSize(4);
+    assertThat(top.get(0).getFingerprint()).isEqualTo("SELECT heavy");
+    assertThat(top.get(0).getCalls()).isEqualTo(10000);
+  }
+
+  @Test
+  public void top_reset() {
+    HeavyHitters heavyHitters = new HeavyHitters(4);
+    heavyHitters.record("SELECT a", 10, 1);
+    assertThat(heavyHitters.top(true)).hasSize(1);
+    assertThat(heavyHitters.top(false)).isEmpty();
+  }
+}
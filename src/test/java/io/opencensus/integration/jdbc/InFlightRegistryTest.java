@@ -0,0 +1,82 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link InFlightRegistry}. */
+@RunWith(JUnit4.class)
+public class InFlightRegistryTest {
+
+  private static List<InFlightCall> callsOf(String method) {
+    List<InFlightCall> calls = new ArrayList<>();
+    for (InFlightCall call : InFlightRegistry.snapshot()) {
+      if (call.getMethod().equals(method)) {
+        calls.add(call);
+      }
+    }
+    return calls;
+  }
+
+  @Test
+  public void listCallsUntilRemoved() {
+    String method = "InFlightRegistryTest.listCallsUntilRemoved";
+    InFlightRegistry.Entry entry =
+        InFlightRegistry.register(
+            method,
+            SqlInfo.of("SELECT * FROM users WHERE id = 42"),
+            ConnectionInfo.of("jdbc:postgresql://db.example.com:5432/shop", null),
+            null,
+            System.nanoTime());
+
+    List<InFlightCall> calls = callsOf(method);
+    assertThat(calls).hasSize(1);
+    InFlightCall call = calls.get(0);
+    assertThat(call.getFingerprint()).isEqualTo("SELECT * FROM users WHERE id = ?");
+    assertThat(call.getDataSource()).isEqualTo("postgresql://db.example.com:5432/shop");
+    assertThat(call.getThreadName()).isEqualTo(Thread.currentThread().getName());
+    assertThat(call.getSpanId()).isEmpty();
+
+    InFlightRegistry.remove(entry);
+    assertThat(callsOf(method)).isEmpty();
+  }
+
+  @Test
+  public void listOldestFirst() {
+    String method = "InFlightRegistryTest.listOldestFirst";
+    long nowNs = System.nanoTime();
+    InFlightRegistry.Entry newer = InFlightRegistry.register(method, null, null, null, nowNs);
+    InFlightRegistry.Entry older =
+        InFlightRegistry.register(method, null, null, null, nowNs - 1000000000L);
+    InFlightRegistry.Entry oldest =
+        InFlightRegistry.register(method, null, null, null, nowNs - 2000000000L);
+    InFlightRegistry.remove(older);
+
+    List<InFlightCall> calls = callsOf(method);
+    assertThat(calls).hasSize(2);
+    assertThat(calls.get(0).getElapsedNanos()).isAtLeast(2000000000L);
+    assertThat(calls.get(1).getElapsedNanos()).isLessThan(1000000000L);
+
+    InFlightRegistry.remove(newer);
+    InFlightRegistry.remove(oldest);
+    assertThat(callsOf(method)).isEmpty();
+  }
+}
@@ -34,16 +34,30 @@ import io.opencensus.tags.TagContextBuilder;
 import io.opencensus.tags.TagKey;
 import io.opencensus.tags.TagValue;
 import io.opencensus.tags.Tagger;
+import io.opencensus.trace.Annotation;
 import io.opencensus.trace.AttributeValue;
+import io.opencensus.trace.EndSpanOptions;
+import io.opencensus.trace.Link;
 import io.opencensus.trace.Span;
 import io.opencensus.trace.SpanBuilder;
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
 import io.opencensus.trace.Status;
+import io.opencensus.trace.TraceId;
+import io.opencensus.trace.TraceOptions;
 import io.opencensus.trace.Tracer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -81,6 +95,41 @@ public class ObservabilityTest {
     Mockito.doNothing().when(mockSpan).putAttribute(anyString(), any(AttributeValue.class));
   }
 
+  @After
+  public void tearDown() {
+    Observability.setLatencyExemplarInterval(0, TimeUnit.SECONDS);
+    Observability.disableInFlightCalls();
+    Observability.setCpuTimeSampleProbability(0);
+  }
+
+  // A span with a given context, since the context of mocked spans can't be stubbed.
+  private static final class ContextSpan extends Span {
+    ContextSpan(boolean sampled) {
+      super(
+          SpanContext.create(
+              TraceId.fromLowerBase16("0123456789abcdef0123456789abcdef"),
+              SpanId.fromLowerBase16("0123456789abcdef"),
+              sampled ? TraceOptions.builder().setIsSampled(true).build() : TraceOptions.DEFAULT),
+          // Sampled spans must record events.
+          sampled ? EnumSet.of(Span.Options.RECORD_EVENTS) : null);
+    }
+
+    @Override
+    public void putAttributes(Map<String, AttributeValue> attributes) {}
+
+    @Override
+    public void addAnnotation(String description, Map<String, AttributeValue> attributes) {}
+
+    @Override
+    public void addAnnotation(Annotation annotation) {}
+
+    @Override
+    public void addLink(Link link) {}
+
+    @Override
+    public void end(EndSpanOptions options) {}
+  }
+
   @Test
   public void testConstants() {
     assertThat(Observability.JAVA_SQL_METHOD).isEqualTo(TagKey.create("java_sql_method"));
@@ -154,6 +203,29 @@ public class ObservabilityTest {
         .putAttribute("sql", AttributeValue.stringAttributeValue("update"));
   }
 
+  @Test
+  public void trackingOperation_inFlightOnlyOnceEnabled() {
+    TrackingOperation untracked =
+        new TrackingOperation("untracked", "update", mockStatsRecorder, mockTagger, mockTracer);
+    Observability.enableInFlightCalls();
+    TrackingOperation tracked =
+        new TrackingOperation("tracked", "update", mockStatsRecorder, mockTagger, mockTracer);
+    assertThat(inFlightMethods()).doesNotContain("untracked");
+    assertThat(inFlightMethods()).contains("tracked");
+
+    tracked.end();
+    untracked.end();
+    assertThat(inFlightMethods()).doesNotContain("tracked");
+  }
+
+  private static List<String> inFlightMethods() {
+    List<String> methods = new ArrayList<>();
+    for (InFlightCall call : Observability.getInFlightCalls()) {
+      methods.add(call.getMethod());
+    }
+    return methods;
+  }
+
   @Test
   public void trackingOperation_end() {
     TrackingOperation trackingOperation =
@@ -193,4 +265,70 @@ public class ObservabilityTest {
     Mockito.verify(mockMeasureMap, Mockito.times(1)).record(any(TagContext.class));
     Mockito.verify(mockSpan, Mockito.times(1)).end();
   }
+
+  @Test
+  public void trackingOperation_end_recordCpuAndWaitTime() {
+    Observability.setCpuTimeSampleProbability(1);
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", "update", mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.end();
+
+    ArgumentCaptor<Double> latencyMs = ArgumentCaptor.forClass(Double.class);
+    ArgumentCaptor<Double> cpuMs = ArgumentCaptor.forClass(Double.class);
+    ArgumentCaptor<Double> waitMs = ArgumentCaptor.forClass(Double.class);
+    Mockito.verify(mockMeasureMap).put(eq(Observability.MEASURE_LATENCY_MS), latencyMs.capture());
+    Mockito.verify(mockMeasureMap).put(eq(Observability.MEASURE_CPU_MS), cpuMs.capture());
+    Mockito.verify(mockMeasureMap).put(eq(Observability.MEASURE_WAIT_MS), waitMs.capture());
+    // The CPU time is part of the latency, the wait time is the rest.
+    assertThat(cpuMs.getValue()).isAtLeast(0.0);
+    assertThat(cpuMs.getValue()).isAtMost(latencyMs.getValue());
+    assertThat(cpuMs.getValue() + waitMs.getValue()).isWithin(1e-9).of(latencyMs.getValue());
+  }
+
+  @Test
+  public void trackingOperation_end_noCpuTimeUnlessSampled() {
+    TrackingOperation trackingOperation =
+        new TrackingOperation("method", "update", mockStatsRecorder, mockTagger, mockTracer);
+    trackingOperation.end();
+
+    Mockito.verify(mockMeasureMap, Mockito.never())
+        .put(eq(Observability.MEASURE_CPU_MS), anyDouble());
+    Mockito.verify(mockMeasureMap, Mockito.never())
+        .put(eq(Observability.MEASURE_WAIT_MS), anyDouble());
+  }
+
+  @Test
+  public void trackingOperation_end_noCpuTimeOnAnotherThread() throws Exception {
+    Observability.setCpuTimeSampleProbability(1);
+    final TrackingOperation trackingOperation =
+        new TrackingOperation("method", "update", mockStatsRecorder, mockTagger, mockTracer);
+    Thread thread =
+        new Thread() {
+          @Override
+          public void run() {
+            trackingOperation.end();
+          }
+        };
+    thread.start();
+    thread.join();
+
+    Mockito.verify(mockMeasureMap).put(eq(Observability.MEASURE_LATENCY_MS), anyDouble());
+    Mockito.verify(mockMeasureMap, Mockito.never())
+        .put(eq(Observability.MEASURE_CPU_MS), anyDouble());
+  }
+
+  @Test
+  public void trackingOperation_end_attachExemplarsOfSampledTracesOnly() {
+    Observability.setLatencyExemplarInterval(1, TimeUnit.HOURS);
+
+    Mockito.when(mockSpanBuilder.startSpan()).thenReturn(new ContextSpan(false));
+    new TrackingOperation("method", "select", mockStatsRecorder, mockTagger, mockTracer).end();
+    Mockito.verify(mockMeasureMap, Mockito.never()).putAttachment(anyString(), anyString());
+
+    // The unsampled call didn't use up the exemplar of the bucket.
+    Mockito.when(mockSpanBuilder.startSpan()).thenReturn(new ContextSpan(true));
+    new TrackingOperation("method", "select", mockStatsRecorder, mockTagger, mockTracer).end();
+    Mockito.verify(mockMeasureMap, Mockito.times(1))
+        .putAttachment(Observability.ATTACHMENT_TRACE_ID, "0123456789abcdef0123456789abcdef");
+  }
 }
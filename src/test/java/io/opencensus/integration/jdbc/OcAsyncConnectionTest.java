@@ -0,0 +1,184 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import javax.annotation.Nullable;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link OcAsyncConnection}. */
+@RunWith(JUnit4.class)
+public class OcAsyncConnectionTest {
+  private final ExecutorService executor = OcAsyncConnection.newExecutor(2, 4);
+  // The calls made to the driver, with their thread.
+  private final List<String> calls = new CopyOnWriteArrayList<>();
+  private final List<Thread> threads = new CopyOnWriteArrayList<>();
+  // Released to let executeUpdate return.
+  private volatile CountDownLatch release = new CountDownLatch(0);
+  // Thrown by executeUpdate, if set.
+  @Nullable private volatile Error error;
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private Object record(Method method, Object[] args) throws InterruptedException {
+    calls.add(method.getName() + (args == null ? "" : " " + Arrays.deepToString(args)));
+    threads.add(Thread.currentThread());
+    switch (method.getName()) {
+      case "executeUpdate":
+        if (error != null) {
+          throw error;
+        }
+        release.await();
+        return 1;
+      case "executeBatch":
+        return new int[] {1, 1};
+      case "prepareStatement":
+        return Proxy.newProxyInstance(
+            PreparedStatement.class.getClassLoader(),
+            new Class<?>[] {PreparedStatement.class},
+            new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+                return record(method, args);
+              }
+            });
+      default:
+        return null;
+    }
+  }
+
+  private OcAsyncConnection newConnection(int maxPending) throws Exception {
+    Connection connection =
+        (Connection)
+            Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class},
+                new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args)
+                      throws Exception {
+                    return record(method, args);
+                  }
+                });
+    return new OcAsyncConnection(
+        new OcWrapConnection(connection, EnumSet.noneOf(TraceOption.class), null),
+        executor,
+        maxPending);
+  }
+
+  @Test
+  public void runCallsInOrderOnTheExecutor() throws Exception {
+    OcAsyncConnection connection = newConnection(OcAsyncConnection.DEFAULT_MAX_PENDING);
+    CompletableFuture<Integer> update =
+        connection.executeUpdateAsync("UPDATE users SET name = ? WHERE id = ?", "alice", null);
+    CompletableFuture<int[]> batch =
+        connection.executeBatchAsync(
+            "DELETE FROM users WHERE id = ?", Arrays.asList(new Object[] {1}, new Object[] {2}));
+
+    assertThat(update.get()).isEqualTo(1);
+    assertThat(batch.get()).isEqualTo(new int[] {1, 1});
+    assertThat(calls)
+        .containsExactly(
+            "prepareStatement [UPDATE users SET name = ? WHERE id = ?]",
+            "setObject [1, alice]",
+            "setNull [2, " + Types.NULL + "]",
+            "executeUpdate",
+            "close",
+            "prepareStatement [DELETE FROM users WHERE id = ?]",
+            "setObject [1, 1]",
+            "addBatch",
+            "setObject [1, 2]",
+            "addBatch",
+            "executeBatch",
+            "close")
+        .inOrder();
+    assertThat(threads).doesNotContain(Thread.currentThread());
+  }
+
+  @Test
+  public void failCallsPastMaxPending() throws Exception {
+    release = new CountDownLatch(1);
+    OcAsyncConnection connection = newConnection(1);
+    CompletableFuture<Integer> running = connection.executeUpdateAsync("UPDATE users SET n = 1");
+    CompletableFuture<Integer> rejected = connection.executeUpdateAsync("UPDATE users SET n = 2");
+
+    try {
+      rejected.get();
+      throw new AssertionError("Expected the call to be rejected");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(SQLTransientException.class);
+    }
+    release.countDown();
+    assertThat(running.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void failCallsOnErrorsAndRunTheNextOnes() throws Exception {
+    error = new NoClassDefFoundError("org/example/Driver");
+    OcAsyncConnection connection = newConnection(OcAsyncConnection.DEFAULT_MAX_PENDING);
+    CompletableFuture<Integer> update = connection.executeUpdateAsync("UPDATE users SET n = 1");
+    CompletableFuture<int[]> batch =
+        connection.executeBatchAsync(
+            "DELETE FROM users WHERE id = ?", Arrays.asList(new Object[] {1}, new Object[] {2}));
+
+    try {
+      update.get();
+      throw new AssertionError("Expected the call to fail");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isSameAs(error);
+    }
+    assertThat(batch.get().length).isEqualTo(2);
+  }
+
+  @Test
+  public void failCallsMadeAfterClosing() throws Exception {
+    OcAsyncConnection connection = newConnection(OcAsyncConnection.DEFAULT_MAX_PENDING);
+    CompletableFuture<Void> close = connection.closeAsync();
+    CompletableFuture<Integer> update = connection.executeUpdateAsync("UPDATE users SET n = 1");
+
+    close.get();
+    assertThat(calls).contains("close");
+    try {
+      update.get();
+      throw new AssertionError("Expected the call to fail");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(SQLNonTransientConnectionException.class);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link OcRoutingConnection}, with two in-memory H2 databases as the primary and the
+ * replica. Both hold a row naming the database, so that queries tell where they ran.
+ */
+@RunWith(JUnit4.class)
+public class OcRoutingConnectionTest {
+  private static final AtomicInteger databases = new AtomicInteger();
+
+  private Connection primary;
+  // Keeps the in-memory database of the replica open during the test.
+  private Connection replicaSetup;
+  private JdbcDataSource replicas;
+
+  @Before
+  public void setUp() throws SQLException {
+    int id = databases.incrementAndGet();
+    primary = DriverManager.getConnection("jdbc:h2:mem:primary" + id);
+    createTable(primary, "primary");
+    replicaSetup = DriverManager.getConnection("jdbc:h2:mem:replica" + id);
+    createTable(replicaSetup, "replica");
+    replicas = new JdbcDataSource();
+    replicas.setURL("jdbc:h2:mem:replica" + id);
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    primary.close();
+    replicaSetup.close();
+  }
+
+  private static void createTable(Connection connection, String name) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE servers (id INT PRIMARY KEY, name VARCHAR(16))");
+      statement.execute("INSERT INTO servers VALUES (1, '" + name + "')");
+    }
+  }
+
+  private OcRoutingConnection routing(long readYourWritesWindowMs, DataSource replicas)
+      throws SQLException {
+    return new OcRoutingConnection(
+        primary,
+        replicas,
+        readYourWritesWindowMs,
+        TimeUnit.MILLISECONDS,
+        EnumSet.of(TraceOption.NONE));
+  }
+
+  // Returns the server that ran a query prepared with sql.
+  private static String server(Connection connection, String sql) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql);
+        ResultSet rs = statement.executeQuery()) {
+      assertThat(rs.next()).isTrue();
+      return rs.getString(1);
+    }
+  }
+
+  // Returns the server that ran a query of a statement created without SQL.
+  private static String serverOfStatement(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery("SELECT name FROM servers WHERE id = 1")) {
+      assertThat(rs.next()).isTrue();
+      return rs.getString(1);
+    }
+  }
+
+  @Test
+  public void sendSelectsOutsideTransactionsToTheReplica() throws SQLException {
+    OcRoutingConnection connection = routing(60000, replicas);
+    assertThat(server(connection, "SELECT name FROM servers WHERE id = 1")).isEqualTo("replica");
+    // Locking reads and statements without SQL stay on the primary.
+    assertThat(server(connection, "SELECT name FROM servers WHERE id = 1 FOR UPDATE"))
+        .isEqualTo("primary");
+    assertThat(serverOfStatement(connection)).isEqualTo("primary");
+    connection.close();
+  }
+
+  @Test
+  public void readYourWrites() throws SQLException {
+    OcRoutingConnection connection = routing(60000, replicas);
+    try (PreparedStatement statement =
+        connection.prepareStatement("UPDATE servers SET name = ? WHERE id = 1")) {
+      statement.setString(1, "written");
+      assertThat(statement.executeUpdate()).isEqualTo(1);
+    }
+    assertThat(server(connection, "SELECT name FROM servers WHERE id = 1")).isEqualTo("written");
+    connection.close();
+  }
+
+  @Test
+  public void readFromTheReplicaAfterTheWindow() throws SQLException {
+    OcRoutingConnection connection = routing(0, replicas);
+    try (PreparedStatement statement =
+        connection.prepareStatement("UPDATE servers SET name = 'written' WHERE id = 1")) {
+      statement.executeUpdate();
+    }
+    assertThat(server(connection, "SELECT name FROM servers WHERE id = 1")).isEqualTo("replica");
+    connection.close();
+  }
+
+  @Test
+  public void sendReadOnlyTransactionsToTheReplica() throws SQLException {
+    OcRoutingConnection connection = routing(60000, replicas);
+    connection.setAutoCommit(false);
+    connection.setReadOnly(true);
+    assertThat(serverOfStatement(connection)).isEqualTo("replica");
+    assertThat(server(connection, "SELECT name FROM servers WHERE id = 1")).isEqualTo("replica");
+    connection.commit();
+    connection.close();
+  }
+
+  @Test
+  public void keepReadWriteTransactionsOnThePrimary() throws SQLException {
+    OcRoutingConnection connection = routing(60000, replicas);
+    connection.setAutoCommit(false);
+    assertThat(server(connection, "SELECT name FROM servers WHERE id = 1")).isEqualTo("primary");
+    connection.rollback();
+    connection.close();
+  }
+
+  @Test
+  public void readFromThePrimaryWithoutReplica() throws SQLException {
+    DataSource unavailable =
+        (DataSource)
+            Proxy.newProxyInstance(
+                DataSource.class.getClassLoader(),
+                new Class<?>[] {DataSource.class},
+                new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args)
+                      throws SQLException {
+                    throw new SQLException("No replica");
+                  }
+                });
+    OcRoutingConnection connection = routing(60000, unavailable);
+    assertThat(server(connection, "SELECT name FROM servers WHERE id = 1")).isEqualTo("primary");
+    connection.close();
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.Observability.TrackingOperation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link OcWrapResultSet}. */
+@RunWith(JUnit4.class)
+public class OcWrapResultSetTest {
+
+  @After
+  public void tearDown() {
+    Observability.disableInFlightCalls();
+  }
+
+  // A cursor of a column "created" that lists, for every call on it, the calls traced while it
+  // runs.
+  private static ResultSet cursor(final List<String> traced) {
+    final ResultSetMetaData metaData =
+        (ResultSetMetaData)
+            Proxy.newProxyInstance(
+                ResultSetMetaData.class.getClassLoader(),
+                new Class<?>[] {ResultSetMetaData.class},
+                new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args) {
+                    return method.getName().equals("getColumnCount") ? 1 : "created";
+                  }
+                });
+    return (ResultSet)
+        Proxy.newProxyInstance(
+            ResultSet.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class},
+            new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) {
+                for (InFlightCall call : Observability.getInFlightCalls()) {
+                  if (call.getMethod().startsWith("java.sql.ResultSet.")) {
+                    traced.add(call.getMethod());
+                  }
+                }
+                switch (method.getName()) {
+                  case "next":
+                    return false;
+                  case "getMetaData":
+                    return metaData;
+                  case "findColumn":
+                  case "getHoldability":
+                  case "getFetchSize":
+                    return 1;
+                  default:
+                    return null;
+                }
+              }
+            });
+  }
+
+  @Test
+  public void countLocalGettersWithoutTracingThem() throws Exception {
+    Observability.enableInFlightCalls();
+    TrackingOperation origin =
+        new TrackingOperation("java.sql.PreparedStatement.executeQuery", "SELECT * FROM orders");
+    origin.end();
+    List<String> traced = new ArrayList<>();
+    OcWrapResultSet rs = new OcWrapResultSet(cursor(traced), null, origin, null);
+
+    rs.getTimestamp(1);
+    rs.getTimestamp(1, Calendar.getInstance());
+    rs.getTimestamp("created");
+    rs.getTimestamp("created", Calendar.getInstance());
+    rs.findColumn("created");
+    rs.getHoldability();
+    rs.getCursorName();
+    assertThat(traced).isEmpty();
+    assertThat(rs.getLocalCalls()).isEqualTo(7);
+
+    // Calls that may touch the database are still traced.
+    rs.next();
+    assertThat(traced).contains("java.sql.ResultSet.next");
+    assertThat(rs.getLocalCalls()).isEqualTo(7);
+  }
+
+  @Test
+  public void noAggregateWithoutQuery() throws Exception {
+    OcWrapResultSet rs = new OcWrapResultSet(cursor(new ArrayList<String>()));
+
+    rs.getTimestamp(1);
+    assertThat(rs.getLocalCalls()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.EnumSet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link OcWrapStatement}. */
+@RunWith(JUnit4.class)
+public class OcWrapStatementTest {
+
+  // A statement whose cursors are those set in its fields.
+  private static final class Driver implements InvocationHandler {
+    ResultSet resultSet = cursor();
+    ResultSet generatedKeys = cursor();
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      switch (method.getName()) {
+        case "executeQuery":
+        case "getResultSet":
+          return resultSet;
+        case "getGeneratedKeys":
+          return generatedKeys;
+        case "execute":
+          return true;
+        default:
+          return null;
+      }
+    }
+  }
+
+  private static ResultSet cursor() {
+    return (ResultSet)
+        Proxy.newProxyInstance(
+            ResultSet.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class},
+            new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) {
+                return null;
+              }
+            });
+  }
+
+  private static Statement wrap(Driver driver) {
+    Statement statement =
+        (Statement)
+            Proxy.newProxyInstance(
+                Statement.class.getClassLoader(), new Class<?>[] {Statement.class}, driver);
+    return new OcWrapStatement(statement, EnumSet.noneOf(TraceOption.class));
+  }
+
+  @Test
+  public void sameWrapperForTheSameCursor() throws Exception {
+    Statement statement = wrap(new Driver());
+
+    ResultSet rs = statement.executeQuery("SELECT * FROM orders");
+    assertThat(statement.getResultSet()).isSameAs(rs);
+    assertThat(statement.getResultSet()).isSameAs(rs);
+    assertThat(rs.getStatement()).isSameAs(statement);
+
+    ResultSet keys = statement.getGeneratedKeys();
+    assertThat(statement.getGeneratedKeys()).isSameAs(keys);
+    assertThat(keys).isNotSameAs(rs);
+    assertThat(statement.getResultSet()).isSameAs(rs);
+  }
+
+  @Test
+  public void newWrapperForANewCursor() throws Exception {
+    Driver driver = new Driver();
+    Statement statement = wrap(driver);
+
+    ResultSet rs = statement.executeQuery("SELECT * FROM orders");
+    ResultSet keys = statement.getGeneratedKeys();
+    driver.resultSet = cursor();
+    driver.generatedKeys = cursor();
+    statement.execute("SELECT * FROM users");
+    assertThat(statement.getResultSet()).isNotSameAs(rs);
+    assertThat(statement.getGeneratedKeys()).isNotSameAs(keys);
+  }
+
+  @Test
+  public void nullForNoCursor() throws Exception {
+    Driver driver = new Driver();
+    driver.resultSet = null;
+    driver.generatedKeys = null;
+    Statement statement = wrap(driver);
+
+    assertThat(statement.getResultSet()).isNull();
+    assertThat(statement.getGeneratedKeys()).isNull();
+  }
+}
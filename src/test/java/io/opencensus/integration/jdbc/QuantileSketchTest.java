@@ -0,0 +1,111 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link QuantileSketch} and {@link QuantileSketchSnapshot}. */
+@RunWith(JUnit4.class)
+public class QuantileSketchTest {
+  private static final double[] QUANTILES = {0, 0.1, 0.5, 0.9, 0.99, 0.999, 1};
+
+  // Latencies spread over several orders of magnitude, from 10us to about 10s.
+  private static long[] latencies(Random random, int n) {
+    long[] latencies = new long[n];
+    for (int i = 0; i < n; i++) {
+      latencies[i] = (long) (10_000 * Math.exp(random.nextDouble() * Math.log(1_000_000)));
+    }
+    return latencies;
+  }
+
+  private static void assertWithinAccuracy(
+      QuantileSketchSnapshot snapshot, long[] latencies, double relativeAccuracy) {
+    long[] sorted = Arrays.copyOf(latencies, latencies.length);
+    Arrays.sort(sorted);
+    assertThat(snapshot.getCount()).isEqualTo(sorted.length);
+    for (double q : QUANTILES) {
+      long exact = sorted[(int) (q * (sorted.length - 1))];
+      long estimate = snapshot.getQuantileNs(q);
+      // Estimates are rounded to nanoseconds.
+      assertThat((double) estimate).isWithin(relativeAccuracy * exact + 1).of(exact);
+    }
+  }
+
+  @Test
+  public void quantiles_withinRelativeAccuracy() {
+    for (double relativeAccuracy : new double[] {0.01, 0.05}) {
+      long[] latencies = latencies(new Random(42), 100_000);
+      QuantileSketch sketch = new QuantileSketch(relativeAccuracy);
+      for (long latency : latencies) {
+        sketch.record(latency);
+      }
+      assertWithinAccuracy(sketch.snapshot(), latencies, relativeAccuracy);
+    }
+  }
+
+  @Test
+  public void merge_withinRelativeAccuracy() throws Exception {
+    Random random = new Random(7);
+    long[] first = latencies(random, 20_000);
+    long[] second = latencies(random, 30_000);
+    QuantileSketch a = new QuantileSketch(0.01);
+    QuantileSketch b = new QuantileSketch(0.01);
+    for (long latency : first) {
+      a.record(latency);
+    }
+    for (long latency : second) {
+      b.record(latency);
+    }
+
+    // Snapshots go through serialization, as when combined across hosts.
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(b.snapshot());
+    }
+    QuantileSketchSnapshot deserialized;
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      deserialized = (QuantileSketchSnapshot) in.readObject();
+    }
+
+    long[] all = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, all, first.length, second.length);
+    assertWithinAccuracy(a.snapshot().merge(deserialized), all, 0.01);
+  }
+
+  @Test
+  public void quantiles_outOfRange() {
+    QuantileSketch sketch = new QuantileSketch(0.01);
+    sketch.record(0);
+    sketch.record(QuantileSketch.MIN_TRACKABLE_NS);
+    assertThat(sketch.snapshot().getQuantileNs(1)).isEqualTo(QuantileSketch.MIN_TRACKABLE_NS);
+    assertThat(new QuantileSketch(0.01).snapshot().getQuantileNs(0.5)).isEqualTo(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void merge_differentAccuracies() {
+    new QuantileSketch(0.01).snapshot().merge(new QuantileSketch(0.02).snapshot());
+  }
+}
@@ -0,0 +1,441 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Types;
+import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link QueryCoalescer}. */
+@RunWith(JUnit4.class)
+public class QueryCoalescerTest {
+  private static final String SQL = "SELECT id FROM users WHERE name = ?";
+  private static final String METHOD = "java.sql.PreparedStatement.executeQuery";
+
+  private final QueryCoalescer coalescer = new QueryCoalescer();
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static QueryCoalescer.Key key(String name) {
+    StatementParameters parameters = new StatementParameters();
+    parameters.setObject(1, name);
+    return new QueryCoalescer.Key(
+        "h2 localhost test", "sa", "TEST", "PUBLIC", SQL, 0, parameters.snapshot());
+  }
+
+  // Returns a cursor over the ids.
+  private static ResultSet rows(int... ids) throws SQLException {
+    RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+    metaData.setColumnCount(1);
+    metaData.setColumnName(1, "id");
+    metaData.setColumnType(1, Types.INTEGER);
+    CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+    rows.setMetaData(metaData);
+    for (int id : ids) {
+      rows.moveToInsertRow();
+      rows.updateInt(1, id);
+      rows.insertRow();
+    }
+    rows.moveToCurrentRow();
+    rows.beforeFirst();
+    return rows;
+  }
+
+  private static int count(ResultSet rs) throws SQLException {
+    int count = 0;
+    while (rs.next()) {
+      count++;
+    }
+    return count;
+  }
+
+  // A query counting its executions, which waits for release once started.
+  private static QueryCoalescer.Query blockingQuery(
+      final AtomicInteger executions, final CountDownLatch started, final CountDownLatch release) {
+    return new QueryCoalescer.Query() {
+      @Override
+      public ResultSet execute() throws SQLException {
+        executions.incrementAndGet();
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new SQLException(e);
+        }
+        return rows(1, 2, 3);
+      }
+    };
+  }
+
+  private static void awaitWaiting(QueryCoalescer coalescer, QueryCoalescer.Key key) {
+    while (coalescer.waiting(key) == 0) {
+      Thread.yield();
+    }
+  }
+
+  // Executes query, waiting on an identical query in flight without bound.
+  private ResultSet execute(QueryCoalescer.Key key, QueryCoalescer.Query query)
+      throws SQLException {
+    return coalescer.execute(key, METHOD, query, -1, new CompletableFuture<Void>());
+  }
+
+  private Future<ResultSet> submit(final QueryCoalescer.Key key, final QueryCoalescer.Query query) {
+    return executor.submit(
+        new Callable<ResultSet>() {
+          @Override
+          public ResultSet call() throws SQLException {
+            return execute(key, query);
+          }
+        });
+  }
+
+  @Test
+  public void shareTheExecutionOfIdenticalQueries() throws Exception {
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    QueryCoalescer.Query query = blockingQuery(executions, started, release);
+
+    Future<ResultSet> first = submit(key("alice"), query);
+    started.await();
+    Future<ResultSet> second = submit(key("alice"), query);
+    // Let the second query join the first before it returns.
+    awaitWaiting(coalescer, key("alice"));
+    release.countDown();
+
+    ResultSet firstRows = first.get();
+    ResultSet secondRows = second.get();
+    assertThat(executions.get()).isEqualTo(1);
+    assertThat(firstRows).isNotSameAs(secondRows);
+    // Each query has its own cursor.
+    assertThat(count(firstRows)).isEqualTo(3);
+    assertThat(count(secondRows)).isEqualTo(3);
+    assertThat(secondRows.getConcurrency()).isEqualTo(ResultSet.CONCUR_READ_ONLY);
+  }
+
+  @Test
+  public void executeQueriesWithOtherParametersOnTheirOwn() throws Exception {
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(2);
+    CountDownLatch release = new CountDownLatch(1);
+    QueryCoalescer.Query query = blockingQuery(executions, started, release);
+
+    Future<ResultSet> first = submit(key("alice"), query);
+    Future<ResultSet> second = submit(key("bob"), query);
+    started.await();
+    release.countDown();
+
+    assertThat(count(first.get())).isEqualTo(3);
+    assertThat(count(second.get())).isEqualTo(3);
+    assertThat(executions.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void executeAgainOnceTheQueryInFlightReturned() throws SQLException {
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch released = new CountDownLatch(0);
+    QueryCoalescer.Query query = blockingQuery(executions, new CountDownLatch(1), released);
+
+    assertThat(count(execute(key("alice"), query))).isEqualTo(3);
+    assertThat(count(execute(key("alice"), query))).isEqualTo(3);
+    assertThat(executions.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void reportFailuresToTheQueryThatExecuted() {
+    final SQLException failure = new SQLException("boom", "08006", 17);
+    QueryCoalescer.Query query =
+        new QueryCoalescer.Query() {
+          @Override
+          public ResultSet execute() throws SQLException {
+            throw failure;
+          }
+        };
+
+    try {
+      execute(key("alice"), query);
+      throw new AssertionError("Expected the failure of the query");
+    } catch (SQLException e) {
+      assertThat((Throwable) e).isSameAs(failure);
+    }
+  }
+
+  @Test
+  public void failQueriesWaitingPastTheirTimeout() throws Exception {
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    QueryCoalescer.Query query = blockingQuery(executions, started, release);
+
+    Future<ResultSet> first = submit(key("alice"), query);
+    started.await();
+    try {
+      coalescer.execute(
+          key("alice"), METHOD, query, TimeUnit.MILLISECONDS.toNanos(1), new CompletableFuture<>());
+      throw new AssertionError("Expected the query to time out");
+    } catch (SQLTimeoutException e) {
+      // The query in flight is left running.
+    }
+    release.countDown();
+    assertThat(count(first.get())).isEqualTo(3);
+    assertThat(executions.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void stopWaitingOnceCancelled() throws Exception {
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    QueryCoalescer.Query query = blockingQuery(executions, started, release);
+
+    Future<ResultSet> first = submit(key("alice"), query);
+    started.await();
+    CompletableFuture<Void> cancelled = new CompletableFuture<>();
+    cancelled.complete(null);
+    try {
+      coalescer.execute(key("alice"), METHOD, query, -1, cancelled);
+      throw new AssertionError("Expected the query to be cancelled");
+    } catch (SQLException e) {
+      assertThat(e.getSQLState()).isEqualTo("HY008");
+    }
+    release.countDown();
+    assertThat(count(first.get())).isEqualTo(3);
+  }
+
+  // A connection in autoCommit mode, whose statements count their executions, which wait for
+  // release once started.
+  private static Connection connection(
+      final boolean autoCommit,
+      final AtomicInteger executions,
+      final CountDownLatch started,
+      final CountDownLatch release) {
+    final InvocationHandler statement =
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+            if (method.getName().equals("executeQuery")) {
+              return blockingQuery(executions, started, release).execute();
+            }
+            return null;
+          }
+        };
+    return (Connection)
+        Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                  case "getAutoCommit":
+                    return autoCommit;
+                  case "getCatalog":
+                    return "TEST";
+                  case "getSchema":
+                    return "PUBLIC";
+                  case "prepareStatement":
+                    return Proxy.newProxyInstance(
+                        PreparedStatement.class.getClassLoader(),
+                        new Class<?>[] {PreparedStatement.class},
+                        statement);
+                  default:
+                    return null;
+                }
+              }
+            });
+  }
+
+  // Prepares SQL for the name on a connection to database.
+  private static PreparedStatement prepare(
+      Connection connection, EnumSet<TraceOption> opts, String database, String name)
+      throws SQLException {
+    PreparedStatement statement =
+        new OcWrapConnection(
+                connection, opts, new ConnectionInfo("h2", "localhost", "", database, "sa"))
+            .prepareStatement(SQL);
+    statement.setString(1, name);
+    return statement;
+  }
+
+  // The identity of the queries prepared for alice on connections to database.
+  private static QueryCoalescer.Key statementKey(String database) {
+    StatementParameters parameters = new StatementParameters();
+    parameters.setObject(1, "alice");
+    return new QueryCoalescer.Key(
+        "h2://localhost/" + database, "sa", "TEST", "PUBLIC", SQL, 0, parameters.snapshot());
+  }
+
+  private Future<ResultSet> submit(final PreparedStatement statement) {
+    return executor.submit(
+        new Callable<ResultSet>() {
+          @Override
+          public ResultSet call() throws SQLException {
+            return statement.executeQuery();
+          }
+        });
+  }
+
+  @Test
+  public void coalesceTheQueriesOfStatements() throws Exception {
+    EnumSet<TraceOption> opts =
+        EnumSet.of(TraceOption.COALESCE_QUERIES, TraceOption.TRACK_CONNECTION_STATE);
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    PreparedStatement first =
+        prepare(connection(true, executions, started, release), opts, "statements", "alice");
+    PreparedStatement second =
+        prepare(connection(true, executions, started, release), opts, "statements", "alice");
+
+    Future<ResultSet> firstRows = submit(first);
+    started.await();
+    Future<ResultSet> secondRows = submit(second);
+    awaitWaiting(QueryCoalescer.shared, statementKey("statements"));
+    release.countDown();
+
+    assertThat(count(firstRows.get())).isEqualTo(3);
+    assertThat(count(secondRows.get())).isEqualTo(3);
+    assertThat(executions.get()).isEqualTo(1);
+    // The rows in memory stay the results of the statements.
+    assertThat(first.getResultSet()).isSameAs(firstRows.get());
+    assertThat(second.getResultSet()).isSameAs(secondRows.get());
+  }
+
+  @Test
+  public void stopWaitingWhenTheStatementIsCancelled() throws Exception {
+    EnumSet<TraceOption> opts =
+        EnumSet.of(TraceOption.COALESCE_QUERIES, TraceOption.TRACK_CONNECTION_STATE);
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    PreparedStatement first =
+        prepare(connection(true, executions, started, release), opts, "cancel", "alice");
+    PreparedStatement second =
+        prepare(connection(true, executions, started, release), opts, "cancel", "alice");
+
+    Future<ResultSet> firstRows = submit(first);
+    started.await();
+    Future<ResultSet> secondRows = submit(second);
+    awaitWaiting(QueryCoalescer.shared, statementKey("cancel"));
+    second.cancel();
+
+    try {
+      secondRows.get();
+      throw new AssertionError("Expected the query to be cancelled");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(SQLException.class);
+    }
+    release.countDown();
+    assertThat(count(firstRows.get())).isEqualTo(3);
+  }
+
+  // Executes the statements concurrently.
+  private void executeConcurrently(
+      PreparedStatement first,
+      PreparedStatement second,
+      CountDownLatch started,
+      CountDownLatch release)
+      throws Exception {
+    Future<ResultSet> firstRows = submit(first);
+    Future<ResultSet> secondRows = submit(second);
+    // Fails if one waits on the other.
+    assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+    release.countDown();
+
+    assertThat(count(firstRows.get())).isEqualTo(3);
+    assertThat(count(secondRows.get())).isEqualTo(3);
+  }
+
+  @Test
+  public void executeTheQueriesOfStatementsWithoutTheOptionOnTheirOwn() throws Exception {
+    EnumSet<TraceOption> opts = EnumSet.of(TraceOption.TRACK_CONNECTION_STATE);
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(2);
+    CountDownLatch release = new CountDownLatch(1);
+
+    executeConcurrently(
+        prepare(connection(true, executions, started, release), opts, "option", "alice"),
+        prepare(connection(true, executions, started, release), opts, "option", "alice"),
+        started,
+        release);
+    assertThat(executions.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void executeTheQueriesOfTransactionsOnTheirOwn() throws Exception {
+    EnumSet<TraceOption> opts =
+        EnumSet.of(TraceOption.COALESCE_QUERIES, TraceOption.TRACK_CONNECTION_STATE);
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(2);
+    CountDownLatch release = new CountDownLatch(1);
+
+    executeConcurrently(
+        prepare(connection(false, executions, started, release), opts, "transactions", "alice"),
+        prepare(connection(false, executions, started, release), opts, "transactions", "alice"),
+        started,
+        release);
+    assertThat(executions.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void executeTheQueriesOfStreamedParametersOnTheirOwn() throws Exception {
+    EnumSet<TraceOption> opts =
+        EnumSet.of(TraceOption.COALESCE_QUERIES, TraceOption.TRACK_CONNECTION_STATE);
+    AtomicInteger executions = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(2);
+    CountDownLatch release = new CountDownLatch(1);
+    PreparedStatement first =
+        prepare(connection(true, executions, started, release), opts, "streams", "alice");
+    PreparedStatement second =
+        prepare(connection(true, executions, started, release), opts, "streams", "alice");
+    // Streams can't be compared, nor read twice.
+    first.setBinaryStream(2, new ByteArrayInputStream(new byte[] {1}));
+    second.setBinaryStream(2, new ByteArrayInputStream(new byte[] {1}));
+
+    executeConcurrently(first, second, started, release);
+    assertThat(executions.get()).isEqualTo(2);
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link QueryLifecycle}. */
+@RunWith(JUnit4.class)
+public class QueryLifecycleTest {
+
+  @Test
+  public void reportNoFirstRowBeforeNext() {
+    QueryLifecycle lifecycle = new QueryLifecycle();
+    assertThat(lifecycle.hasFetched()).isFalse();
+    assertThat(lifecycle.getFirstRowNs(100)).isEqualTo(-1L);
+    assertThat(lifecycle.getFetchNs()).isEqualTo(0L);
+    assertThat(lifecycle.getThinkNs()).isEqualTo(0L);
+  }
+
+  @Test
+  public void splitFetchingFromThinking() {
+    QueryLifecycle lifecycle = new QueryLifecycle();
+    // Executed at 100, the first row arrives at 150.
+    lifecycle.recordNext(120, 150, true);
+    // The application spends 40 on the first row, and 100 on the second.
+    lifecycle.recordNext(190, 200, true);
+    lifecycle.recordNext(300, 305, false);
+
+    assertThat(lifecycle.hasFetched()).isTrue();
+    assertThat(lifecycle.getFirstRowNs(100)).isEqualTo(50L);
+    assertThat(lifecycle.getFetchNs()).isEqualTo(30L + 10 + 5);
+    assertThat(lifecycle.getThinkNs()).isEqualTo(40L + 100);
+    assertThat(lifecycle.getRows()).isEqualTo(2L);
+  }
+
+  @Test
+  public void countNoRowsForAnEmptyCursor() {
+    QueryLifecycle lifecycle = new QueryLifecycle();
+    lifecycle.recordNext(120, 130, false);
+
+    assertThat(lifecycle.getFirstRowNs(100)).isEqualTo(30L);
+    assertThat(lifecycle.getFetchNs()).isEqualTo(10L);
+    assertThat(lifecycle.getThinkNs()).isEqualTo(0L);
+    assertThat(lifecycle.getRows()).isEqualTo(0L);
+  }
+}
@@ -0,0 +1,353 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.integration.jdbc.Observability.TraceOption;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link ReadHedging}. */
+@RunWith(JUnit4.class)
+public class ReadHedgingTest {
+  private static final String METHOD = "java.sql.PreparedStatement.executeQuery";
+
+  private final SqlInfo sqlInfo = SqlInfo.of("SELECT id FROM users WHERE name = ?");
+  private final StatementParameters.Snapshot parameters = new StatementParameters().snapshot();
+  private final AtomicInteger connections = new AtomicInteger();
+  private final CountDownLatch connectionClosed = new CountDownLatch(1);
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    Observability.disableHedging();
+    Observability.removeHedgeable(sqlInfo.getSql());
+  }
+
+  // Returns a cursor over the ids.
+  private static ResultSet rows(int... ids) throws SQLException {
+    RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+    metaData.setColumnCount(1);
+    metaData.setColumnName(1, "id");
+    metaData.setColumnType(1, Types.INTEGER);
+    CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+    rows.setMetaData(metaData);
+    for (int id : ids) {
+      rows.moveToInsertRow();
+      rows.updateInt(1, id);
+      rows.insertRow();
+    }
+    rows.moveToCurrentRow();
+    rows.beforeFirst();
+    return rows;
+  }
+
+  private static int first(ResultSet rs) throws SQLException {
+    assertThat(rs.next()).isTrue();
+    return rs.getInt(1);
+  }
+
+  // A statement whose query returns id once proceed is counted down, or after waitMs. A cancelled
+  // query fails, or returns regardless if failOnCancel is false, like drivers that only cancel
+  // between rows.
+  private static final class Stub implements InvocationHandler {
+    private final int id;
+    private final CountDownLatch proceed;
+    private final boolean failOnCancel;
+    private final long waitMs;
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch closed = new CountDownLatch(1);
+    final CountDownLatch cancelling = new CountDownLatch(1);
+    // Released to let cancel return.
+    volatile CountDownLatch releaseCancel = new CountDownLatch(0);
+    volatile boolean cancelled;
+
+    Stub(int id, CountDownLatch proceed, boolean failOnCancel) {
+      this(id, proceed, failOnCancel, TimeUnit.SECONDS.toMillis(10));
+    }
+
+    Stub(int id, CountDownLatch proceed, boolean failOnCancel, long waitMs) {
+      this.id = id;
+      this.proceed = proceed;
+      this.failOnCancel = failOnCancel;
+      this.waitMs = waitMs;
+    }
+
+    PreparedStatement statement() {
+      return (PreparedStatement)
+          Proxy.newProxyInstance(
+              PreparedStatement.class.getClassLoader(),
+              new Class<?>[] {PreparedStatement.class},
+              this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+      switch (method.getName()) {
+        case "executeQuery":
+          started.countDown();
+          proceed.await(waitMs, TimeUnit.MILLISECONDS);
+          if (cancelled && failOnCancel) {
+            throw new SQLException("Query cancelled", "57014");
+          }
+          return rows(id);
+        case "cancel":
+          cancelled = true;
+          proceed.countDown();
+          cancelling.countDown();
+          releaseCancel.await();
+          return null;
+        case "close":
+          closed.countDown();
+          return null;
+        default:
+          return null;
+      }
+    }
+  }
+
+  // Returns a data source whose connections prepare the statement of hedge.
+  private DataSource dataSource(final Stub hedge) {
+    final Connection connection =
+        (Connection)
+            Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class},
+                new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                      case "prepareStatement":
+                        return hedge.statement();
+                      case "close":
+                        connectionClosed.countDown();
+                        return null;
+                      default:
+                        return null;
+                    }
+                  }
+                });
+    return (DataSource)
+        Proxy.newProxyInstance(
+            DataSource.class.getClassLoader(),
+            new Class<?>[] {DataSource.class},
+            new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getConnection")) {
+                  connections.incrementAndGet();
+                  return connection;
+                }
+                return null;
+              }
+            });
+  }
+
+  // Records MIN_SAMPLES latencies of immediate queries, after which queries are hedged.
+  private void warmUp(ReadHedging hedging) throws SQLException {
+    PreparedStatement fast = new Stub(0, new CountDownLatch(0), true).statement();
+    for (int i = 0; i < ReadHedging.MIN_SAMPLES; i++) {
+      hedging.executeQuery(fast, sqlInfo, parameters, origin()).close();
+    }
+  }
+
+  private static Observability.TrackingOperation origin() {
+    return Observability.createRoundtripTrackingSpan(METHOD);
+  }
+
+  private static void await(CountDownLatch latch) throws InterruptedException {
+    assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void issueNoHedgeBeforeMinSamples() throws Exception {
+    Stub hedge = new Stub(2, new CountDownLatch(0), true);
+    ReadHedging hedging = new ReadHedging(dataSource(hedge), 0.5, 1);
+    PreparedStatement fast = new Stub(1, new CountDownLatch(0), true).statement();
+    for (int i = 0; i < ReadHedging.MIN_SAMPLES - 1; i++) {
+      assertThat(first(hedging.executeQuery(fast, sqlInfo, parameters, origin()))).isEqualTo(1);
+    }
+    assertThat(connections.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void cancelTheSlowQueryWhenTheHedgeWins() throws Exception {
+    Stub hedge = new Stub(2, new CountDownLatch(0), true);
+    ReadHedging hedging = new ReadHedging(dataSource(hedge), 0.5, 1);
+    warmUp(hedging);
+    // The query only returns once cancelled.
+    Stub slow = new Stub(1, new CountDownLatch(1), true);
+
+    ResultSet rs = hedging.executeQuery(slow.statement(), sqlInfo, parameters, origin());
+    assertThat(first(rs)).isEqualTo(2);
+    assertThat(slow.cancelled).isTrue();
+    assertThat(hedge.cancelled).isFalse();
+    // The hedge gives its statement and connection back.
+    await(hedge.closed);
+    await(connectionClosed);
+  }
+
+  @Test
+  public void useTheHedgeWhenTheCancelledQueryReturnsAnyway() throws Exception {
+    Stub hedge = new Stub(2, new CountDownLatch(0), true);
+    ReadHedging hedging = new ReadHedging(dataSource(hedge), 0.5, 1);
+    warmUp(hedging);
+    // The query returns its rows once cancelled, after the hedge won.
+    Stub slow = new Stub(1, new CountDownLatch(1), false);
+
+    ResultSet rs = hedging.executeQuery(slow.statement(), sqlInfo, parameters, origin());
+    assertThat(first(rs)).isEqualTo(2);
+    assertThat(slow.cancelled).isTrue();
+  }
+
+  @Test
+  public void returnOnceTheSlowQueryIsCancelled() throws Exception {
+    Stub hedge = new Stub(2, new CountDownLatch(0), true);
+    final ReadHedging hedging = new ReadHedging(dataSource(hedge), 0.5, 1);
+    warmUp(hedging);
+    // The query fails as soon as it is cancelled, while the driver is still cancelling it.
+    final Stub slow = new Stub(1, new CountDownLatch(1), true);
+    slow.releaseCancel = new CountDownLatch(1);
+
+    Future<ResultSet> rs =
+        executor.submit(
+            new Callable<ResultSet>() {
+              @Override
+              public ResultSet call() throws SQLException {
+                return hedging.executeQuery(slow.statement(), sqlInfo, parameters, origin());
+              }
+            });
+    await(slow.cancelling);
+    Thread.sleep(50);
+    assertThat(rs.isDone()).isFalse();
+    slow.releaseCancel.countDown();
+    assertThat(first(rs.get())).isEqualTo(2);
+  }
+
+  @Test
+  public void keepTheRowsOfTheHedgeAsTheResultsOfTheStatement() throws Exception {
+    Observability.enableHedging(dataSource(new Stub(2, new CountDownLatch(0), true)), 0.5, 1);
+    Observability.setHedgeable(sqlInfo.getSql());
+    // Queries return at once until there are enough latencies to hedge, and once cancelled then.
+    final AtomicInteger executions = new AtomicInteger();
+    final CountDownLatch cancelled = new CountDownLatch(1);
+    PreparedStatement driverStatement =
+        (PreparedStatement)
+            Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[] {PreparedStatement.class},
+                new InvocationHandler() {
+                  @Override
+                  public Object invoke(Object proxy, Method method, Object[] args)
+                      throws Exception {
+                    switch (method.getName()) {
+                      case "executeQuery":
+                        if (executions.incrementAndGet() > ReadHedging.MIN_SAMPLES) {
+                          cancelled.await();
+                          throw new SQLException("Query cancelled", "57014");
+                        }
+                        return rows(1);
+                      case "cancel":
+                        cancelled.countDown();
+                        return null;
+                      default:
+                        return null;
+                    }
+                  }
+                });
+    PreparedStatement statement =
+        new OcWrapPreparedStatement(
+            driverStatement, EnumSet.noneOf(TraceOption.class), sqlInfo.getSql());
+    for (int i = 0; i < ReadHedging.MIN_SAMPLES; i++) {
+      statement.executeQuery().close();
+    }
+
+    ResultSet rs = statement.executeQuery();
+    assertThat(first(rs)).isEqualTo(2);
+    assertThat(statement.getResultSet()).isSameAs(rs);
+  }
+
+  @Test
+  public void followShiftsInLatency() throws Exception {
+    ReadHedging hedging =
+        new ReadHedging(dataSource(new Stub(2, new CountDownLatch(0), true)), 0.5, 1);
+    ReadHedging.Latencies latencies = hedging.latencies(sqlInfo.getFingerprint());
+    for (int i = 0; i < 2 * ReadHedging.WINDOW_SAMPLES; i++) {
+      latencies.record(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+    assertThat(latencies.getDelayNs()).isAtLeast(TimeUnit.MICROSECONDS.toNanos(9800));
+
+    // The latencies of two windows ago are forgotten.
+    for (int i = 0; i < 2 * ReadHedging.WINDOW_SAMPLES; i++) {
+      latencies.record(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    assertThat(latencies.getDelayNs()).isAtMost(TimeUnit.MICROSECONDS.toNanos(1020));
+  }
+
+  @Test
+  public void cancelTheHedgeWhenTheQueryWins() throws Exception {
+    // The hedge only returns once cancelled.
+    Stub hedge = new Stub(2, new CountDownLatch(1), true);
+    ReadHedging hedging = new ReadHedging(dataSource(hedge), 0.5, 1);
+    warmUp(hedging);
+    // The query returns once the hedge started.
+    Stub query = new Stub(1, hedge.started, true);
+
+    ResultSet rs = hedging.executeQuery(query.statement(), sqlInfo, parameters, origin());
+    assertThat(first(rs)).isEqualTo(1);
+    assertThat(query.cancelled).isFalse();
+    assertThat(hedge.cancelled).isTrue();
+    await(hedge.closed);
+    await(connectionClosed);
+  }
+
+  @Test
+  public void throttleHedgesPastTheBudget() throws Exception {
+    Stub hedge = new Stub(2, new CountDownLatch(0), true);
+    // The warm up earns a tenth of a hedge.
+    ReadHedging hedging = new ReadHedging(dataSource(hedge), 0.5, 0.001);
+    warmUp(hedging);
+    // The query waits for a hedge that is never issued.
+    Stub query = new Stub(1, hedge.started, true, 200);
+
+    ResultSet rs = hedging.executeQuery(query.statement(), sqlInfo, parameters, origin());
+    assertThat(first(rs)).isEqualTo(1);
+    assertThat(connections.get()).isEqualTo(0);
+  }
+}
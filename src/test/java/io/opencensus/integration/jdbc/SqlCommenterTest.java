@@ -0,0 +1,69 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.trace.SpanContext;
+import io.opencensus.trace.SpanId;
+import io.opencensus.trace.TraceId;
+import io.opencensus.trace.TraceOptions;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SqlCommenter}. */
+@RunWith(JUnit4.class)
+public class SqlCommenterTest {
+  private static final SpanContext CONTEXT =
+      SpanContext.create(
+          TraceId.fromLowerBase16("0af7651916cd43dd8448eb211c80319c"),
+          SpanId.fromLowerBase16("b7ad6b7169203331"),
+          TraceOptions.builder().setIsSampled(true).build());
+
+  @After
+  public void tearDown() {
+    SqlCommenter.setService(null);
+  }
+
+  @Test
+  public void withTraceContext() {
+    assertThat(SqlCommenter.withTraceContext("SELECT * FROM users;", CONTEXT))
+        .isEqualTo(
+            "SELECT * FROM users /*traceparent='00-0af7651916cd43dd8448eb211c80319c"
+                + "-b7ad6b7169203331-01'*/;");
+    assertThat(SqlCommenter.withTraceContext("SELECT 1", SpanContext.INVALID))
+        .isEqualTo("SELECT 1");
+  }
+
+  @Test
+  public void withService() {
+    SqlCommenter.setService("billing api");
+    assertThat(SqlCommenter.withTraceContext("SELECT 1", CONTEXT))
+        .isEqualTo(
+            "SELECT 1 /*service='billing+api',traceparent='00-0af7651916cd43dd8448eb211c80319c"
+                + "-b7ad6b7169203331-01'*/");
+    assertThat(SqlCommenter.stable("SELECT 1")).isEqualTo("SELECT 1 /*service='billing+api'*/");
+  }
+
+  @Test
+  public void keepsExistingComments() {
+    SqlCommenter.setService("billing");
+    String sql = "SELECT /*+ INDEX(users) */ * FROM users";
+    assertThat(SqlCommenter.withTraceContext(sql, CONTEXT)).isEqualTo(sql);
+    assertThat(SqlCommenter.stable(sql)).isEqualTo(sql);
+  }
+}
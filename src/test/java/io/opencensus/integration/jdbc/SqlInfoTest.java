@@ -0,0 +1,67 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SqlInfo}. */
+@RunWith(JUnit4.class)
+public class SqlInfoTest {
+
+  @Test
+  public void of_null() {
+    assertThat(SqlInfo.of(null)).isNull();
+  }
+
+  @Test
+  public void of_cached() {
+    String sql = "SELECT * FROM users WHERE id = 1";
+    SqlInfo info = SqlInfo.of(sql);
+    assertThat(info.getSql()).isEqualTo(sql);
+    assertThat(SqlInfo.of(sql)).isSameAs(info);
+  }
+
+  @Test
+  public void fingerprint_replacesLiterals() {
+    assertThat(SqlInfo.fingerprint("SELECT * FROM users WHERE id = 42 AND name = 'o''brien'"))
+        .isEqualTo("SELECT * FROM users WHERE id = ? AND name = ?");
+    assertThat(SqlInfo.fingerprint("SELECT price * 1.5 FROM t2 WHERE x = $1"))
+        .isEqualTo("SELECT price * ? FROM t2 WHERE x = ?");
+  }
+
+  @Test
+  public void fingerprint_keepsIdentifiers() {
+    assertThat(SqlInfo.fingerprint("SELECT col1, \"Weird 'Name'\" FROM table_2"))
+        .isEqualTo("SELECT col1, \"Weird 'Name'\" FROM table_2");
+  }
+
+  @Test
+  public void fingerprint_stripsCommentsAndWhitespace() {
+    assertThat(SqlInfo.fingerprint("/* hint */ SELECT a\n\t FROM b -- trailing\nWHERE c = ?"))
+        .isEqualTo("SELECT a FROM b WHERE c = ?");
+  }
+
+  @Test
+  public void fingerprint_collapsesLists() {
+    assertThat(SqlInfo.fingerprint("SELECT a FROM b WHERE c IN (1, 2, 3)"))
+        .isEqualTo("SELECT a FROM b WHERE c IN (?)");
+    assertThat(SqlInfo.fingerprint("SELECT a FROM b WHERE c IN (?,?)"))
+        .isEqualTo("SELECT a FROM b WHERE c IN (?)");
+  }
+}
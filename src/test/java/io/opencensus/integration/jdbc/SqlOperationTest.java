@@ -0,0 +1,75 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SqlOperation}. */
+@RunWith(JUnit4.class)
+public class SqlOperationTest {
+
+  @Test
+  public void classifyByFirstKeyword() {
+    assertThat(SqlOperation.classify("SELECT * FROM users")).isEqualTo(SqlOperation.SELECT);
+    assertThat(SqlOperation.classify("insert into users values (?)"))
+        .isEqualTo(SqlOperation.INSERT);
+    assertThat(SqlOperation.classify("Update users SET name = ?")).isEqualTo(SqlOperation.UPDATE);
+    assertThat(SqlOperation.classify("DELETE FROM users")).isEqualTo(SqlOperation.DELETE);
+    assertThat(SqlOperation.classify("MERGE INTO users USING t ON (1 = 1)"))
+        .isEqualTo(SqlOperation.MERGE);
+    assertThat(SqlOperation.classify("CREATE INDEX i ON users (name)"))
+        .isEqualTo(SqlOperation.DDL);
+    assertThat(SqlOperation.classify("COMMIT")).isEqualTo(SqlOperation.TRANSACTION);
+    assertThat(SqlOperation.classify("VACUUM users")).isEqualTo(SqlOperation.OTHER);
+  }
+
+  @Test
+  public void skipCommentsAndParentheses() {
+    assertThat(SqlOperation.classify("-- list\n/* all users */ SELECT 1"))
+        .isEqualTo(SqlOperation.SELECT);
+    assertThat(SqlOperation.classify("(SELECT 1) UNION (SELECT 2)"))
+        .isEqualTo(SqlOperation.SELECT);
+  }
+
+  @Test
+  public void classifyJdbcCallEscapes() {
+    assertThat(SqlOperation.classify("{call refresh(?)}")).isEqualTo(SqlOperation.CALL);
+    assertThat(SqlOperation.classify("{? = call total(?)}")).isEqualTo(SqlOperation.CALL);
+  }
+
+  @Test
+  public void skipCommonTableExpressions() {
+    assertThat(
+            SqlOperation.classify(
+                "WITH RECURSIVE t(n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM t) SELECT n FROM t"))
+        .isEqualTo(SqlOperation.SELECT);
+    assertThat(
+            SqlOperation.classify(
+                "WITH stale AS (SELECT id FROM users WHERE name = 'delete'), "
+                    + "old AS (SELECT 1) DELETE FROM users WHERE id IN (SELECT id FROM stale)"))
+        .isEqualTo(SqlOperation.DELETE);
+  }
+
+  @Test
+  public void neverFails() {
+    assertThat(SqlOperation.classify("")).isEqualTo(SqlOperation.OTHER);
+    assertThat(SqlOperation.classify("/* unterminated")).isEqualTo(SqlOperation.OTHER);
+    assertThat(SqlOperation.classify("WITH t AS (SELECT '")).isEqualTo(SqlOperation.OTHER);
+  }
+}
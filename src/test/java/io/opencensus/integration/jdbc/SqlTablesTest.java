@@ -0,0 +1,90 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link SqlTables}. */
+@RunWith(JUnit4.class)
+public class SqlTablesTest {
+
+  private static List<String> tables(String sql) {
+    return SqlTables.extract(SqlInfo.fingerprint(sql));
+  }
+
+  @Test
+  public void extractTargetsOfStatements() {
+    assertThat(tables("SELECT * FROM users WHERE id = 1")).containsExactly("users");
+    assertThat(tables("INSERT INTO app.orders (id, total) VALUES (?, ?)"))
+        .containsExactly("app.orders");
+    assertThat(tables("UPDATE Users SET name = 'x'")).containsExactly("users");
+    assertThat(tables("DELETE FROM sessions WHERE expires < ?")).containsExactly("sessions");
+    assertThat(tables("MERGE INTO stock s USING deliveries d ON (s.id = d.id)"))
+        .containsExactly("stock", "deliveries")
+        .inOrder();
+  }
+
+  @Test
+  public void extractJoinsAndLists() {
+    assertThat(
+            tables(
+                "SELECT * FROM users u JOIN orders AS o ON u.id = o.user_id "
+                    + "LEFT OUTER JOIN items i ON i.order_id = o.id"))
+        .containsExactly("users", "orders", "items")
+        .inOrder();
+    assertThat(tables("SELECT * FROM users u, orders o, items WHERE u.id = o.user_id"))
+        .containsExactly("users", "orders", "items")
+        .inOrder();
+  }
+
+  @Test
+  public void extractSubqueries() {
+    assertThat(
+            tables(
+                "SELECT * FROM users WHERE id IN (SELECT user_id FROM orders) "
+                    + "AND EXTRACT(YEAR FROM created) = 2018"))
+        .containsExactly("users", "orders")
+        .inOrder();
+    assertThat(tables("SELECT COUNT(*) FROM (SELECT * FROM users) t")).containsExactly("users");
+  }
+
+  @Test
+  public void keepQuotedNames() {
+    assertThat(tables("SELECT * FROM \"Order Lines\" JOIN `Users` ON 1 = 1"))
+        .containsExactly("Order Lines", "Users")
+        .inOrder();
+  }
+
+  @Test
+  public void ignoreClausesThatAreNotTables() {
+    assertThat(tables("SELECT * FROM users FOR UPDATE NOWAIT")).containsExactly("users");
+    assertThat(tables("INSERT INTO t (a) VALUES (1) ON DUPLICATE KEY UPDATE a = 2"))
+        .containsExactly("t");
+  }
+
+  @Test
+  public void neverFails() {
+    assertThat(tables("")).isEmpty();
+    assertThat(tables("SELECT 1")).isEmpty();
+    assertThat(tables("SELECT * FROM")).isEmpty();
+    assertThat(tables("SELECT * FROM \"unterminated")).containsExactly("unterminated");
+    assertThat(tables("FROM FROM ( ) ) JOIN ,")).isEmpty();
+  }
+}
@@ -0,0 +1,146 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link StatementParameters}. */
+@RunWith(JUnit4.class)
+public class StatementParametersTest {
+
+  // A statement recording the setters called on it with their arguments.
+  private static PreparedStatement recordingStatement(final List<String> calls) {
+    return (PreparedStatement)
+        Proxy.newProxyInstance(
+            PreparedStatement.class.getClassLoader(),
+            new Class<?>[] {PreparedStatement.class},
+            new InvocationHandler() {
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) {
+                calls.add(method.getName() + " " + Arrays.deepToString(args));
+                return null;
+              }
+            });
+  }
+
+  @Test
+  public void bindTheParametersAgainInOrder() throws SQLException {
+    StatementParameters parameters = new StatementParameters();
+    parameters.setNull(3, Types.VARCHAR);
+    parameters.setObject(1, 42);
+    parameters.setObject(2, "1.50", Types.DECIMAL, 2);
+    parameters.setNString(4, "naïve");
+
+    List<String> calls = new ArrayList<>();
+    parameters.snapshot().bind(recordingStatement(calls));
+    assertThat(calls)
+        .containsExactly(
+            "setObject [1, 42]",
+            "setObject [2, 1.50, " + Types.DECIMAL + ", 2]",
+            "setNull [3, " + Types.VARCHAR + "]",
+            "setNString [4, naïve]")
+        .inOrder();
+  }
+
+  @Test
+  public void compareSnapshotsByTheirValues() {
+    StatementParameters first = new StatementParameters();
+    first.setObject(1, "alice");
+    first.setObject(2, new byte[] {1, 2});
+    StatementParameters second = new StatementParameters();
+    second.setObject(2, new byte[] {1, 2});
+    second.setObject(1, "alice");
+
+    assertThat(first.snapshot()).isEqualTo(second.snapshot());
+    assertThat(first.snapshot().hashCode()).isEqualTo(second.snapshot().hashCode());
+
+    second.setObject(1, "bob");
+    assertThat(first.snapshot()).isNotEqualTo(second.snapshot());
+  }
+
+  @Test
+  public void copyByteArrays() {
+    byte[] value = {1, 2};
+    StatementParameters parameters = new StatementParameters();
+    parameters.setObject(1, value);
+    StatementParameters.Snapshot before = parameters.snapshot();
+    value[0] = 9;
+    parameters.setObject(1, value);
+
+    assertThat(parameters.snapshot()).isNotEqualTo(before);
+  }
+
+  @Test
+  public void copyDates() {
+    java.sql.Timestamp value = new java.sql.Timestamp(1000);
+    StatementParameters parameters = new StatementParameters();
+    parameters.setObject(1, value);
+    StatementParameters.Snapshot before = parameters.snapshot();
+    value.setTime(2000);
+    parameters.setObject(1, value);
+
+    assertThat(parameters.snapshot()).isNotEqualTo(before);
+  }
+
+  @Test
+  public void refuseToReplayObjectsOtherThanValues() {
+    Object[] objects = {
+      new ByteArrayInputStream(new byte[] {1}),
+      new StringReader("alice"),
+      new AtomicLong(42),
+      new Object()
+    };
+    for (Object object : objects) {
+      StatementParameters parameters = new StatementParameters();
+      parameters.setObject(1, object, Types.OTHER);
+      assertThat(parameters.isReplayable()).isFalse();
+    }
+  }
+
+  @Test
+  public void becomeReplayableOnceCleared() {
+    StatementParameters parameters = new StatementParameters();
+    parameters.setObject(1, 42);
+    parameters.setUnreplayable();
+    assertThat(parameters.isReplayable()).isFalse();
+
+    parameters.clear();
+    assertThat(parameters.isReplayable()).isTrue();
+    assertThat(parameters.snapshot()).isEqualTo(new StatementParameters().snapshot());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void refuseToSnapshotUnreplayableParameters() {
+    StatementParameters parameters = new StatementParameters();
+    parameters.setUnreplayable();
+    parameters.snapshot();
+  }
+}
@@ -0,0 +1,42 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.opencensus.tags.TagValue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link TableMetrics}. */
+@RunWith(JUnit4.class)
+public class TableMetricsTest {
+
+  @Test
+  public void capTables() {
+    TableMetrics tableMetrics = new TableMetrics(2);
+    assertThat(tableMetrics.tagValue("users")).isEqualTo(TagValue.create("users"));
+    assertThat(tableMetrics.tagValue("orders")).isEqualTo(TagValue.create("orders"));
+    assertThat(tableMetrics.tagValue("items")).isEqualTo(TableMetrics.VALUE_OTHER_TABLE);
+    // The admitted tables keep their name.
+    assertThat(tableMetrics.tagValue("users")).isEqualTo(TagValue.create("users"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectNonPositiveMaximum() {
+    new TableMetrics(0);
+  }
+}
@@ -0,0 +1,67 @@
+// Copyright 2018, OpenCensus Authors
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package io.opencensus.integration.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class JfrEventsTest {
+  @Test
+  public void noEventsWithoutRecording() {
+    assertThat(JfrEvents.begin("java.sql.Statement.executeQuery")).isNull();
+    assertThat(JfrEvents.begin("java.sql.Connection.commit")).isNull();
+  }
+
+  @Test
+  public void recordOnlyTheEnabledEvents() throws Exception {
+    Path dump = Files.createTempFile("jfr-events", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("io.opencensus.jdbc.QueryExecute").withThreshold(Duration.ZERO);
+      recording.disable("io.opencensus.jdbc.CursorFetch");
+      recording.start();
+
+      Object event = JfrEvents.begin("java.sql.Statement.executeQuery");
+      assertThat(event).isNotNull();
+      JfrEvents.end(event, SqlInfo.of("SELECT * FROM orders WHERE id = 42"), "timeout");
+      // Cursor fetches aren't enabled, so no event is allocated for them.
+      assertThat(JfrEvents.begin("java.sql.ResultSet.next")).isNull();
+      // Nor for calls that aren't recorded at all.
+      assertThat(JfrEvents.begin("java.sql.Statement.getFetchSize")).isNull();
+
+      recording.stop();
+      recording.dump(dump);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+    Files.delete(dump);
+    assertThat(events).hasSize(1);
+    RecordedEvent recorded = events.get(0);
+    assertThat(recorded.getEventType().getName()).isEqualTo("io.opencensus.jdbc.QueryExecute");
+    assertThat(recorded.getString("method")).isEqualTo("java.sql.Statement.executeQuery");
+    assertThat(recorded.getString("sql")).isEqualTo("SELECT * FROM orders WHERE id = ?");
+    assertThat(recorded.getString("error")).isEqualTo("timeout");
+  }
+}